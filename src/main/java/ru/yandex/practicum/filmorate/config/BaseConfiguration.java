@@ -1,11 +1,13 @@
 package ru.yandex.practicum.filmorate.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.ConcurrentLongObjectMap;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -14,13 +16,13 @@ import java.util.concurrent.ConcurrentHashMap;
 public class BaseConfiguration {
 
     @Bean
-    public Map<Long, Film> filmsMap() {
-        return new ConcurrentHashMap<>();
+    public Map<Long, Film> filmsMap(@Value("${filmorate.inmemory.primitive-maps.enabled:false}") boolean primitive) {
+        return primitive ? new ConcurrentLongObjectMap<>() : new ConcurrentHashMap<>();
     }
 
     @Bean
-    public Map<Long, User> userMap() {
-        return new ConcurrentHashMap<>();
+    public Map<Long, User> userMap(@Value("${filmorate.inmemory.primitive-maps.enabled:false}") boolean primitive) {
+        return primitive ? new ConcurrentLongObjectMap<>() : new ConcurrentHashMap<>();
     }
 
     @Bean
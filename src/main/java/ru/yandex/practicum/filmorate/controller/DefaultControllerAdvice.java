@@ -10,8 +10,11 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.yandex.practicum.filmorate.exception.ErrorResponse;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
+import ru.yandex.practicum.filmorate.exception.IdempotencyKeyConflictException;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -42,6 +45,16 @@ public class DefaultControllerAdvice {
                 .build();
     }
 
+    @ExceptionHandler(IdempotencyKeyConflictException.class)
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    public ErrorResponse handleIdempotencyKeyConflict(IdempotencyKeyConflictException ex) {
+        log.error(ex.getMessage());
+        return ErrorResponse.builder()
+                .message(ex.getMessage())
+                .code(HttpStatus.UNPROCESSABLE_ENTITY.value())
+                .build();
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponse handleConstraintViolationException(MethodArgumentNotValidException ex) {
@@ -54,6 +67,19 @@ public class DefaultControllerAdvice {
                 .build();
     }
 
+    @ExceptionHandler(ConstraintViolationException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleRequestParamViolation(ConstraintViolationException ex) {
+        log.error(ex.getMessage());
+        return ErrorResponse.builder()
+                .message(ex.getMessage())
+                .fieldErrors(ex.getConstraintViolations().stream()
+                        .map(ConstraintViolation::getMessage)
+                        .collect(Collectors.toList()))
+                .code(HttpStatus.BAD_REQUEST.value())
+                .build();
+    }
+
     @ExceptionHandler(RuntimeException.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleInternalError(RuntimeException ex) {
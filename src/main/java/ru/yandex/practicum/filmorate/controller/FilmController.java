@@ -1,37 +1,131 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BulkReport;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmSummary;
 import ru.yandex.practicum.filmorate.service.IFilmService;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RestController
 @Slf4j
+@Validated
 @RequestMapping("/films")
 @RequiredArgsConstructor
 public class FilmController {
 
+    static final String NDJSON = "application/x-ndjson";
+    private static final int EXPORT_FLUSH_EVERY = 100;
+
     private final IFilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final IdempotentRequests idempotentRequests;
 
     @GetMapping
-    public ResponseEntity<List<Film>> getAllFilms() {
-        List<Film> films = filmService.findAllFilms();
-        return new ResponseEntity<>(films, HttpStatus.OK);
+    public ResponseEntity<List<Film>> getAllFilms(
+            @RequestParam(name = "after", required = false) @PositiveOrZero Long after,
+            @RequestParam(name = "limit", required = false) @Positive @Max(Pagination.MAX_LIMIT) Integer limit) {
+        if (!Pagination.isRequested(after, limit)) {
+            List<Film> films = filmService.findAllFilms();
+            return new ResponseEntity<>(films, HttpStatus.OK);
+        }
+        int pageSize = Pagination.limitOrDefault(limit);
+        List<Film> films = filmService.findFilmsPage(Pagination.afterOrDefault(after), pageSize);
+        HttpHeaders headers = Pagination.nextCursorHeaders(films, pageSize, Film::getId);
+        return new ResponseEntity<>(films, headers, HttpStatus.OK);
+    }
+
+    /**
+     * ?view=summary: фильмы с количеством лайков вместо списка пользователей.
+     */
+    @GetMapping(params = "view=summary")
+    public ResponseEntity<List<FilmSummary>> getAllFilmSummaries(
+            @RequestParam(name = "after", required = false) @PositiveOrZero Long after,
+            @RequestParam(name = "limit", required = false) @Positive @Max(Pagination.MAX_LIMIT) Integer limit) {
+        if (!Pagination.isRequested(after, limit)) {
+            List<FilmSummary> films = filmService.findAllFilmSummaries();
+            return new ResponseEntity<>(films, HttpStatus.OK);
+        }
+        int pageSize = Pagination.limitOrDefault(limit);
+        List<FilmSummary> films = filmService.findFilmSummariesPage(Pagination.afterOrDefault(after), pageSize);
+        HttpHeaders headers = Pagination.nextCursorHeaders(films, pageSize, FilmSummary::getId);
+        return new ResponseEntity<>(films, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Выгрузка всех фильмов в порядке id, по одному JSON-объекту на строку.
+     * Фильмы пишутся в ответ по мере чтения из хранилища; если клиент отключился,
+     * запись бросает исключение и чтение прекращается.
+     */
+    @GetMapping(value = "/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                int[] written = {0};
+                filmService.exportFilms(film -> {
+                    try {
+                        writer.writeValue(generator, film);
+                        generator.writeRaw('\n');
+                        if (++written[0] % EXPORT_FLUSH_EVERY == 0) {
+                            generator.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                log.debug("Film export aborted after client disconnect: {}", e.getMessage());
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
     }
 
     @PostMapping
-    public ResponseEntity<Film> createFilm(@RequestBody @Valid Film film) {
+    public ResponseEntity<Film> createFilm(@RequestBody @Valid Film film,
+                                           @RequestHeader(value = IdempotentRequests.HEADER, required = false)
+                                           @Size(max = IdempotentRequests.MAX_KEY_LENGTH) String idempotencyKey) {
         log.debug("Creating film {}", film);
-        Film created = filmService.createFilm(film);
+        Film created = idempotentRequests.execute("films", idempotencyKey, film, Film.class,
+                () -> filmService.createFilm(film));
         return new ResponseEntity<>(created, HttpStatus.CREATED);
     }
 
+    /**
+     * Пакетная загрузка фильмов: JSON-массив или NDJSON. Тело читается потоком,
+     * а в ответе - отчет о принятых и отклоненных фильмах.
+     */
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON})
+    public ResponseEntity<BulkReport> importFilms(HttpServletRequest request) throws IOException {
+        BulkReport report = filmService.importFilms(request.getInputStream());
+        log.debug("Bulk import of films: {} accepted, {} rejected", report.getAccepted(), report.getRejected());
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
     @PutMapping
     public ResponseEntity<Film> updateFilm(@RequestBody @Valid Film film) {
         log.debug("Updating film {}", film);
@@ -46,6 +140,15 @@ public class FilmController {
         filmService.addLikeByUserWithId(userId, filmId);
     }
 
+    /**
+     * Пакетное добавление лайков: уже существующие лайки и повторы не считаются ошибкой.
+     */
+    @PostMapping("/likes/bulk")
+    public ResponseEntity<BulkReport> addLikes(@RequestBody List<FilmLike> likes) {
+        BulkReport report = filmService.addLikes(likes);
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
     @DeleteMapping("/{id}/like/{userId}")
     @ResponseStatus(HttpStatus.OK)
     public void deleteLike(@PathVariable("id") Long filmId,
@@ -53,16 +156,36 @@ public class FilmController {
         filmService.removeLikeByUserWithId(userId, filmId);
     }
 
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.OK)
+    public void deleteFilm(@PathVariable("id") Long filmId) {
+        log.debug("Deleting film with ID {}", filmId);
+        filmService.deleteFilm(filmId);
+    }
+
     @GetMapping("/popular")
     public ResponseEntity<List<Film>> getPopularFilms(@RequestParam(name = "count", defaultValue = "10") Integer count) {
         List<Film> films = filmService.getMostPopularFilms(count);
         return new ResponseEntity<>(films, HttpStatus.OK);
     }
 
+    @GetMapping(value = "/popular", params = "view=summary")
+    public ResponseEntity<List<FilmSummary>> getPopularFilmSummaries(
+            @RequestParam(name = "count", defaultValue = "10") Integer count) {
+        List<FilmSummary> films = filmService.getMostPopularFilmSummaries(count);
+        return new ResponseEntity<>(films, HttpStatus.OK);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Film> getFilmById(@PathVariable("id") Long id) {
         Film film = filmService.getFilmById(id);
         return new ResponseEntity<>(film, HttpStatus.OK);
     }
 
+    @GetMapping(value = "/{id}", params = "view=summary")
+    public ResponseEntity<FilmSummary> getFilmSummaryById(@PathVariable("id") Long id) {
+        FilmSummary film = filmService.getFilmSummaryById(id);
+        return new ResponseEntity<>(film, HttpStatus.OK);
+    }
+
 }
@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -11,6 +12,7 @@ import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.IGenreService;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/genres")
@@ -18,19 +20,26 @@ import java.util.List;
 @Slf4j
 public class GenreController {
 
+    // the dictionary is seeded by data.sql and practically never changes
+    private static final CacheControl DICTIONARY_CACHE_CONTROL = CacheControl.maxAge(1, TimeUnit.DAYS).cachePublic();
+
     private final IGenreService genreService;
 
     @GetMapping
     public ResponseEntity<List<Genre>> getAllGenres() {
         log.info("Received request to getAllGenres.");
         List<Genre> genres = genreService.getAllGenres();
-        return ResponseEntity.ok(genres);
+        return ResponseEntity.ok()
+                .cacheControl(DICTIONARY_CACHE_CONTROL)
+                .body(genres);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<Genre> getGenreById(@PathVariable("id") Long id) {
         log.info("Received request to getGenreById");
-        return ResponseEntity.ok(genreService.getGenreById(id));
+        return ResponseEntity.ok()
+                .cacheControl(DICTIONARY_CACHE_CONTROL)
+                .body(genreService.getGenreById(id));
     }
 
 }
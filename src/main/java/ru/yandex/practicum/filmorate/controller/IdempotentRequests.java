@@ -0,0 +1,123 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.IdempotencyKeyConflictException;
+import ru.yandex.practicum.filmorate.model.IdempotencyRecord;
+import ru.yandex.practicum.filmorate.storage.IdempotencyStorage;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Заголовок Idempotency-Key для POST /films и POST /users. Ответ на первый запрос с ключом
+ * сохраняется в {@link IdempotencyStorage}, и повтор с тем же ключом получает этот ответ без
+ * обращения к сервису. Одновременные запросы с одним ключом на узле выполняются один раз:
+ * остальные ждут результата первого. Ошибки не сохраняются, так что после ошибки запрос
+ * с тем же ключом можно повторить.
+ */
+@Component
+@RequiredArgsConstructor
+class IdempotentRequests {
+    static final String HEADER = "Idempotency-Key";
+    static final int MAX_SCOPE_LENGTH = 44;
+    /**
+     * Ключ в хранилище - scope + ":" + значение заголовка, и он должен помещаться в {@link IdempotencyStorage}.
+     */
+    static final int MAX_KEY_LENGTH = IdempotencyStorage.MAX_KEY_LENGTH - MAX_SCOPE_LENGTH - 1;
+
+    private final IdempotencyStorage storage;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentMap<String, CompletableFuture<IdempotencyRecord>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param scope     пространство ключей, например, films
+     * @param key       значение заголовка, без него операция просто выполняется; длину
+     *                  не длиннее {@link #MAX_KEY_LENGTH} проверяет контроллер
+     * @param request   тело запроса, повтор ключа с другим телом отклоняется
+     * @param operation создание сущности
+     */
+    <T> T execute(String scope, String key, Object request, Class<T> responseType, Supplier<T> operation) {
+        if (key == null || key.isBlank()) {
+            return operation.get();
+        }
+        if (scope.length() > MAX_SCOPE_LENGTH || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(String.format("Idempotency key %s:%s is too long.", scope, key));
+        }
+        String storageKey = scope + ":" + key;
+        String requestHash = hash(request);
+
+        Optional<IdempotencyRecord> stored = storage.find(storageKey);
+        if (stored.isPresent()) {
+            return replay(stored.get(), key, requestHash, responseType);
+        }
+        CompletableFuture<IdempotencyRecord> mine = new CompletableFuture<>();
+        CompletableFuture<IdempotencyRecord> running = inFlight.putIfAbsent(storageKey, mine);
+        if (running != null) {
+            return replay(await(running), key, requestHash, responseType);
+        }
+        try {
+            // the first request may have finished between the lookup and putIfAbsent
+            IdempotencyRecord record = storage.find(storageKey).orElse(null);
+            if (record == null) {
+                T response = operation.get();
+                record = new IdempotencyRecord(requestHash, objectMapper.writeValueAsString(response));
+                storage.save(storageKey, record);
+                mine.complete(record);
+                return response;
+            }
+            mine.complete(record);
+            return replay(record, key, requestHash, responseType);
+        } catch (JsonProcessingException e) {
+            mine.completeExceptionally(e);
+            throw new IllegalStateException("Failed to serialize response", e);
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(storageKey, mine);
+        }
+    }
+
+    private <T> T replay(IdempotencyRecord record, String key, String requestHash, Class<T> responseType) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            String msg = String.format("%s %s was already used with a different request.", HEADER, key);
+            throw new IdempotencyKeyConflictException(msg);
+        }
+        try {
+            return objectMapper.readValue(record.getResponseBody(), responseType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to read stored response", e);
+        }
+    }
+
+    private IdempotencyRecord await(CompletableFuture<IdempotencyRecord> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // the concurrent duplicate fails the same way as the request it waited for
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return String.format("%064x", new BigInteger(1, digest.digest(objectMapper.writeValueAsBytes(request))));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to hash request", e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Параметры keyset-пагинации для GET /films и GET /users: клиент передает
+ * ?after=<id>&limit=N, а в ответ получает заголовок с курсором следующей страницы.
+ */
+final class Pagination {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private Pagination() {
+    }
+
+    static boolean isRequested(Long after, Integer limit) {
+        return after != null || limit != null;
+    }
+
+    static long afterOrDefault(Long after) {
+        return after == null ? 0L : after;
+    }
+
+    static int limitOrDefault(Integer limit) {
+        return limit == null ? DEFAULT_LIMIT : limit;
+    }
+
+    /**
+     * Курсор отдается только если страница заполнена полностью,
+     * иначе данных дальше нет.
+     */
+    static <T> HttpHeaders nextCursorHeaders(List<T> page, int limit, Function<T, Long> idExtractor) {
+        HttpHeaders headers = new HttpHeaders();
+        if (!page.isEmpty() && page.size() == limit) {
+            Long lastId = idExtractor.apply(page.get(page.size() - 1));
+            headers.add(NEXT_CURSOR_HEADER, String.valueOf(lastId));
+        }
+        return headers;
+    }
+}
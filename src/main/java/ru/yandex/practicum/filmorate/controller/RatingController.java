@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -11,6 +12,7 @@ import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.service.IRatingService;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/mpa")
@@ -18,20 +20,26 @@ import java.util.List;
 @Slf4j
 public class RatingController {
 
+    private static final CacheControl DICTIONARY_CACHE_CONTROL = CacheControl.maxAge(1, TimeUnit.DAYS).cachePublic();
+
     private final IRatingService ratingService;
 
     @GetMapping
     public ResponseEntity<List<Rating>> getAllRatings() {
         log.info("Received request to getAllRatings.");
         List<Rating> ratings = ratingService.getAllRatings();
-        return ResponseEntity.ok(ratings);
+        return ResponseEntity.ok()
+                .cacheControl(DICTIONARY_CACHE_CONTROL)
+                .body(ratings);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<Rating> getRatingById(@PathVariable("id") Long id) {
         log.info("Received request to getRatingById: {}", id);
         Rating rating = ratingService.getRatingById(id);
-        return ResponseEntity.ok(rating);
+        return ResponseEntity.ok()
+                .cacheControl(DICTIONARY_CACHE_CONTROL)
+                .body(rating);
     }
 
 }
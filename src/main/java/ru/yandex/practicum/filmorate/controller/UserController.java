@@ -2,37 +2,58 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.ObjectUtils;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.BulkReport;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.IUserService;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import javax.validation.constraints.Size;
 import java.util.List;
 
 @RestController
 @Slf4j
+@Validated
 @RequestMapping("/users")
 @RequiredArgsConstructor
 public class UserController {
 
     private final IUserService userService;
+    private final IdempotentRequests idempotentRequests;
 
     @GetMapping
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<List<User>> getAllUsers() {
-        List<User> users = userService.findAllUsers();
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<User>> getAllUsers(
+            @RequestParam(name = "after", required = false) @PositiveOrZero Long after,
+            @RequestParam(name = "limit", required = false) @Positive @Max(Pagination.MAX_LIMIT) Integer limit) {
+        if (!Pagination.isRequested(after, limit)) {
+            List<User> users = userService.findAllUsers();
+            return ResponseEntity.ok(users);
+        }
+        int pageSize = Pagination.limitOrDefault(limit);
+        List<User> users = userService.findUsersPage(Pagination.afterOrDefault(after), pageSize);
+        HttpHeaders headers = Pagination.nextCursorHeaders(users, pageSize, User::getId);
+        return ResponseEntity.ok().headers(headers).body(users);
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ResponseEntity<User> createUser(@RequestBody @Valid User user) {
+    public ResponseEntity<User> createUser(@RequestBody @Valid User user,
+                                           @RequestHeader(value = IdempotentRequests.HEADER, required = false)
+                                           @Size(max = IdempotentRequests.MAX_KEY_LENGTH) String idempotencyKey) {
         log.debug("Creating user {}", user);
         checkAndSetUserNameIfNeeded(user);
-        User created = userService.createUser(user);
+        User created = idempotentRequests.execute("users", idempotencyKey, user, User.class,
+                () -> userService.createUser(user));
         return new ResponseEntity<>(created, HttpStatus.CREATED);
     }
 
@@ -52,6 +73,15 @@ public class UserController {
         userService.addFriend(userId, friendId);
     }
 
+    /**
+     * Пакетное добавление друзей: уже существующая дружба и повторы не считаются ошибкой.
+     */
+    @PostMapping("/friends/bulk")
+    public ResponseEntity<BulkReport> addFriends(@RequestBody List<Friendship> friendships) {
+        BulkReport report = userService.addFriends(friendships);
+        return ResponseEntity.ok(report);
+    }
+
     @DeleteMapping("/{id}/friends/{friendId}")
     @ResponseStatus(HttpStatus.OK)
     public void removeFriend(@PathVariable("id") Long userId,
@@ -59,6 +89,13 @@ public class UserController {
         userService.removeFriend(userId, friendId);
     }
 
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.OK)
+    public void deleteUser(@PathVariable("id") Long userId) {
+        log.debug("Deleting user with ID {}", userId);
+        userService.deleteUser(userId);
+    }
+
     @GetMapping("/{id}/friends")
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<List<User>> getFriendsOfUser(@PathVariable("id") Long id) {
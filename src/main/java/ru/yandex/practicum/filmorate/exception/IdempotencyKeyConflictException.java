@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.exception;
+
+public class IdempotencyKeyConflictException extends RuntimeException {
+    public IdempotencyKeyConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Итог пакетной загрузки: сколько элементов принято, сколько оказались дубликатами
+ * и сколько отклонено. Для отклоненных элементов хранится номер во входных данных
+ * и причина, но не больше {@link #MAX_ERRORS} штук, чтобы отчет по миллионам
+ * плохих строк не занимал всю память.
+ */
+@Getter
+public class BulkReport {
+    public static final int MAX_ERRORS = 1000;
+
+    private long accepted;
+    private long duplicates;
+    private long rejected;
+    private final List<ItemError> errors = new ArrayList<>();
+
+    public void accept(long count) {
+        accepted += count;
+    }
+
+    public void duplicate(long count) {
+        duplicates += count;
+    }
+
+    public void reject(long index, String message) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new ItemError(index, message));
+        }
+    }
+
+    @Value
+    public static class ItemError {
+        long index;
+        String message;
+    }
+}
@@ -1,9 +1,11 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.jackson.Jacksonized;
+import ru.yandex.practicum.filmorate.util.LongBitmapSet;
 import ru.yandex.practicum.filmorate.validation.ReleaseDateCorrect;
 
 import javax.validation.constraints.NotBlank;
@@ -11,7 +13,6 @@ import javax.validation.constraints.Positive;
 import javax.validation.constraints.Size;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -22,7 +23,7 @@ import java.util.Set;
  * https://vladmihalcea.com/the-best-way-to-implement-equals-hashcode-and-tostring-with-jpa-and-hibernate/
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @Jacksonized
 public class Film {
     /**
@@ -47,18 +48,23 @@ public class Film {
     @Builder.Default
     private List<Genre> genres = new ArrayList<>();
 
+    /**
+     * Лайки хранятся в сжатом {@link LongBitmapSet}, а не в HashSet: при миллионах лайков
+     * это основной потребитель памяти.
+     */
     @Builder.Default
-    private Set<Long> userLikes = new HashSet<>();
+    @JsonDeserialize(as = LongBitmapSet.class)
+    private Set<Long> userLikes = new LongBitmapSet();
 
     public int getLikesCount() {
         return userLikes.size();
     }
 
-    public void addUserLike(Long userId) {
-        userLikes.add(userId);
+    public boolean addUserLike(Long userId) {
+        return userLikes.add(userId);
     }
 
-    public void removeUserLike(Long userId) {
-        userLikes.remove(userId);
+    public boolean removeUserLike(Long userId) {
+        return userLikes.remove(userId);
     }
 }
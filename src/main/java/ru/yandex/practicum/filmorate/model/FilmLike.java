@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * Лайк пользователя фильму - элемент пакетной загрузки лайков.
+ */
+@Data
+@Builder
+@Jacksonized
+public class FilmLike {
+    private Long filmId;
+    private Long userId;
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Облегченное представление фильма (?view=summary): вместо множества id пользователей,
+ * поставивших лайк, содержит только их количество. Размер ответа не растет
+ * вместе с популярностью фильма.
+ */
+@Data
+@Builder
+public class FilmSummary {
+    private Long id;
+    private String name;
+    private String description;
+    private LocalDate releaseDate;
+    private long duration;
+    private Rating mpa;
+    @Builder.Default
+    private List<Genre> genres = new ArrayList<>();
+    private long likesCount;
+
+    public static FilmSummary of(Film film, long likesCount) {
+        return FilmSummary.builder()
+                .id(film.getId())
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(film.getMpa())
+                .genres(film.getGenres())
+                .likesCount(likesCount)
+                .build();
+    }
+
+    public static FilmSummary of(Film film) {
+        return of(film, film.getLikesCount());
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * Пользователь userId добавил в друзья friendId - элемент пакетной загрузки дружбы.
+ */
+@Data
+@Builder
+@Jacksonized
+public class Friendship {
+    private Long userId;
+    private Long friendId;
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+/**
+ * Сохраненный ответ на запрос с заголовком Idempotency-Key: хэш тела запроса,
+ * чтобы отличить повтор от другого запроса с тем же ключом, и JSON ответа.
+ */
+@Value
+public class IdempotencyRecord {
+    String requestHash;
+    String responseBody;
+}
@@ -19,7 +19,7 @@ import java.util.Set;
  * https://vladmihalcea.com/the-best-way-to-implement-equals-hashcode-and-tostring-with-jpa-and-hibernate/
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @Jacksonized
 public class User {
     /**
@@ -1,23 +1,47 @@
 package ru.yandex.practicum.filmorate.service;
 
+import ru.yandex.practicum.filmorate.model.BulkReport;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmSummary;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface IFilmService {
 
     List<Film> findAllFilms();
 
+    List<Film> findFilmsPage(long afterId, int limit);
+
+    void exportFilms(Consumer<Film> consumer);
+
     Film createFilm(Film film);
 
     Film updateFilm(Film film);
 
+    BulkReport importFilms(InputStream in) throws IOException;
+
     void addLikeByUserWithId(Long userId, Long filmId);
 
+    BulkReport addLikes(List<FilmLike> likes);
+
     void removeLikeByUserWithId(Long userId, Long filmId);
 
+    void deleteFilm(Long filmId);
+
     List<Film> getMostPopularFilms(long count);
 
     Film getFilmById(Long filmId);
 
+    List<FilmSummary> findAllFilmSummaries();
+
+    List<FilmSummary> findFilmSummariesPage(long afterId, int limit);
+
+    List<FilmSummary> getMostPopularFilmSummaries(long count);
+
+    FilmSummary getFilmSummaryById(Long filmId);
+
 }
@@ -1,5 +1,7 @@
 package ru.yandex.practicum.filmorate.service;
 
+import ru.yandex.practicum.filmorate.model.BulkReport;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
@@ -8,14 +10,20 @@ public interface IUserService {
 
     List<User> findAllUsers();
 
+    List<User> findUsersPage(long afterId, int limit);
+
     User createUser(User user);
 
     User updateUser(User user);
 
     void addFriend(Long userId, Long friendId);
 
+    BulkReport addFriends(List<Friendship> friendships);
+
     void removeFriend(Long userId, Long friendId);
 
+    void deleteUser(Long userId);
+
     List<User> findCommonFriendsWith(Long userId, Long friendId);
 
     List<User> findFriendsOfUser(Long userId);
@@ -1,30 +1,60 @@
 package ru.yandex.practicum.filmorate.service.impl;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.model.BulkReport;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmSummary;
 import ru.yandex.practicum.filmorate.service.IFilmService;
-import ru.yandex.practicum.filmorate.service.IUserService;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.LongBitmapSet;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class FilmService implements IFilmService {
 
     @Qualifier("filmDbStorage")
     private final FilmStorage filmStorage;
-    private final IUserService userService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    @Value("${filmorate.bulk.chunk-size:1000}")
+    private final int bulkChunkSize;
 
     @Override
     public List<Film> findAllFilms() {
         return filmStorage.findAll();
     }
 
+    @Override
+    public List<Film> findFilmsPage(long afterId, int limit) {
+        return filmStorage.findPage(afterId, limit);
+    }
+
+    @Override
+    public void exportFilms(Consumer<Film> consumer) {
+        filmStorage.exportAll(consumer);
+    }
+
     @Override
     public Film createFilm(Film film) {
         return filmStorage.save(film);
@@ -35,18 +65,70 @@ public class FilmService implements IFilmService {
         return filmStorage.update(film);
     }
 
+    /**
+     * Читает фильмы из JSON-массива или NDJSON по одному, проверяет те же ограничения,
+     * что и POST /films, и сохраняет пачками по filmorate.bulk.chunk-size, каждую
+     * в своей транзакции. Ошибка в элементе не прерывает загрузку, а попадает в отчет.
+     * Только синтаксическая ошибка JSON останавливает чтение: после нее границы
+     * следующих элементов неизвестны.
+     */
+    @Override
+    public BulkReport importFilms(InputStream in) throws IOException {
+        BulkReport report = new BulkReport();
+        List<Film> chunk = new ArrayList<>(bulkChunkSize);
+        List<Long> chunkIndexes = new ArrayList<>(bulkChunkSize);
+        long index = 0;
+        try (MappingIterator<Film> films = objectMapper.readerFor(Film.class).readValues(in)) {
+            while (true) {
+                Film film;
+                try {
+                    if (!films.hasNextValue()) {
+                        break;
+                    }
+                    film = films.nextValue();
+                } catch (JsonParseException e) {
+                    report.reject(index, e.getOriginalMessage());
+                    break;
+                } catch (JsonMappingException e) {
+                    report.reject(index++, e.getOriginalMessage());
+                    continue;
+                }
+                String violations = validate(film);
+                if (violations != null) {
+                    report.reject(index++, violations);
+                    continue;
+                }
+                chunk.add(film);
+                chunkIndexes.add(index++);
+                if (chunk.size() == bulkChunkSize) {
+                    saveChunk(chunk, chunkIndexes, report);
+                    chunk.clear();
+                    chunkIndexes.clear();
+                }
+            }
+        }
+        saveChunk(chunk, chunkIndexes, report);
+        return report;
+    }
+
     @Override
     public void addLikeByUserWithId(Long userId, Long filmId) {
-        // ensures that we have the user in storage
-        User user = getUser(userId);
-        filmStorage.addUserLikeToFilm(user.getId(), filmId);
+        filmStorage.addUserLikeToFilm(userId, filmId);
+    }
+
+    @Override
+    public BulkReport addLikes(List<FilmLike> likes) {
+        return filmStorage.addUserLikes(likes);
     }
 
     @Override
     public void removeLikeByUserWithId(Long userId, Long filmId) {
-        // ensures that we have the user in storage
-        User user = getUser(userId);
-        filmStorage.removeUserLike(user.getId(), filmId);
+        filmStorage.removeUserLike(userId, filmId);
+    }
+
+    @Override
+    public void deleteFilm(Long filmId) {
+        filmStorage.deleteFilm(filmId);
     }
 
     @Override
@@ -63,7 +145,72 @@ public class FilmService implements IFilmService {
                 });
     }
 
-    private User getUser(Long userId) {
-        return userService.getUserById(userId);
+    @Override
+    public List<FilmSummary> findAllFilmSummaries() {
+        return filmStorage.findAllSummaries();
+    }
+
+    @Override
+    public List<FilmSummary> findFilmSummariesPage(long afterId, int limit) {
+        return filmStorage.findSummariesPage(afterId, limit);
+    }
+
+    @Override
+    public List<FilmSummary> getMostPopularFilmSummaries(long count) {
+        return filmStorage.getMostPopularFilmSummaries(count);
+    }
+
+    @Override
+    public FilmSummary getFilmSummaryById(Long filmId) {
+        return filmStorage.findFilmSummaryById(filmId)
+                .orElseThrow(() -> {
+                    String msg = String.format("Film with ID = %d not found.", filmId);
+                    return new ResourceNotFoundException(msg);
+                });
+    }
+
+    private String validate(Film film) {
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(" "));
+    }
+
+    /**
+     * Если пачка не сохранилась, фильмы из нее сохраняются по одному,
+     * чтобы в отчет попали только те, что действительно не прошли проверку.
+     * Хранилище получает копии: откаченная попытка оставляет в переданных фильмах
+     * сгенерированные id, и повтор с ними упал бы или вернул несохраненные id.
+     */
+    private void saveChunk(List<Film> chunk, List<Long> indexes, BulkReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            filmStorage.saveAll(chunk.stream()
+                    .map(FilmService::unsavedCopy)
+                    .collect(Collectors.toList()));
+            report.accept(chunk.size());
+        } catch (RuntimeException e) {
+            if (chunk.size() == 1) {
+                log.debug("Bulk import of film #{} failed: {}", indexes.get(0), e.getMessage());
+                report.reject(indexes.get(0), e.getMessage());
+                return;
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                saveChunk(List.of(chunk.get(i)), List.of(indexes.get(i)), report);
+            }
+        }
+    }
+
+    private static Film unsavedCopy(Film film) {
+        return film.toBuilder()
+                .genres(new ArrayList<>(film.getGenres()))
+                .userLikes(LongBitmapSet.copyOf(film.getUserLikes()))
+                .build();
     }
 }
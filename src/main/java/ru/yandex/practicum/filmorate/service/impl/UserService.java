@@ -4,6 +4,8 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.model.BulkReport;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.IUserService;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
@@ -22,6 +24,11 @@ public class UserService implements IUserService {
         return userStorage.findAll();
     }
 
+    @Override
+    public List<User> findUsersPage(long afterId, int limit) {
+        return userStorage.findPage(afterId, limit);
+    }
+
     @Override
     public User createUser(User user) {
         return userStorage.save(user);
@@ -37,11 +44,21 @@ public class UserService implements IUserService {
         userStorage.addFriendForUser(userId, friendId);
     }
 
+    @Override
+    public BulkReport addFriends(List<Friendship> friendships) {
+        return userStorage.addFriends(friendships);
+    }
+
     @Override
     public void removeFriend(Long userId, Long friendId) {
         userStorage.removeFriendForUser(userId, friendId);
     }
 
+    @Override
+    public void deleteUser(Long userId) {
+        userStorage.deleteUser(userId);
+    }
+
     @Override
     public List<User> findCommonFriendsWith(Long userId, Long friendId) {
         return userStorage.getCommonFriendsForUser(userId, friendId);
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Индекс популярности фильмов: фильмы упорядочены по количеству лайков (по убыванию), затем по id.
+ * Лайк или его удаление обновляет индекс за O(log n), а топ-K читается с начала упорядоченного
+ * множества без сортировки всех фильмов.
+ * <p>
+ * Глобальной блокировки нет: изменения одного фильма сериализуются через compute в ConcurrentHashMap,
+ * а упорядоченное множество - ConcurrentSkipListSet. Чтение топа не атомарно относительно
+ * изменений: итератор ConcurrentSkipListSet слабо согласован, и пока фильм переезжает на новое
+ * место, читатель может увидеть его дважды (дубликат отбрасывается) или не увидеть совсем, если
+ * новая запись оказалась позади итератора, а старая удалена впереди. Следующее чтение уже
+ * видит фильм на новом месте.
+ */
+@Component
+@Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+public class FilmPopularityIndex {
+
+    private static final Comparator<Entry> POPULARITY_ORDER = Comparator
+            .comparingLong((Entry e) -> e.likesCount).reversed()
+            .thenComparingLong(e -> e.filmId);
+
+    private final ConcurrentMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(POPULARITY_ORDER);
+
+    public void set(Long filmId, long likesCount) {
+        entries.compute(filmId, (id, old) -> replace(old, new Entry(id, likesCount)));
+    }
+
+    public void add(Long filmId, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        entries.compute(filmId, (id, old) -> {
+            long likesCount = old == null ? delta : old.likesCount + delta;
+            return replace(old, new Entry(id, likesCount));
+        });
+    }
+
+    public void remove(Long filmId) {
+        entries.computeIfPresent(filmId, (id, old) -> {
+            ranking.remove(old);
+            return null;
+        });
+    }
+
+    /**
+     * Заполняет индекс заново, например, при старте приложения.
+     */
+    public void rebuild(Map<Long, Long> likesCounts) {
+        entries.keySet().forEach(this::remove);
+        likesCounts.forEach(this::set);
+    }
+
+    public List<Long> findTopFilmIds(long count) {
+        List<Long> result = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (Entry entry : ranking) {
+            if (result.size() >= count) {
+                break;
+            }
+            if (seen.add(entry.filmId)) {
+                result.add(entry.filmId);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry replace(Entry old, Entry updated) {
+        if (old != null && old.likesCount == updated.likesCount) {
+            return old;
+        }
+        ranking.add(updated);
+        if (old != null) {
+            ranking.remove(old);
+        }
+        return updated;
+    }
+
+    private static final class Entry {
+        private final long filmId;
+        private final long likesCount;
+
+        private Entry(long filmId, long likesCount) {
+            this.filmId = filmId;
+            this.likesCount = likesCount;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.model.BulkReport;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmSummary;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public interface FilmStorage {
 
@@ -11,18 +17,106 @@ public interface FilmStorage {
 
     Film update(Film film);
 
+    /**
+     * Сохраняет новые фильмы одной операцией. Хранилище в БД делает это в одной транзакции:
+     * если хотя бы один фильм не прошел проверку, не сохраняется ни один.
+     */
+    default List<Film> saveAll(List<Film> films) {
+        return films.stream()
+                .map(this::save)
+                .collect(Collectors.toList());
+    }
+
     List<Film> findAll();
 
+    List<Film> findPage(long afterId, int limit);
+
     void addUserLikeToFilm(Long userId, Long filmId);
 
+    /**
+     * Пакетное добавление лайков. Повторы и уже существующие лайки не считаются ошибкой,
+     * а учитываются в отчете как дубликаты.
+     */
+    default BulkReport addUserLikes(List<FilmLike> likes) {
+        BulkReport report = new BulkReport();
+        for (int i = 0; i < likes.size(); i++) {
+            FilmLike like = likes.get(i);
+            if (like.getFilmId() == null || like.getUserId() == null) {
+                report.reject(i, "Both ids must be set.");
+                continue;
+            }
+            Optional<Film> film = findFilmById(like.getFilmId());
+            if (film.isPresent() && film.get().getUserLikes().contains(like.getUserId())) {
+                report.duplicate(1);
+                continue;
+            }
+            try {
+                addUserLikeToFilm(like.getUserId(), like.getFilmId());
+                report.accept(1);
+            } catch (ResourceNotFoundException e) {
+                report.reject(i, e.getMessage());
+            }
+        }
+        return report;
+    }
+
     void removeUserLike(Long userId, Long filmId);
 
+    /**
+     * Удаляет фильм. Хранилище в БД только помечает фильм удаленным, так что он сразу
+     * пропадает из чтения, а его лайки и жанры позже удаляет фоновая очистка.
+     */
+    void deleteFilm(Long filmId);
+
     List<Film> getMostPopularFilms(long count);
 
     Optional<Film> findFilmById(Long filmId);
 
     Optional<Long> checkFilmId(Long id);
 
+    /**
+     * Передает все фильмы в порядке возрастания id по одному, не собирая их в список.
+     * По умолчанию фильмы читаются страницами через {@link #findPage}.
+     */
+    default void exportAll(Consumer<Film> consumer) {
+        int pageSize = 1000;
+        long afterId = 0;
+        List<Film> page;
+        do {
+            page = findPage(afterId, pageSize);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize);
+    }
+
+    /**
+     * Краткие сведения о фильмах. По умолчанию они строятся из полных фильмов, хранилища,
+     * которые умеют считать лайки без их загрузки, переопределяют этот и следующие методы.
+     */
+    default List<FilmSummary> findAllSummaries() {
+        return toSummaries(findAll());
+    }
+
+    default List<FilmSummary> findSummariesPage(long afterId, int limit) {
+        return toSummaries(findPage(afterId, limit));
+    }
+
+    default List<FilmSummary> getMostPopularFilmSummaries(long count) {
+        return toSummaries(getMostPopularFilms(count));
+    }
+
+    default Optional<FilmSummary> findFilmSummaryById(Long filmId) {
+        return findFilmById(filmId).map(FilmSummary::of);
+    }
+
+    private static List<FilmSummary> toSummaries(List<Film> films) {
+        return films.stream()
+                .map(FilmSummary::of)
+                .collect(Collectors.toList());
+    }
+
     default boolean filmAlreadyExists(Long filmId) {
         return filmId != null && checkFilmId(filmId).isPresent();
     }
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Фильмы изменились в базе в обход FilmStorage, например потеряли лайки удаленного
+ * пользователя. Публикуется после фиксации транзакции; подписчики, хранящие
+ * копии фильмов, должны их сбросить.
+ */
+public class FilmsChangedEvent extends ApplicationEvent {
+
+    private final List<Long> filmIds;
+
+    public FilmsChangedEvent(Object source, Collection<Long> filmIds) {
+        super(source);
+        this.filmIds = List.copyOf(filmIds);
+    }
+
+    public List<Long> getFilmIds() {
+        return filmIds;
+    }
+}
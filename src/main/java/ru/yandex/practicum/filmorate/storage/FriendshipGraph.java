@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Граф дружбы по id пользователей: для каждого пользователя хранится отсортированный
+ * массив long с id его друзей (как строка в CSR-представлении). Друзья и общие друзья
+ * считаются по этим массивам, общие друзья - линейным слиянием двух отсортированных массивов.
+ * <p>
+ * Массивы не меняются после публикации: изменение строит новый массив внутри compute,
+ * поэтому читатели работают без блокировок и всегда видят целую строку.
+ * Возвращаемые массивы общие, изменять их нельзя.
+ */
+@Component
+@Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+public class FriendshipGraph {
+
+    private static final long[] NO_FRIENDS = new long[0];
+
+    private final ConcurrentMap<Long, long[]> adjacency = new ConcurrentHashMap<>();
+
+    public boolean addFriend(Long userId, Long friendId) {
+        boolean[] added = new boolean[1];
+        adjacency.compute(userId, (id, friends) -> {
+            long[] current = friends == null ? NO_FRIENDS : friends;
+            int index = Arrays.binarySearch(current, friendId);
+            if (index >= 0) {
+                return current;
+            }
+            index = -index - 1;
+            long[] updated = new long[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            updated[index] = friendId;
+            System.arraycopy(current, index, updated, index + 1, current.length - index);
+            added[0] = true;
+            return updated;
+        });
+        return added[0];
+    }
+
+    public boolean removeFriend(Long userId, Long friendId) {
+        boolean[] removed = new boolean[1];
+        adjacency.computeIfPresent(userId, (id, friends) -> {
+            int index = Arrays.binarySearch(friends, friendId);
+            if (index < 0) {
+                return friends;
+            }
+            long[] updated = new long[friends.length - 1];
+            System.arraycopy(friends, 0, updated, 0, index);
+            System.arraycopy(friends, index + 1, updated, index, friends.length - index - 1);
+            removed[0] = true;
+            return updated;
+        });
+        return removed[0];
+    }
+
+    public void setFriends(Long userId, Collection<Long> friendIds) {
+        long[] friends = friendIds.stream()
+                .mapToLong(Long::longValue)
+                .sorted()
+                .distinct()
+                .toArray();
+        adjacency.put(userId, friends);
+    }
+
+    /**
+     * Удаляет пользователя вместе с ребрами, ведущими к нему. Это обход всего графа,
+     * он рассчитан на редкие операции вроде удаления пользователя.
+     *
+     * @return id пользователей, у которых удаленный был в друзьях
+     */
+    public long[] removeUser(Long userId) {
+        adjacency.remove(userId);
+        return adjacency.keySet().stream()
+                .filter(id -> removeFriend(id, userId))
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    /**
+     * Заполняет граф заново, например, при старте приложения.
+     */
+    public void rebuild(Map<Long, ? extends Collection<Long>> friendsByUser) {
+        adjacency.clear();
+        friendsByUser.forEach(this::setFriends);
+    }
+
+    /**
+     * @return отсортированные по возрастанию id друзей пользователя
+     */
+    public long[] getFriendIds(Long userId) {
+        return adjacency.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    /**
+     * @return отсортированные по возрастанию id общих друзей двух пользователей
+     */
+    public long[] getCommonFriendIds(Long userId, Long otherId) {
+        long[] first = getFriendIds(userId);
+        long[] second = getFriendIds(otherId);
+        long[] common = new long[Math.min(first.length, second.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return count == common.length ? common : Arrays.copyOf(common, count);
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.IdempotencyRecord;
+
+import java.util.Optional;
+
+/**
+ * Хранилище ответов по ключам идемпотентности. Записи живут filmorate.idempotency.ttl-seconds,
+ * после чего ключ можно использовать заново.
+ */
+public interface IdempotencyStorage {
+
+    /**
+     * Длина столбца IdempotencyKeys.ID_KEY в schema.sql.
+     */
+    int MAX_KEY_LENGTH = 300;
+
+    Optional<IdempotencyRecord> find(String key);
+
+    /**
+     * Если запись с таким ключом уже есть, остается прежняя.
+     */
+    void save(String key, IdempotencyRecord record);
+}
@@ -1,5 +1,8 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.model.BulkReport;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
@@ -13,10 +16,50 @@ public interface UserStorage {
 
     List<User> findAll();
 
+    List<User> findPage(long afterId, int limit);
+
     void addFriendForUser(Long userId, Long newFriendId);
 
+    /**
+     * Пакетное добавление друзей. Повторы и уже существующая дружба не считаются ошибкой,
+     * а учитываются в отчете как дубликаты.
+     */
+    default BulkReport addFriends(List<Friendship> friendships) {
+        BulkReport report = new BulkReport();
+        for (int i = 0; i < friendships.size(); i++) {
+            Friendship friendship = friendships.get(i);
+            Long userId = friendship.getUserId();
+            Long friendId = friendship.getFriendId();
+            if (userId == null || friendId == null) {
+                report.reject(i, "Both ids must be set.");
+                continue;
+            }
+            if (userId.equals(friendId)) {
+                report.reject(i, String.format("ID: %d cannot refer to itself.", userId));
+                continue;
+            }
+            try {
+                if (getFriends(userId).stream().anyMatch(f -> friendId.equals(f.getId()))) {
+                    report.duplicate(1);
+                    continue;
+                }
+                addFriendForUser(userId, friendId);
+                report.accept(1);
+            } catch (ResourceNotFoundException e) {
+                report.reject(i, e.getMessage());
+            }
+        }
+        return report;
+    }
+
     void removeFriendForUser(Long userId, Long friendId);
 
+    /**
+     * Удаляет пользователя. Хранилище в БД только помечает пользователя удаленным,
+     * а его дружбу и лайки позже удаляет фоновая очистка.
+     */
+    void deleteUser(Long userId);
+
     List<User> getFriends(Long userId);
 
     List<User> getCommonFriendsForUser(Long userId, Long friendId);
@@ -0,0 +1,158 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Кэш ограниченного размера с вытеснением давно не использованных записей (LRU)
+ * и временем жизни записи (TTL). Ведет статистику попаданий, промахов и вытеснений.
+ * <p>
+ * У ключей есть поколения: инвалидация ключа меняет его поколение, а {@link #putIfGeneration}
+ * не кладет значение, загруженное до инвалидации. Поколения хранятся в фиксированном числе
+ * полос по хэшу ключа, поэтому их память не растет с числом ключей; инвалидация соседнего
+ * по полосе ключа лишь отменяет лишнюю вставку.
+ */
+public class BoundedCache<K, V> {
+
+    private static final int GENERATION_STRIPES = 256;
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final long[] generations = new long[GENERATION_STRIPES];
+    // bumped by invalidations that do not name their keys
+    private long epoch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BoundedCache(String name, int maxSize, Duration ttl) {
+        this(name, maxSize, ttl, System::nanoTime);
+    }
+
+    BoundedCache(String name, int maxSize, Duration ttl, LongSupplier nanoClock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+        // access order makes the eldest entry the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(nanoClock.getAsLong())) {
+            entries.remove(key);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        puts.increment();
+        entries.put(key, new Entry<>(value, nanoClock.getAsLong() + ttlNanos));
+    }
+
+    /**
+     * Текущее поколение ключа. Читается до загрузки значения из хранилища.
+     */
+    public synchronized long generation(K key) {
+        return epoch + generations[stripe(key)];
+    }
+
+    /**
+     * Кладет значение, только если ключ не инвалидировали с момента чтения поколения.
+     *
+     * @return true, если значение положено в кэш
+     */
+    public synchronized boolean putIfGeneration(K key, V value, long generation) {
+        if (generation(key) != generation) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+        generations[stripe(key)]++;
+    }
+
+    /**
+     * Удаляет все записи, значения которых удовлетворяют условию.
+     */
+    public synchronized void invalidateIf(Predicate<V> condition) {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (condition.test(iterator.next().value)) {
+                iterator.remove();
+            }
+        }
+        // a value matching the condition may be loading right now and is not in the cache yet
+        epoch++;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        epoch++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), puts.sum(), evictions.sum());
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAtNanos;
+
+        private Entry(V value, long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.RequiredArgsConstructor;
+import ru.yandex.practicum.filmorate.model.BulkReport;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmSummary;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.LongBitmapSet;
+import ru.yandex.practicum.filmorate.util.TransactionHooks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Кэширующая обертка над {@link FilmStorage}: фильмы по id читаются через кэш,
+ * а любая запись, меняющая фильм, удаляет его из кэша до изменения и еще раз после
+ * коммита транзакции. Чтение запоминает поколение ключа до загрузки и не кладет фильм
+ * в кэш, если ключ за это время инвалидировали, так что старая версия, прочитанная
+ * до коммита, в кэш не попадет. В кэше хранятся копии, так что изменение возвращенного
+ * объекта кэш не портит.
+ */
+@RequiredArgsConstructor
+public class CachingFilmStorage implements FilmStorage {
+
+    private final FilmStorage delegate;
+    private final BoundedCache<Long, Film> cache;
+
+    @Override
+    public Film save(Film film) {
+        Film saved = delegate.save(film);
+        Film cached = copy(saved);
+        TransactionHooks.runAfterCommit(() -> cache.put(cached.getId(), cached));
+        return saved;
+    }
+
+    @Override
+    public Film update(Film film) {
+        cache.invalidate(film.getId());
+        Film updated = delegate.update(film);
+        invalidateAfterCommit(film.getId());
+        return updated;
+    }
+
+    @Override
+    public List<Film> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public void addUserLikeToFilm(Long userId, Long filmId) {
+        cache.invalidate(filmId);
+        delegate.addUserLikeToFilm(userId, filmId);
+        invalidateAfterCommit(filmId);
+    }
+
+    @Override
+    public BulkReport addUserLikes(List<FilmLike> likes) {
+        Set<Long> filmIds = likes.stream().map(FilmLike::getFilmId).collect(Collectors.toSet());
+        filmIds.forEach(cache::invalidate);
+        BulkReport report = delegate.addUserLikes(likes);
+        TransactionHooks.runAfterCommit(() -> filmIds.forEach(cache::invalidate));
+        return report;
+    }
+
+    @Override
+    public void removeUserLike(Long userId, Long filmId) {
+        cache.invalidate(filmId);
+        delegate.removeUserLike(userId, filmId);
+        invalidateAfterCommit(filmId);
+    }
+
+    @Override
+    public void deleteFilm(Long filmId) {
+        cache.invalidate(filmId);
+        delegate.deleteFilm(filmId);
+        invalidateAfterCommit(filmId);
+    }
+
+    @Override
+    public List<Film> getMostPopularFilms(long count) {
+        return delegate.getMostPopularFilms(count);
+    }
+
+    @Override
+    public Optional<Film> findFilmById(Long filmId) {
+        Film cached = cache.get(filmId);
+        if (cached != null) {
+            return Optional.of(copy(cached));
+        }
+        long generation = cache.generation(filmId);
+        Optional<Film> film = delegate.findFilmById(filmId);
+        film.ifPresent(f -> cache.putIfGeneration(filmId, copy(f), generation));
+        return film;
+    }
+
+    @Override
+    public Optional<Long> checkFilmId(Long id) {
+        return delegate.checkFilmId(id);
+    }
+
+    @Override
+    public List<Film> saveAll(List<Film> films) {
+        // new ids are never cached, nothing to evict
+        return delegate.saveAll(films);
+    }
+
+    @Override
+    public void exportAll(Consumer<Film> consumer) {
+        delegate.exportAll(consumer);
+    }
+
+    @Override
+    public List<FilmSummary> findAllSummaries() {
+        return delegate.findAllSummaries();
+    }
+
+    @Override
+    public List<FilmSummary> findSummariesPage(long afterId, int limit) {
+        return delegate.findSummariesPage(afterId, limit);
+    }
+
+    @Override
+    public List<FilmSummary> getMostPopularFilmSummaries(long count) {
+        return delegate.getMostPopularFilmSummaries(count);
+    }
+
+    @Override
+    public Optional<FilmSummary> findFilmSummaryById(Long filmId) {
+        Film cached = cache.get(filmId);
+        if (cached != null) {
+            return Optional.of(FilmSummary.of(copy(cached)));
+        }
+        return delegate.findFilmSummaryById(filmId);
+    }
+
+    private void invalidateAfterCommit(Long filmId) {
+        TransactionHooks.runAfterCommit(() -> cache.invalidate(filmId));
+    }
+
+    /**
+     * Копия фильма вместе с жанрами и рейтингом: они тоже изменяемые, и правка копии
+     * не должна доходить до фильма в кеше.
+     */
+    private Film copy(Film film) {
+        List<Genre> genres = new ArrayList<>(film.getGenres().size());
+        for (Genre genre : film.getGenres()) {
+            genres.add(Genre.builder().id(genre.getId()).name(genre.getName()).build());
+        }
+        Rating mpa = film.getMpa() == null
+                ? null
+                : Rating.builder().id(film.getMpa().getId()).name(film.getMpa().getName()).build();
+        return film.toBuilder()
+                .mpa(mpa)
+                .genres(genres)
+                .userLikes(LongBitmapSet.copyOf(film.getUserLikes()))
+                .build();
+    }
+}
@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.FilmsChangedEvent;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.Duration;
+
+/**
+ * Оборачивает хранилища filmDbStorage и userDbStorage в кэширующие декораторы,
+ * если включено filmorate.cache.enabled. Сервисы по-прежнему получают бины по тем же
+ * квалификаторам и ничего не знают о кэше. Фильмы, измененные в обход хранилища,
+ * сбрасываются из кэша по {@link FilmsChangedEvent}.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.cache.enabled")
+public class CachingStoragePostProcessor implements BeanPostProcessor, MeterBinder,
+        ApplicationListener<FilmsChangedEvent> {
+
+    private static final String FILM_STORAGE_BEAN = "filmDbStorage";
+    private static final String USER_STORAGE_BEAN = "userDbStorage";
+
+    private final BoundedCache<Long, Film> filmCache;
+    private final BoundedCache<Long, User> userCache;
+
+    public CachingStoragePostProcessor(@Value("${filmorate.cache.max-size:10000}") int maxSize,
+                                       @Value("${filmorate.cache.ttl-seconds:300}") long ttlSeconds) {
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        this.filmCache = new BoundedCache<>("films", maxSize, ttl);
+        this.userCache = new BoundedCache<>("users", maxSize, ttl);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (FILM_STORAGE_BEAN.equals(beanName) && bean instanceof FilmStorage) {
+            return new CachingFilmStorage((FilmStorage) bean, filmCache);
+        }
+        if (USER_STORAGE_BEAN.equals(beanName) && bean instanceof UserStorage) {
+            return new CachingUserStorage((UserStorage) bean, userCache);
+        }
+        return bean;
+    }
+
+    @Override
+    public void onApplicationEvent(FilmsChangedEvent event) {
+        event.getFilmIds().forEach(filmCache::invalidate);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new BoundedCacheMetrics(filmCache).bindTo(registry);
+        new BoundedCacheMetrics(userCache).bindTo(registry);
+    }
+
+    public BoundedCache<Long, Film> getFilmCache() {
+        return filmCache;
+    }
+
+    public BoundedCache<Long, User> getUserCache() {
+        return userCache;
+    }
+}
@@ -0,0 +1,125 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.RequiredArgsConstructor;
+import ru.yandex.practicum.filmorate.model.BulkReport;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.TransactionHooks;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Кэширующая обертка над {@link UserStorage}. Пользователь хранится в кэше вместе с друзьями,
+ * поэтому при обновлении пользователя из кэша удаляются и те, у кого он в друзьях.
+ * Инвалидация и вставка после загрузки устроены так же, как в {@link CachingFilmStorage}.
+ */
+@RequiredArgsConstructor
+public class CachingUserStorage implements UserStorage {
+
+    private final UserStorage delegate;
+    private final BoundedCache<Long, User> cache;
+
+    @Override
+    public User save(User user) {
+        User saved = delegate.save(user);
+        User cached = copy(saved);
+        TransactionHooks.runAfterCommit(() -> cache.put(cached.getId(), cached));
+        return saved;
+    }
+
+    @Override
+    public User update(User user) {
+        invalidateWithFriendsOf(user.getId());
+        User updated = delegate.update(user);
+        TransactionHooks.runAfterCommit(() -> invalidateWithFriendsOf(user.getId()));
+        return updated;
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public void addFriendForUser(Long userId, Long newFriendId) {
+        cache.invalidate(userId);
+        delegate.addFriendForUser(userId, newFriendId);
+        invalidateAfterCommit(userId);
+    }
+
+    @Override
+    public BulkReport addFriends(List<Friendship> friendships) {
+        Set<Long> userIds = friendships.stream().map(Friendship::getUserId).collect(Collectors.toSet());
+        userIds.forEach(cache::invalidate);
+        BulkReport report = delegate.addFriends(friendships);
+        TransactionHooks.runAfterCommit(() -> userIds.forEach(cache::invalidate));
+        return report;
+    }
+
+    @Override
+    public void removeFriendForUser(Long userId, Long friendId) {
+        cache.invalidate(userId);
+        delegate.removeFriendForUser(userId, friendId);
+        invalidateAfterCommit(userId);
+    }
+
+    @Override
+    public void deleteUser(Long userId) {
+        invalidateWithFriendsOf(userId);
+        delegate.deleteUser(userId);
+        TransactionHooks.runAfterCommit(() -> invalidateWithFriendsOf(userId));
+    }
+
+    @Override
+    public List<User> getFriends(Long userId) {
+        return delegate.getFriends(userId);
+    }
+
+    @Override
+    public List<User> getCommonFriendsForUser(Long userId, Long friendId) {
+        return delegate.getCommonFriendsForUser(userId, friendId);
+    }
+
+    @Override
+    public Optional<User> findUserById(Long id) {
+        User cached = cache.get(id);
+        if (cached != null) {
+            return Optional.of(copy(cached));
+        }
+        long generation = cache.generation(id);
+        Optional<User> user = delegate.findUserById(id);
+        user.ifPresent(u -> cache.putIfGeneration(id, copy(u), generation));
+        return user;
+    }
+
+    @Override
+    public Optional<Long> checkUserId(Long id) {
+        return delegate.checkUserId(id);
+    }
+
+    private void invalidateAfterCommit(Long userId) {
+        TransactionHooks.runAfterCommit(() -> cache.invalidate(userId));
+    }
+
+    private void invalidateWithFriendsOf(Long userId) {
+        cache.invalidate(userId);
+        cache.invalidateIf(u -> u.getFriends().stream()
+                .anyMatch(friend -> userId.equals(friend.getId())));
+    }
+
+    private User copy(User user) {
+        return user.toBuilder()
+                .friends(new HashSet<>(user.getFriends()))
+                .build();
+    }
+}
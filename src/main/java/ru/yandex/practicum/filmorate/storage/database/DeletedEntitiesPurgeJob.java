@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.purge.enabled", matchIfMissing = true)
+public class DeletedEntitiesPurgeJob {
+
+    private final DeletedEntitiesPurger purger;
+
+    @Scheduled(
+            initialDelayString = "${filmorate.purge.interval-ms:60000}",
+            fixedDelayString = "${filmorate.purge.interval-ms:60000}"
+    )
+    public void purge() {
+        int purged = purger.purge();
+        if (purged > 0) {
+            log.debug("Purged {} deleted films and users.", purged);
+        }
+    }
+}
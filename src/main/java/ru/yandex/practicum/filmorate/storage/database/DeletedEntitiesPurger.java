@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.storage.FilmsChangedEvent;
+import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
+import ru.yandex.practicum.filmorate.util.TransactionHooks;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Очистка фильмов и пользователей, помеченных удаленными. Связанные строки удаляются
+ * порциями по batch-size строк, каждая порция в своей короткой транзакции и с паузой
+ * batch-pause-ms после нее, поэтому очистка популярного фильма не держит долгих
+ * блокировок на FilmUserLikes. Строка самого фильма или пользователя удаляется последней.
+ * <p>
+ * Лайки удаленного пользователя вычитаются из счетчиков и топа сразу при пометке
+ * ({@link #subtractLikesOfUser}) и не читаются, а строки FilmUserLikes удаляет очистка.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeletedEntitiesPurger {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlProvider sqlProvider;
+    private final FilmLikesCounter filmLikesCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    @Value("${filmorate.purge.batch-size:500}")
+    private final int batchSize;
+    @Value("${filmorate.purge.batch-pause-ms:20}")
+    private final long batchPauseMs;
+    @Value("${filmorate.purge.max-entities-per-run:100}")
+    private final int maxEntitiesPerRun;
+
+    private volatile BiConsumer<Long, Long> likesCountListener = (filmId, delta) -> {
+    };
+
+    /**
+     * Вызывается внутри транзакции пометки пользователя удаленным для каждого фильма, потерявшего его лайк.
+     */
+    public void onLikesCountChanged(BiConsumer<Long, Long> listener) {
+        this.likesCountListener = listener;
+    }
+
+    /**
+     * Вызывается в транзакции пометки пользователя удаленным: его лайки сразу вычитаются
+     * из счетчиков и топа, а фильмы сбрасываются из кэша после фиксации.
+     */
+    public void subtractLikesOfUser(Long userId) {
+        List<Long> filmIds = jdbcTemplate.queryForList(
+                sqlProvider.provideFindFilmIdsLikedByUserSql(), Long.class, userId);
+        if (filmIds.isEmpty()) {
+            return;
+        }
+        filmLikesCounter.subtractLikesOfUser(userId);
+        filmIds.forEach(filmId -> likesCountListener.accept(filmId, -1L));
+        TransactionHooks.runAfterCommit(() -> eventPublisher.publishEvent(new FilmsChangedEvent(this, filmIds)));
+    }
+
+    /**
+     * @return количество полностью удаленных фильмов и пользователей
+     */
+    public int purge() {
+        int purged = 0;
+        List<Long> filmIds = jdbcTemplate.queryForList(
+                sqlProvider.provideFindDeletedFilmIdsSql(), Long.class, maxEntitiesPerRun);
+        for (Long filmId : filmIds) {
+            try {
+                purgeFilm(filmId);
+                purged++;
+            } catch (DataAccessException e) {
+                // e.g. a concurrent bulk insert referenced the film: the next run retries
+                log.warn("Failed to purge deleted film {}: {}", filmId, e.getMessage());
+            }
+        }
+        List<Long> userIds = jdbcTemplate.queryForList(
+                sqlProvider.provideFindDeletedUserIdsSql(), Long.class, maxEntitiesPerRun);
+        for (Long userId : userIds) {
+            try {
+                purgeUser(userId);
+                purged++;
+            } catch (DataAccessException e) {
+                log.warn("Failed to purge deleted user {}: {}", userId, e.getMessage());
+            }
+        }
+        return purged;
+    }
+
+    private void purgeFilm(Long filmId) {
+        deleteInBatches(sqlProvider.providePurgeFilmUserLikesSql(), filmId);
+        deleteInBatches(sqlProvider.providePurgeFilmGenresSql(), filmId);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(sqlProvider.provideDeleteFilmLikesCounterStripesSql(), filmId);
+            jdbcTemplate.update(sqlProvider.providePurgeDeletedFilmSql(), filmId);
+        });
+    }
+
+    private void purgeUser(Long userId) {
+        // the likes were already subtracted when the user was marked deleted
+        deleteInBatches(sqlProvider.providePurgeUserLikesSql(), userId);
+        deleteInBatches(sqlProvider.providePurgeUserFriendshipsSql(), userId, userId);
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.update(sqlProvider.providePurgeDeletedUserSql(), userId));
+    }
+
+    private void deleteInBatches(String sql, Object... ids) {
+        Object[] args = new Object[ids.length + 1];
+        System.arraycopy(ids, 0, args, 0, ids.length);
+        args[ids.length] = batchSize;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> jdbcTemplate.update(sql, args));
+            pause();
+        } while (deleted == batchSize);
+    }
+
+    private void pause() {
+        if (batchPauseMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(batchPauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Purge was interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.BulkReport;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Пакетная вставка связей между сущностями (лайков, дружбы). Связи обрабатываются порциями:
+ * существование обоих концов и уже сохраненные связи проверяются одним IN-запросом на порцию,
+ * а новые связи вставляются JDBC-пакетом. Повторы внутри пакета и уже существующие связи
+ * считаются дубликатами и не вставляются.
+ */
+@Component
+@RequiredArgsConstructor
+public class EdgeBatchWriter {
+
+    private static final int SLICE_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ReferenceValidator referenceValidator;
+
+    /**
+     * @return вставленные связи в виде пар {from, to}
+     */
+    public <T> List<long[]> insertNew(List<T> edges,
+                                      Function<T, Long> fromId,
+                                      Function<T, Long> toId,
+                                      EdgeSpec spec,
+                                      BulkReport report) {
+        List<long[]> inserted = new ArrayList<>();
+        Set<Map.Entry<Long, Long>> seen = new HashSet<>();
+        for (int from = 0; from < edges.size(); from += SLICE_SIZE) {
+            List<long[]> pending = new ArrayList<>();
+            int to = Math.min(from + SLICE_SIZE, edges.size());
+            for (int i = from; i < to; i++) {
+                Long left = fromId.apply(edges.get(i));
+                Long right = toId.apply(edges.get(i));
+                if (left == null || right == null) {
+                    report.reject(i, "Both ids must be set.");
+                } else if (!spec.isSelfLoopAllowed() && left.equals(right)) {
+                    report.reject(i, String.format("ID: %d cannot refer to itself.", left));
+                } else if (!seen.add(Map.entry(left, right))) {
+                    report.duplicate(1);
+                } else {
+                    pending.add(new long[]{left, right, i});
+                }
+            }
+            inserted.addAll(insertSlice(pending, spec, report));
+        }
+        return inserted;
+    }
+
+    private List<long[]> insertSlice(List<long[]> pending, EdgeSpec spec, BulkReport report) {
+        if (pending.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> fromIds = new HashSet<>();
+        Set<Long> toIds = new HashSet<>();
+        pending.forEach(e -> {
+            fromIds.add(e[0]);
+            toIds.add(e[1]);
+        });
+        Set<Long> existingFrom = referenceValidator.findExistingIds(spec.getFromIdsSql(), spec.getFromIdsParam(), fromIds);
+        Set<Long> existingTo = referenceValidator.findExistingIds(spec.getToIdsSql(), spec.getToIdsParam(), toIds);
+        Set<Map.Entry<Long, Long>> existingEdges = new HashSet<>();
+        namedJdbcTemplate.query(spec.getExistingEdgesSql(), Map.of("fromIds", fromIds, "toIds", toIds), rs -> {
+            existingEdges.add(Map.entry(rs.getLong(1), rs.getLong(2)));
+        });
+
+        List<long[]> toInsert = new ArrayList<>();
+        for (long[] edge : pending) {
+            if (!existingFrom.contains(edge[0])) {
+                report.reject(edge[2], String.format(spec.getFromNotFoundMessage(), edge[0]));
+            } else if (!existingTo.contains(edge[1])) {
+                report.reject(edge[2], String.format(spec.getToNotFoundMessage(), edge[1]));
+            } else if (existingEdges.contains(Map.entry(edge[0], edge[1]))) {
+                report.duplicate(1);
+            } else {
+                toInsert.add(edge);
+            }
+        }
+        if (!toInsert.isEmpty()) {
+            jdbcTemplate.batchUpdate(spec.getInsertSql(), toInsert, toInsert.size(), (PreparedStatement ps, long[] e) -> {
+                ps.setLong(1, e[0]);
+                ps.setLong(2, e[1]);
+            });
+            report.accept(toInsert.size());
+        }
+        return toInsert;
+    }
+
+    /**
+     * Описание таблицы связей: как проверить оба конца, найти существующие связи
+     * (параметры :fromIds и :toIds) и вставить новую (from, to).
+     */
+    @Getter
+    @Builder
+    public static class EdgeSpec {
+        private final String fromIdsSql;
+        private final String fromIdsParam;
+        private final String fromNotFoundMessage;
+        private final String toIdsSql;
+        private final String toIdsParam;
+        private final String toNotFoundMessage;
+        private final String existingEdgesSql;
+        private final String insertSql;
+        private final boolean selfLoopAllowed;
+    }
+}
@@ -1,28 +1,43 @@
 package ru.yandex.practicum.filmorate.storage.database;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.FilmPopularityIndex;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.RatingStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.storage.database.dbutils.*;
+import ru.yandex.practicum.filmorate.util.LongBitmapSet;
+import ru.yandex.practicum.filmorate.util.TransactionHooks;
 
+import javax.annotation.PostConstruct;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
@@ -30,37 +45,143 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
 
+    private static final int IN_CLAUSE_BATCH_SIZE = 1000;
+    private static final int MULTI_ROW_INSERT_SIZE = 100;
+    private static final int JDBC_BATCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
     private final ColumnNamesProvider columnNamesProvider;
     private final SqlProvider sqlProvider;
+    private final FilmLikesCounter filmLikesCounter;
+    private final ReferenceDictionary referenceDictionary;
     @Qualifier("userDbStorage")
     private final UserStorage userStorage;
     @Qualifier("genreDbStorage")
     private final GenreStorage genreDbStorage;
     @Qualifier("ratingDbStorage")
     private final RatingStorage ratingDbStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final EdgeBatchWriter edgeBatchWriter;
+    private final ReferenceValidator referenceValidator;
+    private final HiLoIdGenerators idGenerators;
+    private final FilmLikesWriteBuffer likesWriteBuffer;
+    private final DeletedEntitiesPurger purger;
+    private final MeterRegistry meterRegistry;
+    @Value("${filmorate.popularity-index.enabled:false}")
+    private final boolean popularityIndexEnabled;
+    @Value("${filmorate.export.fetch-size:500}")
+    private final int exportFetchSize;
+
+    @PostConstruct
+    public void init() {
+        likesWriteBuffer.onLikesCountChanged(this::addPopularityAfterCommit);
+        purger.onLikesCountChanged(this::addPopularityAfterCommit);
+        rebuildPopularityIndex();
+    }
+
+    public void rebuildPopularityIndex() {
+        if (!popularityIndexEnabled) {
+            return;
+        }
+        String sql = sqlProvider.provideFindLikesCountsOfAllFilmsSql();
+        Map<Long, Long> likesCounts = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            likesCounts.put(rs.getLong("film_id"), rs.getLong("likes"));
+        });
+        popularityIndex.rebuild(likesCounts);
+    }
 
     @Transactional
     @Override
     public Film save(Film film) {
         throwIfFilmExists(film.getId());
+        referenceValidator.throwIfAnyUserNotFound(film.getUserLikes());
         Film saved = saveFilmInternal(film);
         saveFilmGenresInternal(film);
         saveFilmUserLikesInternal(film);
-        // return film with all info about it
-        return findFilmById(saved.getId()).get();
+        if (filmHasUserLikes(film)) {
+            filmLikesCounter.set(saved.getId(), film.getUserLikes().size());
+        }
+        setPopularityAfterCommit(saved.getId(), film.getUserLikes().size());
+        return writtenFilm(saved);
     }
 
+    /**
+     * Записываются только изменения: столбцы фильма обновляются, если изменилось хотя бы одно
+     * из полей, а для жанров и лайков удаляются и вставляются только отличающиеся строки.
+     * Количество записанных строк публикуется в метрике filmorate.update.rows.
+     */
     @Transactional
     @Override
     public Film update(Film film) {
-        throwIfFilmNotFound(film.getId());
-        deleteFilmGenresInternal(film);
-        deleteFilmUserLikesInternal(film);
-        updateFilmInternal(film);
-        saveFilmGenresInternal(film);
-        saveFilmUserLikesInternal(film);
-        return findFilmById(film.getId()).get();
+        Film stored = findFilmRowInternal(film.getId()).orElseThrow(() -> {
+            String msg = String.format("Film with ID: %d is not found.", film.getId());
+            return new ResourceNotFoundException(msg);
+        });
+        // likes are replaced as a whole, buffered likes of the film are stale once this commits
+        TransactionHooks.runAfterCommit(() -> likesWriteBuffer.discard(film.getId()));
+        int rows = 0;
+        if (filmColumnsChanged(stored, film)) {
+            updateFilmInternal(film);
+            rows++;
+        }
+        rows += updateFilmGenresInternal(film);
+        rows += updateFilmUserLikesInternal(film);
+        meterRegistry.summary("filmorate.update.rows", "entity", "film").record(rows);
+        return writtenFilm(film);
+    }
+
+    /**
+     * Ответ на запись строится из записанных данных: жанры и рейтинг берутся из справочника
+     * в том же виде и порядке, в каком их вернет чтение фильма, а лайки копируются из запроса.
+     * Фильм и все его лайки повторно из базы не читаются.
+     */
+    private Film writtenFilm(Film film) {
+        List<Genre> genres = film.getGenres().stream()
+                .map(Genre::getId)
+                .distinct()
+                .sorted()
+                .map(referenceDictionary::findGenre)
+                .flatMap(Optional::stream)
+                .collect(Collectors.toList());
+        Rating rating = film.getMpa() == null
+                ? null
+                : referenceDictionary.findRating(film.getMpa().getId()).orElse(film.getMpa());
+        return film.toBuilder()
+                .mpa(rating)
+                .genres(genres)
+                .userLikes(LongBitmapSet.copyOf(film.getUserLikes()))
+                .build();
+    }
+
+    /**
+     * Пакетное сохранение новых фильмов: все проверки делаются запросами на весь пакет
+     * (IN) или по справочникам в памяти, фильмы вставляются многострочными INSERT,
+     * жанры и лайки - JDBC-пакетами. Счетчик лайков пишется сразу в INSERT.
+     * Сохраненные фильмы не перечитываются, в них только проставляются id.
+     */
+    @Transactional
+    @Override
+    public List<Film> saveAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        throwIfAnyFilmExists(films);
+        for (Film film : films) {
+            if (film.getMpa() != null) {
+                throwIfRatingNotFound(film.getMpa());
+            }
+            film.getGenres().forEach(this::throwIfGenreNotFound);
+        }
+        throwIfAnyUserNotFound(films);
+        insertFilmsInternal(films);
+        saveFilmsGenresInternal(films);
+        saveFilmsUserLikesInternal(films);
+        films.forEach(f -> setPopularityAfterCommit(f.getId(), f.getUserLikes().size()));
+        return films.stream()
+                .map(this::writtenFilm)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -69,27 +190,110 @@ public class FilmDbStorage implements FilmStorage {
         return selectFilmsBySqlInternal(sql);
     }
 
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        String sql = sqlProvider.provideFilmFindPageSql();
+        return selectFilmsBySqlInternal(sql, afterId, limit);
+    }
 
+    @Transactional
     @Override
     public void addUserLikeToFilm(Long userId, Long filmId) {
-        throwIfFilmNotFound(filmId);
-        throwIfUserNotFound(userId);
+        if (likesWriteBuffer.isEnabled()) {
+            throwIfFilmNotFound(filmId);
+            throwIfUserNotFound(userId);
+            likesWriteBuffer.like(filmId, userId);
+            return;
+        }
 
-        String sql = sqlProvider.provideAddUserLikesToFilmSql();
-        jdbcTemplate.update(sql, filmId, userId);
+        // the insert skips repeated likes as well as missing or deleted films and users
+        String sql = sqlProvider.provideAddUserLikeIfAbsentSql();
+        int added;
+        try {
+            added = jdbcTemplate.update(sql, filmId, userId, filmId, userId);
+        } catch (DuplicateKeyException e) {
+            // a concurrent like of the same user committed after the NOT EXISTS check
+            added = 0;
+        } catch (DataIntegrityViolationException e) {
+            throw translateLikeViolation(e, userId, filmId);
+        }
+        if (added == 0) {
+            throwIfFilmNotFound(filmId);
+            throwIfUserNotFound(userId);
+            return;
+        }
+        filmLikesCounter.add(filmId, added);
+        addPopularityAfterCommit(filmId, added);
+    }
+
+    @Transactional
+    @Override
+    public BulkReport addUserLikes(List<FilmLike> likes) {
+        if (likesWriteBuffer.isEnabled()) {
+            // a buffered unlike written after this insert would delete the imported like
+            likesWriteBuffer.flush(likes.stream()
+                    .map(FilmLike::getFilmId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+        }
+        BulkReport report = new BulkReport();
+        List<long[]> inserted = edgeBatchWriter.insertNew(likes, FilmLike::getFilmId, FilmLike::getUserId,
+                likesEdgeSpec(), report);
+        Map<Long, Long> addedByFilm = new HashMap<>();
+        inserted.forEach(edge -> addedByFilm.merge(edge[0], 1L, Long::sum));
+        addedByFilm.forEach((filmId, added) -> {
+            filmLikesCounter.add(filmId, added);
+            addPopularityAfterCommit(filmId, added);
+        });
+        return report;
     }
 
+    @Transactional
     @Override
     public void removeUserLike(Long userId, Long filmId) {
-        throwIfUserNotFound(userId);
-        throwIfFilmNotFound(filmId);
+        if (likesWriteBuffer.isEnabled()) {
+            throwIfUserNotFound(userId);
+            throwIfFilmNotFound(filmId);
+            likesWriteBuffer.unlike(filmId, userId);
+            return;
+        }
 
-        String sql = sqlProvider.provideRemoveSingleUserLikeForFilmSql();
-        jdbcTemplate.update(sql, filmId, userId);
+        // a like of a deleted user was already subtracted from the counter
+        String sql = sqlProvider.provideRemoveLikeOfActiveUserSql();
+        int removed = jdbcTemplate.update(sql, filmId, userId);
+        if (removed == 0) {
+            // nothing was removed: either there was no like, or the user or the film does not exist
+            throwIfUserNotFound(userId);
+            throwIfFilmNotFound(filmId);
+            return;
+        }
+        filmLikesCounter.add(filmId, -removed);
+        addPopularityAfterCommit(filmId, -removed);
+    }
+
+    /**
+     * Фильм только помечается удаленным. Его лайки, жанры и полосы счетчика лайков
+     * удаляет {@link DeletedEntitiesPurger} небольшими порциями.
+     */
+    @Transactional
+    @Override
+    public void deleteFilm(Long filmId) {
+        int marked = jdbcTemplate.update(sqlProvider.provideMarkFilmDeletedSql(), filmId);
+        if (marked == 0) {
+            String msg = String.format("Film with ID: %d is not found.", filmId);
+            throw new ResourceNotFoundException(msg);
+        }
+        TransactionHooks.runAfterCommit(() -> likesWriteBuffer.discard(filmId));
+        if (popularityIndexEnabled) {
+            TransactionHooks.runAfterCommit(() -> popularityIndex.remove(filmId));
+        }
     }
 
     @Override
     public List<Film> getMostPopularFilms(long count) {
+        if (popularityIndexEnabled) {
+            return selectFilmsByIdsInternal(popularityIndex.findTopFilmIds(count));
+        }
         String sql = sqlProvider.provideMostPopularFilmsSql();
         return selectFilmsBySqlInternal(sql, count);
     }
@@ -97,40 +301,89 @@ public class FilmDbStorage implements FilmStorage {
     @Override
     public Optional<Film> findFilmById(Long filmId) {
         String sql = sqlProvider.provideFindFilmByIdSql();
+        List<Film> films = selectFilmsBySqlInternal(sql, filmId);
+        return films.stream().findFirst();
+    }
 
-        Film film = jdbcTemplate.query(sql, rs -> {
-            Film extractedFilm = null;
-            Set<Long> userIds = new HashSet<>();
-            Map<Long, Genre> idToGenre = new HashMap<>();
-            Rating rating = null;
-            while (rs.next()) {
-                if (rating == null) {
-                    rating = extractRating(rs, columnNamesProvider.provideRatingColumns());
+    /**
+     * Фильмы, жанры и лайки читаются тремя однонаправленными курсорами на одном соединении,
+     * упорядоченными по id фильма, и склеиваются слиянием. В памяти одновременно находится
+     * только текущий фильм и по одной порции строк (fetch size) каждого курсора.
+     * Если consumer бросает исключение (например, клиент отключился), курсоры закрываются
+     * и запрос прекращается.
+     * <p>
+     * Курсоры открываются в одной читающей транзакции SERIALIZABLE, чтобы все три видели
+     * один снимок базы и выгрузка не показывала жанры и лайки фильмов, которых нет в курсоре
+     * фильмов, и наоборот. В H2 только этот уровень дает снимок: в REPEATABLE READ видны
+     * строки, добавленные после первого чтения. Читающая транзакция не блокирует запись.
+     */
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.SERIALIZABLE)
+    public void exportAll(Consumer<Film> consumer) {
+        FilmTable filmTable = columnNamesProvider.provideFilmColumns();
+        GenreTable genreTable = columnNamesProvider.provideGenreColumns();
+        UserTable userTable = columnNamesProvider.provideUserColumns();
+        RowMapper<Film> filmRowMapper = filmRowMapper();
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement filmsPs = prepareCursor(connection, sqlProvider.provideFilmFindAllSql());
+                 PreparedStatement genresPs = prepareCursor(connection, sqlProvider.provideFindAllFilmGenresSql());
+                 PreparedStatement likesPs = prepareCursor(connection, sqlProvider.provideFindAllFilmUserLikesSql());
+                 ResultSet films = filmsPs.executeQuery();
+                 ResultSet genres = genresPs.executeQuery();
+                 ResultSet likes = likesPs.executeQuery()) {
+                boolean hasGenre = genres.next();
+                boolean hasLike = likes.next();
+                int rowNum = 0;
+                while (films.next()) {
+                    Film film = filmRowMapper.mapRow(films, rowNum++);
+                    long filmId = film.getId();
+                    while (hasGenre && genres.getLong(filmTable.getId()) <= filmId) {
+                        if (genres.getLong(filmTable.getId()) == filmId) {
+                            film.getGenres().add(extractGenre(genres, genreTable));
+                        }
+                        hasGenre = genres.next();
+                    }
+                    while (hasLike && likes.getLong(filmTable.getId()) <= filmId) {
+                        if (likes.getLong(filmTable.getId()) == filmId) {
+                            film.addUserLike(likes.getLong(userTable.getId()));
+                        }
+                        hasLike = likes.next();
+                    }
+                    if (likesWriteBuffer.isEnabled()) {
+                        likesWriteBuffer.applyPending(film);
+                    }
+                    consumer.accept(film);
                 }
-                GenreTable genreTable = columnNamesProvider.provideGenreColumns();
-                extractGenreAndSaveToMap(rs, idToGenre, genreTable);
+            }
+            return null;
+        });
+    }
 
-                UserTable columns = columnNamesProvider.provideUserColumns();
-                extractUserIdAndSaveToSet(rs, userIds, columns);
+    @Override
+    public List<FilmSummary> findAllSummaries() {
+        String sql = sqlProvider.provideFilmFindAllSql();
+        return selectFilmSummariesBySqlInternal(sql);
+    }
 
-                FilmTable filmTable = columnNamesProvider.provideFilmColumns();
-                if (extractedFilm == null) {
-                    extractedFilm = extractFilm(rs, filmTable, filmId);
-                }
-            }
+    @Override
+    public List<FilmSummary> findSummariesPage(long afterId, int limit) {
+        String sql = sqlProvider.provideFilmFindPageSql();
+        return selectFilmSummariesBySqlInternal(sql, afterId, limit);
+    }
 
-            if (extractedFilm != null) {
-                List<Genre> genres = getUniqueGenresSortedById(idToGenre);
-                extractedFilm.setGenres(genres);
-                extractedFilm.setUserLikes(userIds);
-                if (rating != null) {
-                    extractedFilm.setMpa(rating);
-                }
-            }
-            return extractedFilm;
-        }, filmId);
+    @Override
+    public List<FilmSummary> getMostPopularFilmSummaries(long count) {
+        if (popularityIndexEnabled) {
+            return selectFilmSummariesByIdsInternal(popularityIndex.findTopFilmIds(count));
+        }
+        String sql = sqlProvider.provideMostPopularFilmsSql();
+        return selectFilmSummariesBySqlInternal(sql, count);
+    }
 
-        return Optional.ofNullable(film);
+    @Override
+    public Optional<FilmSummary> findFilmSummaryById(Long filmId) {
+        String sql = sqlProvider.provideFindFilmByIdSql();
+        return selectFilmSummariesBySqlInternal(sql, filmId).stream().findFirst();
     }
 
     @Override
@@ -143,14 +396,6 @@ public class FilmDbStorage implements FilmStorage {
         return Optional.empty();
     }
 
-    private List<Genre> getUniqueGenresSortedById(Map<Long, Genre> idToGenre) {
-        return idToGenre.values().stream()
-                .filter(Objects::nonNull)
-                .distinct()
-                .sorted(Comparator.comparingLong(Genre::getId))
-                .collect(Collectors.toList());
-    }
-
     private Film extractFilm(ResultSet rs, FilmTable columns, Long id) throws SQLException {
         String filmName = rs.getString(columns.getName());
         String description = rs.getString(columns.getDescr());
@@ -167,47 +412,46 @@ public class FilmDbStorage implements FilmStorage {
 
 
     private Rating extractRating(ResultSet rs, RatingTable columns) throws SQLException {
-        Rating rating = null;
         Long mpaId = rs.getLong(columns.getId());
-        if (mpaId != 0) {
-            String mpa = rs.getString(columns.getName());
-            rating = Rating.builder()
-                    .id(mpaId)
-                    .name(RatingName.fromString(mpa))
-                    .build();
+        if (mpaId == 0) {
+            return null;
         }
-        return rating;
+        Optional<Rating> rating = referenceDictionary.findRating(mpaId);
+        if (rating.isPresent()) {
+            return rating.get();
+        }
+        return Rating.builder()
+                .id(mpaId)
+                .name(RatingName.fromString(rs.getString(columns.getName())))
+                .build();
     }
 
-    private void extractUserIdAndSaveToSet(ResultSet rs,
-                                           Set<Long> userIds,
-                                           UserTable columns) throws SQLException {
-        Long userId = rs.getLong(columns.getId());
-        if (userId != 0) {
-            userIds.add(userId);
-        }
+    private EdgeBatchWriter.EdgeSpec likesEdgeSpec() {
+        return EdgeBatchWriter.EdgeSpec.builder()
+                .fromIdsSql(sqlProvider.provideFindExistingFilmIdsSql())
+                .fromIdsParam("filmIds")
+                .fromNotFoundMessage("Film with ID: %d is not found.")
+                .toIdsSql(sqlProvider.provideFindExistingUserIdsSql())
+                .toIdsParam("userIds")
+                .toNotFoundMessage("User with ID: %d is not found.")
+                .existingEdgesSql(sqlProvider.provideFindExistingUserLikesSql())
+                .insertSql(sqlProvider.provideAddUserLikesToFilmSql())
+                .selfLoopAllowed(true)
+                .build();
     }
 
-    private Genre extractGenreAndSaveToMap(ResultSet rs,
-                                           Map<Long, Genre> idToGenre,
-                                           GenreTable columns) throws SQLException {
-        Genre genre = null;
-        Long genreId = rs.getLong(columns.getId());
-        if (genreId != 0) {
-            genre = idToGenre.get(genreId);
-            if (genre == null) {
-                String genreName = rs.getString(columns.getName());
-                genre = Genre.builder()
-                        .id(genreId)
-                        .name(GenreName.fromString(genreName))
-                        .build();
-                idToGenre.put(genreId, genre);
-            }
+    private RuntimeException translateLikeViolation(DataIntegrityViolationException e, Long userId, Long filmId) {
+        if (ForeignKeys.isViolated(e, ForeignKeys.FILM_USER_LIKES_FILM)) {
+            return new ResourceNotFoundException(String.format("Film with ID: %d is not found.", filmId));
+        }
+        if (ForeignKeys.isViolated(e, ForeignKeys.FILM_USER_LIKES_USER)) {
+            return new ResourceNotFoundException(String.format("User with ID: %d is not found.", userId));
         }
-        return genre;
+        throwIfFilmNotFound(filmId);
+        throwIfUserNotFound(userId);
+        return e;
     }
 
-
     private void throwIfFilmNotFound(Long filmId) {
         if (filmNotFound(filmId)) {
             String msg = String.format("Film with ID: %d is not found.", filmId);
@@ -229,6 +473,25 @@ public class FilmDbStorage implements FilmStorage {
         }
     }
 
+    private void throwIfAnyFilmExists(List<Film> films) {
+        List<Long> filmIds = films.stream()
+                .map(Film::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        Set<Long> existing = referenceValidator.findExistingIds(
+                sqlProvider.provideFindExistingFilmIdsSql(), "filmIds", filmIds);
+        if (!existing.isEmpty()) {
+            String msg = String.format("Film with ID: %d already exists", existing.iterator().next());
+            throw new ResourceAlreadyExistsException(msg);
+        }
+    }
+
+    private void throwIfAnyUserNotFound(List<Film> films) {
+        Set<Long> userIds = new HashSet<>();
+        films.forEach(f -> userIds.addAll(f.getUserLikes()));
+        referenceValidator.throwIfAnyUserNotFound(userIds);
+    }
+
     private boolean userNotFound(Long userId) {
         return userId == null || userStorage.checkUserId(userId).isEmpty();
     }
@@ -306,6 +569,12 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     private Film saveFilmInternal(Film film) {
+        if (idGenerators.isEnabled()) {
+            film.setId(idGenerators.films().nextId());
+            jdbcTemplate.update(sqlProvider.provideInsertFilmWithIdSql(), film.getId(), film.getName(),
+                    film.getDescription(), film.getReleaseDate(), film.getDuration(), ratingIdOf(film));
+            return film;
+        }
         String sql = sqlProvider.provideInsertFilmSql();
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(connection -> {
@@ -327,53 +596,321 @@ public class FilmDbStorage implements FilmStorage {
         return film;
     }
 
-    private void deleteFilmUserLikesInternal(Film film) {
-        String sql = sqlProvider.provideRemoveAllUserLikesForFilmSql();
-        jdbcTemplate.update(sql, film.getId());
+    private void insertFilmsInternal(List<Film> films) {
+        // with hi-lo ids the rows are inserted with known ids and no generated keys are read back
+        boolean preassigned = idGenerators.isEnabled();
+        if (preassigned) {
+            films.forEach(film -> film.setId(idGenerators.films().nextId()));
+        }
+        for (int from = 0; from < films.size(); from += MULTI_ROW_INSERT_SIZE) {
+            List<Film> rows = films.subList(from, Math.min(from + MULTI_ROW_INSERT_SIZE, films.size()));
+            String sql = preassigned
+                    ? sqlProvider.provideInsertFilmsWithIdsSql(rows.size())
+                    : sqlProvider.provideInsertFilmsSql(rows.size());
+            PreparedStatementCreator insert = connection -> {
+                PreparedStatement ps = preassigned
+                        ? connection.prepareStatement(sql)
+                        : connection.prepareStatement(sql, new String[]{"id"});
+                int i = 1;
+                for (Film film : rows) {
+                    if (preassigned) {
+                        ps.setLong(i++, film.getId());
+                    }
+                    ps.setString(i++, film.getName());
+                    ps.setString(i++, film.getDescription());
+                    ps.setObject(i++, film.getReleaseDate());
+                    ps.setLong(i++, film.getDuration());
+                    if (film.getMpa() == null) {
+                        ps.setNull(i++, Types.BIGINT);
+                    } else {
+                        ps.setLong(i++, film.getMpa().getId());
+                    }
+                    ps.setLong(i++, film.getUserLikes().size());
+                }
+                return ps;
+            };
+            if (preassigned) {
+                jdbcTemplate.update(insert);
+                continue;
+            }
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(insert, keyHolder);
+            // generated keys come back in the order of the VALUES rows
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            for (int i = 0; i < rows.size(); i++) {
+                Number id = (Number) keys.get(i).values().iterator().next();
+                rows.get(i).setId(id.longValue());
+            }
+        }
+    }
+
+    private void saveFilmsGenresInternal(List<Film> films) {
+        List<long[]> filmGenres = new ArrayList<>();
+        for (Film film : films) {
+            film.getGenres().stream()
+                    .map(Genre::getId)
+                    .distinct()
+                    .forEach(genreId -> filmGenres.add(new long[]{film.getId(), genreId}));
+        }
+        batchUpdatePairsInternal(sqlProvider.provideSaveFilmGenresSql(), filmGenres);
+    }
+
+    private void saveFilmsUserLikesInternal(List<Film> films) {
+        List<long[]> filmLikes = new ArrayList<>();
+        for (Film film : films) {
+            film.getUserLikes().forEach(userId -> filmLikes.add(new long[]{film.getId(), userId}));
+        }
+        batchUpdatePairsInternal(sqlProvider.provideAddUserLikesToFilmSql(), filmLikes);
+    }
+
+    private void batchUpdatePairsInternal(String sql, List<long[]> pairs) {
+        if (pairs.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, pairs, JDBC_BATCH_SIZE, (PreparedStatement ps, long[] pair) -> {
+            ps.setLong(1, pair[0]);
+            ps.setLong(2, pair[1]);
+        });
+    }
+
+    private Optional<Film> findFilmRowInternal(Long filmId) {
+        if (filmId == null) {
+            return Optional.empty();
+        }
+        return selectFilmRowsByIdsInternal(List.of(filmId)).stream().findFirst();
+    }
+
+    private boolean filmColumnsChanged(Film stored, Film film) {
+        return !Objects.equals(stored.getName(), film.getName())
+                || !Objects.equals(stored.getDescription(), film.getDescription())
+                || !Objects.equals(stored.getReleaseDate(), film.getReleaseDate())
+                || stored.getDuration() != film.getDuration()
+                || !Objects.equals(ratingIdOf(stored), ratingIdOf(film));
+    }
+
+    private Long ratingIdOf(Film film) {
+        return film.getMpa() == null ? null : film.getMpa().getId();
+    }
+
+    private int updateFilmGenresInternal(Film film) {
+        Set<Long> stored = new HashSet<>(jdbcTemplate.queryForList(
+                sqlProvider.provideFindGenreIdsOfFilmSql(), Long.class, film.getId()));
+        Set<Long> incoming = new LinkedHashSet<>();
+        for (Genre genre : film.getGenres()) {
+            if (incoming.add(genre.getId()) && !stored.contains(genre.getId())) {
+                throwIfGenreNotFound(genre);
+            }
+        }
+        return applyDiffInternal(film.getId(), stored, incoming,
+                sqlProvider.provideDeleteSingleFilmGenreSql(), sqlProvider.provideSaveFilmGenresSql());
+    }
+
+    private int updateFilmUserLikesInternal(Film film) {
+        Set<Long> stored = new HashSet<>(jdbcTemplate.queryForList(
+                sqlProvider.provideFindUserIdsLikedFilmSql(), Long.class, film.getId()));
+        Set<Long> incoming = film.getUserLikes();
+        referenceValidator.throwIfAnyUserNotFound(incoming.stream()
+                .filter(userId -> !stored.contains(userId))
+                .collect(Collectors.toList()));
+        int rows = applyDiffInternal(film.getId(), stored, incoming,
+                sqlProvider.provideRemoveSingleUserLikeForFilmSql(), sqlProvider.provideAddUserLikesToFilmSql());
+        if (rows > 0) {
+            filmLikesCounter.set(film.getId(), incoming.size());
+            setPopularityAfterCommit(film.getId(), incoming.size());
+            rows++;
+        }
+        return rows;
     }
 
-    private void deleteFilmGenresInternal(Film film) {
-        String sql = sqlProvider.provideDeleteFilmGenresSql();
-        jdbcTemplate.update(sql, film.getId());
+    /**
+     * Удаляет связи (ownerId, id), которых нет во входящих данных, и вставляет новые.
+     *
+     * @return количество удаленных и вставленных строк
+     */
+    private int applyDiffInternal(Long ownerId, Set<Long> stored, Set<Long> incoming,
+                                  String deleteSql, String insertSql) {
+        List<long[]> removed = stored.stream()
+                .filter(id -> !incoming.contains(id))
+                .map(id -> new long[]{ownerId, id})
+                .collect(Collectors.toList());
+        List<long[]> added = incoming.stream()
+                .filter(id -> !stored.contains(id))
+                .map(id -> new long[]{ownerId, id})
+                .collect(Collectors.toList());
+        batchUpdatePairsInternal(deleteSql, removed);
+        batchUpdatePairsInternal(insertSql, added);
+        return removed.size() + added.size();
     }
 
+    /**
+     * Фильмы читаются в несколько запросов: сначала сами фильмы с рейтингом (one-to-one),
+     * затем пачками жанры и лайки только для выбранных фильмов. Так количество строк растет
+     * линейно: фильмы + жанры + лайки, а не фильмы * жанры * лайки, как было бы в одном JOIN.
+     */
     private List<Film> selectFilmsBySqlInternal(String sql, Object... args) {
-        return jdbcTemplate.query(sql, rs -> {
-            Map<Long, Film> idToFilm = new HashMap<>();
-            Map<Long, Genre> idToGenre = new HashMap<>();
-            while (rs.next()) {
-                Rating rating = extractRating(rs, columnNamesProvider.provideRatingColumns());
-
-                GenreTable genreTable = columnNamesProvider.provideGenreColumns();
-                Genre genre = extractGenreAndSaveToMap(rs, idToGenre, genreTable);
-
-                UserTable userTable = columnNamesProvider.provideUserColumns();
-                Long userId = extractUserId(rs, userTable);
-
-                FilmTable filmTable = columnNamesProvider.provideFilmColumns();
-                Long filmId = rs.getLong(filmTable.getId());
-                Film film = idToFilm.get(filmId);
-                if (film == null) {
-                    film = extractFilm(rs, filmTable, filmId);
-                    // set rating only once since it is one-to-one
-                    if (rating != null) {
-                        film.setMpa(rating);
-                    }
-                    idToFilm.put(filmId, film);
-                }
-                if (genre != null) {
-                    film.getGenres().add(genre);
-                }
-                if (userId != null) {
-                    film.addUserLike(userId);
-                }
+        List<Film> films = jdbcTemplate.query(sql, filmRowMapper(), args);
+        if (!films.isEmpty()) {
+            attachGenresAndUserLikesInternal(films);
+        }
+        return films;
+    }
+
+    private List<Film> selectFilmsByIdsInternal(List<Long> filmIds) {
+        List<Film> films = selectFilmRowsByIdsInternal(filmIds);
+        if (!films.isEmpty()) {
+            attachGenresAndUserLikesInternal(films);
+        }
+        return films;
+    }
+
+    /**
+     * Возвращает фильмы (без жанров и лайков) в порядке переданных id.
+     * Отсутствующие в базе id пропускаются.
+     */
+    private List<Film> selectFilmRowsByIdsInternal(List<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = sqlProvider.provideFindFilmsByIdsSql();
+        Map<Long, Film> idToFilm = new HashMap<>();
+        for (int from = 0; from < filmIds.size(); from += IN_CLAUSE_BATCH_SIZE) {
+            List<Long> batch = filmIds.subList(from, Math.min(from + IN_CLAUSE_BATCH_SIZE, filmIds.size()));
+            namedJdbcTemplate.query(sql, Map.of("filmIds", batch), filmRowMapper())
+                    .forEach(f -> idToFilm.put(f.getId(), f));
+        }
+        return filmIds.stream()
+                .map(idToFilm::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private PreparedStatement prepareCursor(Connection connection, String sql) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(exportFetchSize);
+        return ps;
+    }
+
+    private RowMapper<Film> filmRowMapper() {
+        FilmTable filmTable = columnNamesProvider.provideFilmColumns();
+        RatingTable ratingTable = columnNamesProvider.provideRatingColumns();
+        return (rs, rowNum) -> {
+            Film film = extractFilm(rs, filmTable, rs.getLong(filmTable.getId()));
+            Rating rating = extractRating(rs, ratingTable);
+            if (rating != null) {
+                film.setMpa(rating);
             }
-            return List.copyOf(idToFilm.values());
-        }, args);
+            return film;
+        };
+    }
+
+    private void setPopularityAfterCommit(Long filmId, long likesCount) {
+        if (popularityIndexEnabled) {
+            TransactionHooks.runAfterCommit(() -> popularityIndex.set(filmId, likesCount));
+        }
+    }
+
+    private void addPopularityAfterCommit(Long filmId, long delta) {
+        if (popularityIndexEnabled && delta != 0) {
+            TransactionHooks.runAfterCommit(() -> popularityIndex.add(filmId, delta));
+        }
+    }
+
+    /**
+     * То же, что и {@link #selectFilmsBySqlInternal}, но вместо лайков читается только
+     * их количество из Films.likes_count, таблица FilmUserLikes не читается. При полосах
+     * счетчика (filmorate.likes.counter-stripes больше 1) количество, как и топ, отстает
+     * до сворачивания полос.
+     */
+    private List<FilmSummary> selectFilmSummariesBySqlInternal(String sql, Object... args) {
+        Map<Long, Long> likesCounts = new HashMap<>();
+        List<Film> films = jdbcTemplate.query(sql, summaryRowMapper(likesCounts), args);
+        return summarizeInternal(films, likesCounts);
+    }
+
+    private List<FilmSummary> selectFilmSummariesByIdsInternal(List<Long> filmIds) {
+        String sql = sqlProvider.provideFindFilmsByIdsSql();
+        Map<Long, Long> likesCounts = new HashMap<>();
+        Map<Long, Film> idToFilm = new HashMap<>();
+        for (int from = 0; from < filmIds.size(); from += IN_CLAUSE_BATCH_SIZE) {
+            List<Long> batch = filmIds.subList(from, Math.min(from + IN_CLAUSE_BATCH_SIZE, filmIds.size()));
+            namedJdbcTemplate.query(sql, Map.of("filmIds", batch), summaryRowMapper(likesCounts))
+                    .forEach(f -> idToFilm.put(f.getId(), f));
+        }
+        List<Film> films = filmIds.stream()
+                .map(idToFilm::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return summarizeInternal(films, likesCounts);
+    }
+
+    private RowMapper<Film> summaryRowMapper(Map<Long, Long> likesCounts) {
+        RowMapper<Film> filmRowMapper = filmRowMapper();
+        FilmTable filmTable = columnNamesProvider.provideFilmColumns();
+        return (rs, rowNum) -> {
+            Film film = filmRowMapper.mapRow(rs, rowNum);
+            likesCounts.put(film.getId(), rs.getLong(filmTable.getLikesCount()));
+            return film;
+        };
+    }
+
+    private List<FilmSummary> summarizeInternal(List<Film> films, Map<Long, Long> likesCounts) {
+        if (films.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Film> idToFilm = new HashMap<>();
+        films.forEach(f -> idToFilm.put(f.getId(), f));
+        List<Long> ids = List.copyOf(idToFilm.keySet());
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_BATCH_SIZE) {
+            attachGenresInternal(idToFilm, ids.subList(from, Math.min(from + IN_CLAUSE_BATCH_SIZE, ids.size())));
+        }
+        return films.stream()
+                .map(f -> FilmSummary.of(f, likesCounts.getOrDefault(f.getId(), 0L)))
+                .collect(Collectors.toList());
     }
 
-    private Long extractUserId(ResultSet rs, UserTable userTable) throws SQLException {
-        Long userId = rs.getLong(userTable.getId());
-        return userId != 0 ? userId : null;
+    private void attachGenresAndUserLikesInternal(List<Film> films) {
+        Map<Long, Film> idToFilm = new HashMap<>();
+        films.forEach(f -> idToFilm.put(f.getId(), f));
+        List<Long> ids = List.copyOf(idToFilm.keySet());
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + IN_CLAUSE_BATCH_SIZE, ids.size()));
+            attachGenresInternal(idToFilm, batch);
+            attachUserLikesInternal(idToFilm, batch);
+        }
+        if (likesWriteBuffer.isEnabled()) {
+            films.forEach(likesWriteBuffer::applyPending);
+        }
+    }
+
+    private void attachGenresInternal(Map<Long, Film> idToFilm, List<Long> filmIds) {
+        String sql = sqlProvider.provideFindGenresOfFilmsSql();
+        FilmTable filmTable = columnNamesProvider.provideFilmColumns();
+        GenreTable genreTable = columnNamesProvider.provideGenreColumns();
+        namedJdbcTemplate.query(sql, Map.of("filmIds", filmIds), rs -> {
+            Film film = idToFilm.get(rs.getLong(filmTable.getId()));
+            film.getGenres().add(extractGenre(rs, genreTable));
+        });
+    }
+
+    private void attachUserLikesInternal(Map<Long, Film> idToFilm, List<Long> filmIds) {
+        String sql = sqlProvider.provideFindUserLikesOfFilmsSql();
+        FilmTable filmTable = columnNamesProvider.provideFilmColumns();
+        UserTable userTable = columnNamesProvider.provideUserColumns();
+        namedJdbcTemplate.query(sql, Map.of("filmIds", filmIds), rs -> {
+            Film film = idToFilm.get(rs.getLong(filmTable.getId()));
+            film.addUserLike(rs.getLong(userTable.getId()));
+        });
+    }
+
+    private Genre extractGenre(ResultSet rs, GenreTable columns) throws SQLException {
+        Long genreId = rs.getLong(columns.getId());
+        Optional<Genre> genre = referenceDictionary.findGenre(genreId);
+        if (genre.isPresent()) {
+            return genre.get();
+        }
+        return Genre.builder()
+                .id(genreId)
+                .name(GenreName.fromString(rs.getString(columns.getName())))
+                .build();
     }
 }
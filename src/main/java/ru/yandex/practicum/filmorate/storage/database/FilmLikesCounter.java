@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Денормализованный счетчик лайков фильма (столбец Films.likes_count), по которому
+ * строится топ популярных фильмов. Методы изменения счетчика вызываются внутри транзакции
+ * записи в FilmUserLikes.
+ * <p>
+ * Если filmorate.likes.counter-stripes больше 1, то лайки пишутся не в строку фильма,
+ * а в одну из случайных строк-полос FilmLikesCounter, чтобы самые популярные фильмы
+ * не становились горячей точкой по блокировкам. Полосы периодически сворачиваются
+ * в likes_count в {@link FilmLikesReconciliationJob}, до этого порядок в топе может отставать.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmLikesCounter {
+
+    private static final int RECONCILIATION_RANGE_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlProvider sqlProvider;
+    @Value("${filmorate.likes.counter-stripes:1}")
+    private final int stripes;
+
+    public void add(Long filmId, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        if (stripes <= 1) {
+            String sql = sqlProvider.provideAddToFilmLikesCountSql();
+            jdbcTemplate.update(sql, delta, filmId);
+        } else {
+            String sql = sqlProvider.provideAddToFilmLikesCounterStripeSql();
+            int stripe = ThreadLocalRandom.current().nextInt(stripes);
+            jdbcTemplate.update(sql, filmId, stripe, delta);
+        }
+    }
+
+    /**
+     * Вычитает по одному лайку у каждого фильма, который лайкнул пользователь.
+     */
+    public void subtractLikesOfUser(Long userId) {
+        jdbcTemplate.update(sqlProvider.provideSubtractLikesOfUserSql(), userId);
+    }
+
+    public void set(Long filmId, long count) {
+        String sql = sqlProvider.provideSetFilmLikesCountSql();
+        jdbcTemplate.update(sql, count, filmId);
+        if (stripes > 1) {
+            jdbcTemplate.update(sqlProvider.provideResetFilmLikesCounterStripesSql(), filmId);
+        }
+    }
+
+    /**
+     * Переносит накопленные в полосах значения в Films.likes_count.
+     * Из полосы вычитается ровно то, что было прочитано, поэтому лайки,
+     * пришедшие во время сворачивания, не теряются.
+     *
+     * @return количество свернутых полос
+     */
+    @Transactional
+    public int foldStripes() {
+        String selectSql = sqlProvider.provideFindPendingFilmLikesCounterStripesSql();
+        List<long[]> pending = jdbcTemplate.query(selectSql, (rs, rowNum) -> new long[]{
+                rs.getLong("film_id"), rs.getInt("stripe"), rs.getLong("delta")
+        });
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(
+                sqlProvider.provideSubtractFromFilmLikesCounterStripeSql(),
+                pending,
+                pending.size(),
+                (PreparedStatement ps, long[] stripe) -> {
+                    ps.setLong(1, stripe[2]);
+                    ps.setLong(2, stripe[0]);
+                    ps.setInt(3, (int) stripe[1]);
+                }
+        );
+        jdbcTemplate.batchUpdate(
+                sqlProvider.provideAddToFilmLikesCountSql(),
+                pending,
+                pending.size(),
+                (PreparedStatement ps, long[] stripe) -> {
+                    ps.setLong(1, stripe[2]);
+                    ps.setLong(2, stripe[0]);
+                }
+        );
+        return pending.size();
+    }
+
+    /**
+     * Сверяет счетчики с FilmUserLikes небольшими диапазонами id, чтобы не держать
+     * долгих блокировок, и исправляет расхождения.
+     * <p>
+     * Расхождение считается одним запросом и прибавляется к likes_count, а не записывается
+     * поверх: лайк, закоммиченный между подсчетом и исправлением, меняет и FilmUserLikes,
+     * и счетчик, поэтому расхождение от него не меняется и сам лайк не теряется.
+     *
+     * @return количество исправленных фильмов
+     */
+    public int reconcile() {
+        Long maxId = jdbcTemplate.queryForObject(sqlProvider.provideMaxFilmIdSql(), Long.class);
+        String sql = sqlProvider.provideFindFilmLikesCountDriftsSql();
+        int fixed = 0;
+        for (long from = 0; maxId != null && from < maxId; from += RECONCILIATION_RANGE_SIZE) {
+            List<long[]> drifts = jdbcTemplate.query(sql, (rs, rowNum) -> new long[]{
+                    rs.getLong("id"), rs.getLong("drift")
+            }, from, from + RECONCILIATION_RANGE_SIZE);
+            if (drifts.isEmpty()) {
+                continue;
+            }
+            jdbcTemplate.batchUpdate(
+                    sqlProvider.provideAddToFilmLikesCountSql(),
+                    drifts,
+                    drifts.size(),
+                    (PreparedStatement ps, long[] drift) -> {
+                        ps.setLong(1, drift[1]);
+                        ps.setLong(2, drift[0]);
+                    }
+            );
+            fixed += drifts.size();
+        }
+        if (fixed > 0) {
+            log.warn("Fixed likes count of {} films.", fixed);
+        }
+        return fixed;
+    }
+}
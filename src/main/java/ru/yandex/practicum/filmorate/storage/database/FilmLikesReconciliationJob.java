@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.likes.reconciliation.enabled", matchIfMissing = true)
+public class FilmLikesReconciliationJob {
+
+    private final FilmLikesCounter filmLikesCounter;
+
+    @Scheduled(
+            initialDelayString = "${filmorate.likes.stripes-fold-interval-ms:5000}",
+            fixedDelayString = "${filmorate.likes.stripes-fold-interval-ms:5000}"
+    )
+    public void foldStripes() {
+        int folded = filmLikesCounter.foldStripes();
+        if (folded > 0) {
+            log.debug("Folded {} likes counter stripes.", folded);
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${filmorate.likes.reconciliation.interval-ms:600000}",
+            fixedDelayString = "${filmorate.likes.reconciliation.interval-ms:600000}"
+    )
+    public void reconcile() {
+        filmLikesCounter.reconcile();
+    }
+}
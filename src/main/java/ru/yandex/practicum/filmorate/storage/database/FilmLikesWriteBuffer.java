@@ -0,0 +1,299 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
+
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Буфер отложенной записи лайков (filmorate.likes.write-behind.enabled). Лайк или его
+ * удаление только кладется в буфер, а в базу буфер сбрасывается периодически пакетами,
+ * по одной транзакции на пакет. Для пары (фильм, пользователь) в буфере хранится только
+ * последняя операция, так что лайк и последующее удаление лайка схлопываются.
+ * <p>
+ * Размер буфера ограничен: если он заполнен, поток, добавляющий лайк, сам сбрасывает буфер
+ * и ждет окончания записи. Пакеты пишутся в собственных транзакциях (REQUIRES_NEW), а не
+ * в транзакции вызывающего запроса: ошибка чужого пакета не откатывает лайк пользователя,
+ * а откат запроса не теряет уже подтвержденные лайки из пакета. Фильмы, прочитанные из базы, дополняются еще не записанными
+ * операциями через {@link #applyPending(Film)}. Количество лайков в кратком виде фильма
+ * и порядок в топе догоняют буфер после сброса.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmLikesWriteBuffer implements MeterBinder {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlProvider sqlProvider;
+    private final FilmLikesCounter filmLikesCounter;
+    private final PlatformTransactionManager transactionManager;
+    @Value("${filmorate.likes.write-behind.enabled:false}")
+    private final boolean enabled;
+    @Value("${filmorate.likes.write-behind.max-pending:100000}")
+    private final int maxPending;
+    @Value("${filmorate.likes.write-behind.flush-batch-size:5000}")
+    private final int flushBatchSize;
+
+    // filmId -> userId -> true for like, false for unlike
+    private final ConcurrentMap<Long, ConcurrentMap<Long, Boolean>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile BiConsumer<Long, Long> likesCountListener = (filmId, delta) -> {
+    };
+    private volatile Timer flushTimer;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Вызывается внутри транзакции сброса для каждого фильма, количество лайков которого изменилось.
+     */
+    public void onLikesCountChanged(BiConsumer<Long, Long> listener) {
+        this.likesCountListener = listener;
+    }
+
+    public void like(Long filmId, Long userId) {
+        enqueue(filmId, userId, true);
+    }
+
+    public void unlike(Long filmId, Long userId) {
+        enqueue(filmId, userId, false);
+    }
+
+    /**
+     * Отбрасывает несохраненные операции фильма, например, когда его лайки целиком перезаписываются.
+     */
+    public void discard(Long filmId) {
+        flushLock.lock();
+        try {
+            pending.computeIfPresent(filmId, (id, ops) -> {
+                depth.addAndGet(-ops.size());
+                return null;
+            });
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public void applyPending(Film film) {
+        Map<Long, Boolean> ops = pending.get(film.getId());
+        if (ops == null) {
+            return;
+        }
+        ops.forEach((userId, liked) -> {
+            if (liked) {
+                film.addUserLike(userId);
+            } else {
+                film.removeUserLike(userId);
+            }
+        });
+    }
+
+    public int depth() {
+        return depth.get();
+    }
+
+    @Scheduled(
+            initialDelayString = "${filmorate.likes.write-behind.flush-interval-ms:200}",
+            fixedDelayString = "${filmorate.likes.write-behind.flush-interval-ms:200}"
+    )
+    public void flush() {
+        if (depth.get() == 0) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            long start = System.nanoTime();
+            writePending(pending.keySet());
+            Timer timer = flushTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Записывает несохраненные операции только указанных фильмов, например, перед тем
+     * как их лайки пишутся в базу в обход буфера.
+     */
+    public void flush(Collection<Long> filmIds) {
+        if (depth.get() == 0) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            writePending(filmIds);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (enabled) {
+            flush();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("filmorate.likes.buffer.depth", depth, AtomicInteger::get)
+                .description("Like and unlike operations waiting to be written")
+                .register(registry);
+        flushTimer = Timer.builder("filmorate.likes.buffer.flush")
+                .description("Time to write the like buffer to the database")
+                .register(registry);
+    }
+
+    private void enqueue(Long filmId, Long userId, boolean liked) {
+        if (depth.get() >= maxPending) {
+            // backpressure: the caller pays for the flush instead of growing the buffer
+            flush();
+        }
+        pending.compute(filmId, (id, ops) -> {
+            ConcurrentMap<Long, Boolean> filmOps = ops == null ? new ConcurrentHashMap<>() : ops;
+            if (filmOps.put(userId, liked) == null) {
+                depth.incrementAndGet();
+            }
+            return filmOps;
+        });
+    }
+
+    private void writePending(Collection<Long> filmIds) {
+        List<PendingLike> batch;
+        while (!(batch = drain(filmIds)).isEmpty()) {
+            writeBatch(batch);
+            complete(batch);
+        }
+    }
+
+    private List<PendingLike> drain(Collection<Long> filmIds) {
+        List<PendingLike> batch = new ArrayList<>();
+        for (Long filmId : filmIds) {
+            Map<Long, Boolean> ops = pending.get(filmId);
+            if (ops == null) {
+                continue;
+            }
+            for (Map.Entry<Long, Boolean> op : ops.entrySet()) {
+                if (batch.size() >= flushBatchSize) {
+                    return batch;
+                }
+                batch.add(new PendingLike(filmId, op.getKey(), op.getValue()));
+            }
+        }
+        return batch;
+    }
+
+    private void writeBatch(List<PendingLike> batch) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeInternal(batch));
+        } catch (DataAccessException e) {
+            // e.g. a film was removed in the meantime: retry one by one and drop what still fails
+            log.warn("Failed to flush {} buffered likes, retrying one by one: {}", batch.size(), e.getMessage());
+            for (PendingLike like : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> writeInternal(List.of(like)));
+                } catch (DataAccessException ex) {
+                    log.warn("Dropping buffered like {}: {}", like, ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void writeInternal(List<PendingLike> batch) {
+        List<PendingLike> likes = new ArrayList<>();
+        List<PendingLike> unlikes = new ArrayList<>();
+        batch.forEach(op -> (op.liked ? likes : unlikes).add(op));
+        Map<Long, Long> deltas = new HashMap<>();
+        int[][] added = jdbcTemplate.batchUpdate(sqlProvider.provideAddUserLikeIfAbsentSql(), likes, likes.size(),
+                (PreparedStatement ps, PendingLike op) -> {
+                    ps.setLong(1, op.filmId);
+                    ps.setLong(2, op.userId);
+                    ps.setLong(3, op.filmId);
+                    ps.setLong(4, op.userId);
+                });
+        collectDeltas(likes, added, 1, deltas);
+        int[][] removed = jdbcTemplate.batchUpdate(sqlProvider.provideRemoveLikeOfActiveUserSql(), unlikes,
+                unlikes.size(), (PreparedStatement ps, PendingLike op) -> {
+                    ps.setLong(1, op.filmId);
+                    ps.setLong(2, op.userId);
+                });
+        collectDeltas(unlikes, removed, -1, deltas);
+        deltas.forEach((filmId, delta) -> {
+            filmLikesCounter.add(filmId, delta);
+            likesCountListener.accept(filmId, delta);
+        });
+    }
+
+    private void collectDeltas(List<PendingLike> ops, int[][] counts, long sign, Map<Long, Long> deltas) {
+        int i = 0;
+        for (int[] batchCounts : counts) {
+            for (int count : batchCounts) {
+                if (count > 0) {
+                    deltas.merge(ops.get(i).filmId, sign, Long::sum);
+                }
+                i++;
+            }
+        }
+    }
+
+    private void complete(List<PendingLike> batch) {
+        for (PendingLike op : batch) {
+            pending.computeIfPresent(op.filmId, (id, ops) -> {
+                // an opposite operation enqueued during the flush stays in the buffer
+                if (ops.remove(op.userId, op.liked)) {
+                    depth.decrementAndGet();
+                }
+                return ops.isEmpty() ? null : ops;
+            });
+        }
+    }
+
+    private static final class PendingLike {
+        private final long filmId;
+        private final long userId;
+        private final boolean liked;
+
+        private PendingLike(long filmId, long userId, boolean liked) {
+            this.filmId = filmId;
+            this.userId = userId;
+            this.liked = liked;
+        }
+
+        @Override
+        public String toString() {
+            return (liked ? "like" : "unlike") + " film=" + filmId + " user=" + userId;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Locale;
+
+/**
+ * Связи (лайки, дружба) пишутся одним запросом без предварительных проверок существования
+ * сторон: если одной из них нет, база отклоняет запись по внешнему ключу, и по имени
+ * ограничения в ошибке можно понять, какой именно сущности не хватает.
+ */
+final class ForeignKeys {
+
+    static final String FILM_USER_LIKES_FILM = "film_user_likes_film_id_fk";
+    static final String FILM_USER_LIKES_USER = "film_user_likes_user_id_fk";
+    static final String FRIENDSHIP_USER = "friendship_status_user_id_user_fk";
+    static final String FRIENDSHIP_FRIEND = "friendship_status_user_id_friend_fk";
+
+    private ForeignKeys() {
+    }
+
+    static boolean isViolated(DataIntegrityViolationException e, String constraintName) {
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null
+                && message.toLowerCase(Locale.ROOT).contains(constraintName.toLowerCase(Locale.ROOT));
+    }
+}
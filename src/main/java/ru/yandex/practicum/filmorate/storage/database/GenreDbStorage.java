@@ -4,17 +4,13 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.GenreName;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
 
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,24 +20,16 @@ public class GenreDbStorage implements GenreStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private final SqlProvider sqlProvider;
+    private final ReferenceDictionary referenceDictionary;
 
     @Override
     public List<Genre> findAll() {
-        String sql = sqlProvider.provideFindAllGenresSql();
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeGenre(rs));
+        return referenceDictionary.findAllGenres();
     }
 
     @Override
     public Optional<Genre> getById(Long id) {
-        String sql = sqlProvider.provideFindGenreByIdSql();
-        SqlRowSet rowSet = jdbcTemplate.queryForRowSet(sql, id);
-        if (rowSet.next()) {
-            return Optional.of(Genre.builder()
-                    .id(rowSet.getLong("id"))
-                    .name(GenreName.fromString(rowSet.getString("name")))
-                    .build());
-        }
-        return Optional.empty();
+        return referenceDictionary.findGenre(id);
     }
 
     @Override
@@ -59,17 +47,11 @@ public class GenreDbStorage implements GenreStorage {
         }, keyHolder);
         Long id = (Long) keyHolder.getKey();
         genre.setId(id);
+        referenceDictionary.reload();
         return genre;
     }
 
     private boolean genreAlreadyExists(Genre genre) {
         return genre.getId() != null && getById(genre.getId()).isPresent();
     }
-
-    private Genre makeGenre(ResultSet rs) throws SQLException {
-        return Genre.builder()
-                .id(rs.getLong("id"))
-                .name(GenreName.fromString(rs.getString("name")))
-                .build();
-    }
 }
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
+import ru.yandex.practicum.filmorate.util.IdGenerator;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Генераторы идентификаторов фильмов и пользователей для filmorate.ids.hilo.enabled.
+ * С ними идентификатор известен до вставки, и хранилищу не нужно читать сгенерированные ключи.
+ * Включать генераторы нужно для всей базы: auto_increment не знает о выданных ими идентификаторах.
+ */
+@Component
+@RequiredArgsConstructor
+public class HiLoIdGenerators {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlProvider sqlProvider;
+    @Value("${filmorate.ids.hilo.enabled:false}")
+    private final boolean enabled;
+    @Value("${filmorate.ids.hilo.block-size:1000}")
+    private final int blockSize;
+
+    private SequenceIdGenerator films;
+    private SequenceIdGenerator users;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        films = new SequenceIdGenerator(jdbcTemplate, sqlProvider.provideNextFilmIdBlockSql(), blockSize);
+        films.skipPast(jdbcTemplate.queryForObject(sqlProvider.provideMaxFilmIdSql(), Long.class),
+                sqlProvider::provideRestartFilmIdBlocksSql);
+        users = new SequenceIdGenerator(jdbcTemplate, sqlProvider.provideNextUserIdBlockSql(), blockSize);
+        users.skipPast(jdbcTemplate.queryForObject(sqlProvider.provideMaxUserIdSql(), Long.class),
+                sqlProvider::provideRestartUserIdBlocksSql);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public IdGenerator films() {
+        return films;
+    }
+
+    public IdGenerator users() {
+        return users;
+    }
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.IdempotencyRecord;
+import ru.yandex.practicum.filmorate.storage.IdempotencyStorage;
+import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Ключи идемпотентности в таблице IdempotencyKeys, общей для всех узлов. Просроченные
+ * записи не читаются, а периодически удаляются порциями. Просроченная запись с тем же
+ * ключом, которую очистка еще не удалила, удаляется при сохранении новой.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.idempotency.db.enabled")
+public class IdempotencyDbStorage implements IdempotencyStorage {
+
+    private static final int CLEANUP_BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlProvider sqlProvider;
+    @Value("${filmorate.idempotency.ttl-seconds:86400}")
+    private final long ttlSeconds;
+
+    @Override
+    public Optional<IdempotencyRecord> find(String key) {
+        List<IdempotencyRecord> records = jdbcTemplate.query(sqlProvider.provideFindIdempotencyRecordSql(),
+                (rs, rowNum) -> new IdempotencyRecord(rs.getString("request_hash"), rs.getString("response_body")),
+                key, expiredBefore());
+        return records.stream().findFirst();
+    }
+
+    @Override
+    @Transactional
+    public void save(String key, IdempotencyRecord record) {
+        jdbcTemplate.update(sqlProvider.provideDeleteExpiredIdempotencyRecordSql(), key, expiredBefore());
+        try {
+            jdbcTemplate.update(sqlProvider.provideInsertIdempotencyRecordSql(),
+                    key, record.getRequestHash(), record.getResponseBody(), LocalDateTime.now());
+        } catch (DuplicateKeyException e) {
+            // another node stored its response first: the first one stays
+            log.debug("Idempotency key {} is already stored.", key);
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${filmorate.idempotency.cleanup-interval-ms:60000}",
+            fixedDelayString = "${filmorate.idempotency.cleanup-interval-ms:60000}"
+    )
+    public void deleteExpired() {
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(sqlProvider.provideDeleteExpiredIdempotencyRecordsSql(),
+                    expiredBefore(), CLEANUP_BATCH_SIZE);
+        } while (deleted == CLEANUP_BATCH_SIZE);
+    }
+
+    private LocalDateTime expiredBefore() {
+        return LocalDateTime.now().minusSeconds(ttlSeconds);
+    }
+}
@@ -4,17 +4,13 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.model.Rating;
-import ru.yandex.practicum.filmorate.model.RatingName;
 import ru.yandex.practicum.filmorate.storage.RatingStorage;
 import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
 
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,24 +20,16 @@ public class RatingDbStorage implements RatingStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private final SqlProvider sqlProvider;
+    private final ReferenceDictionary referenceDictionary;
 
     @Override
     public List<Rating> findAll() {
-        String sql = sqlProvider.provideFindAllRatingsSql();
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeRating(rs));
+        return referenceDictionary.findAllRatings();
     }
 
     @Override
     public Optional<Rating> getById(Long id) {
-        String sql = sqlProvider.provideFindRatingByIdSql();
-        SqlRowSet rowSet = jdbcTemplate.queryForRowSet(sql, id);
-        if (rowSet.next()) {
-            return Optional.of(Rating.builder()
-                    .id(rowSet.getLong("id"))
-                    .name(RatingName.fromString(rowSet.getString("name")))
-                    .build());
-        }
-        return Optional.empty();
+        return referenceDictionary.findRating(id);
     }
 
     @Override
@@ -59,17 +47,11 @@ public class RatingDbStorage implements RatingStorage {
         }, keyHolder);
         Long id = (Long) keyHolder.getKey();
         rating.setId(id);
+        referenceDictionary.reload();
         return rating;
     }
 
     private boolean ratingAlreadyExists(Rating rating) {
         return rating.getId() != null && getById(rating.getId()).isPresent();
     }
-
-    private Rating makeRating(ResultSet rs) throws SQLException {
-        return Rating.builder()
-                .id(rs.getLong("id"))
-                .name(RatingName.fromString(rs.getString("name")))
-                .build();
-    }
 }
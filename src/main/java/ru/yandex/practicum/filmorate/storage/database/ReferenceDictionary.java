@@ -0,0 +1,129 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.GenreName;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.RatingName;
+import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
+
+/**
+ * Справочник жанров и рейтингов MPA. Таблицы Genres и Ratings заполняются из data.sql
+ * и почти не меняются, поэтому они один раз загружаются в неизменяемые массивы,
+ * индексированные по id. Genre и Rating изменяемы, поэтому наружу отдаются их копии:
+ * изменение жанра одного фильма не портит справочник для остальных запросов.
+ * <p>
+ * Справочник загружается при первом обращении и перечитывается после добавления
+ * жанра или рейтинга через {@link GenreDbStorage} / {@link RatingDbStorage}.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReferenceDictionary {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlProvider sqlProvider;
+    private volatile Snapshot snapshot;
+
+    public List<Genre> findAllGenres() {
+        return snapshot().genreList.stream()
+                .map(ReferenceDictionary::copy)
+                .collect(Collectors.toList());
+    }
+
+    public Optional<Genre> findGenre(Long id) {
+        return Optional.ofNullable(byId(snapshot().genres, id)).map(ReferenceDictionary::copy);
+    }
+
+    public List<Rating> findAllRatings() {
+        return snapshot().ratingList.stream()
+                .map(ReferenceDictionary::copy)
+                .collect(Collectors.toList());
+    }
+
+    public Optional<Rating> findRating(Long id) {
+        return Optional.ofNullable(byId(snapshot().ratings, id)).map(ReferenceDictionary::copy);
+    }
+
+    public synchronized void reload() {
+        snapshot = load();
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = load();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private Snapshot load() {
+        List<Genre> genres = jdbcTemplate.query(sqlProvider.provideFindAllGenresSql(),
+                (rs, rowNum) -> Genre.builder()
+                        .id(rs.getLong("id"))
+                        .name(GenreName.fromString(rs.getString("name")))
+                        .build());
+        List<Rating> ratings = jdbcTemplate.query(sqlProvider.provideFindAllRatingsSql(),
+                (rs, rowNum) -> Rating.builder()
+                        .id(rs.getLong("id"))
+                        .name(RatingName.fromString(rs.getString("name")))
+                        .build());
+        Genre[] genresById = new Genre[maxId(genres.stream().mapToLong(Genre::getId).max()) + 1];
+        genres.forEach(g -> genresById[g.getId().intValue()] = g);
+        Rating[] ratingsById = new Rating[maxId(ratings.stream().mapToLong(Rating::getId).max()) + 1];
+        ratings.forEach(r -> ratingsById[r.getId().intValue()] = r);
+        return new Snapshot(genresById, ratingsById);
+    }
+
+    private int maxId(OptionalLong max) {
+        return Math.toIntExact(max.orElse(0));
+    }
+
+    private static Genre copy(Genre genre) {
+        return Genre.builder().id(genre.getId()).name(genre.getName()).build();
+    }
+
+    private static Rating copy(Rating rating) {
+        return Rating.builder().id(rating.getId()).name(rating.getName()).build();
+    }
+
+    private static <T> T byId(T[] values, Long id) {
+        if (id == null || id < 0 || id >= values.length) {
+            return null;
+        }
+        return values[id.intValue()];
+    }
+
+    private static final class Snapshot {
+        private final Genre[] genres;
+        private final Rating[] ratings;
+        private final List<Genre> genreList;
+        private final List<Rating> ratingList;
+
+        private Snapshot(Genre[] genres, Rating[] ratings) {
+            this.genres = genres;
+            this.ratings = ratings;
+            this.genreList = nonNull(genres);
+            this.ratingList = nonNull(ratings);
+        }
+
+        private static <T> List<T> nonNull(T[] values) {
+            return Arrays.stream(values)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toUnmodifiableList());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Проверка ссылок на целые наборы идентификаторов: существование проверяется одним
+ * IN-запросом на каждые {@link #IN_CLAUSE_BATCH_SIZE} идентификаторов, а все
+ * отсутствующие идентификаторы попадают в одну ошибку.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReferenceValidator {
+
+    static final int IN_CLAUSE_BATCH_SIZE = 1000;
+    private static final int MAX_REPORTED_IDS = 100;
+
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final SqlProvider sqlProvider;
+
+    /**
+     * Первый столбец результата sql - найденный идентификатор, paramName - имя параметра IN-списка.
+     */
+    public Set<Long> findExistingIds(String sql, String paramName, Collection<Long> ids) {
+        Set<Long> existing = new HashSet<>();
+        List<Long> idList = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        for (int from = 0; from < idList.size(); from += IN_CLAUSE_BATCH_SIZE) {
+            List<Long> batch = idList.subList(from, Math.min(from + IN_CLAUSE_BATCH_SIZE, idList.size()));
+            namedJdbcTemplate.query(sql, Map.of(paramName, batch), rs -> {
+                existing.add(rs.getLong(1));
+            });
+        }
+        return existing;
+    }
+
+    public void throwIfAnyUserNotFound(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Set<Long> existing = findExistingIds(sqlProvider.provideFindExistingUserIdsSql(), "userIds", userIds);
+        throwIfAnyUserMissing(userIds, existing);
+    }
+
+    /**
+     * Для случаев, когда строки пользователей уже прочитаны и нужно только сообщить об отсутствующих.
+     */
+    public void throwIfAnyUserMissing(Collection<Long> userIds, Set<Long> existing) {
+        List<Long> missing = new ArrayList<>(new LinkedHashSet<>(userIds));
+        missing.removeIf(existing::contains);
+        if (missing.isEmpty()) {
+            return;
+        }
+        if (missing.size() == 1) {
+            String msg = String.format("User with ID: %d is not found.", missing.get(0));
+            throw new ResourceNotFoundException(msg);
+        }
+        String msg = String.format("Users with IDs: %s are not found.", describe(missing));
+        throw new ResourceNotFoundException(msg);
+    }
+
+    private static String describe(List<Long> ids) {
+        if (ids.size() <= MAX_REPORTED_IDS) {
+            return ids.toString();
+        }
+        return String.format("%s and %d more", ids.subList(0, MAX_REPORTED_IDS), ids.size() - MAX_REPORTED_IDS);
+    }
+}
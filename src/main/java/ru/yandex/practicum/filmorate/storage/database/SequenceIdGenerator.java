@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.util.IdGenerator;
+
+import java.util.function.LongFunction;
+
+/**
+ * Генератор идентификаторов hi-lo поверх последовательности БД. Одно обращение к последовательности
+ * (hi) резервирует блок [hi * blockSize, (hi + 1) * blockSize), который поток дальше раздает сам,
+ * без блокировок и без обращений к базе. Блоки разных потоков и разных узлов не пересекаются,
+ * неиспользованные остатки блоков просто пропадают.
+ */
+public class SequenceIdGenerator implements IdGenerator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nextBlockSql;
+    private final int blockSize;
+    // {next id, end of block (exclusive)} of the current thread
+    private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]);
+
+    public SequenceIdGenerator(JdbcTemplate jdbcTemplate, String nextBlockSql, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.nextBlockSql = nextBlockSql;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Сдвигает последовательность за уже существующие идентификаторы, например, строки,
+     * вставленные до включения генератора. Вызывается при старте узла: последовательность
+     * перезапускается, только если она отстает от данных.
+     */
+    public void skipPast(long maxExistingId, LongFunction<String> restartSql) {
+        long hi = nextBlock();
+        if (hi * blockSize <= maxExistingId) {
+            jdbcTemplate.execute(restartSql.apply(maxExistingId / blockSize + 1));
+        }
+    }
+
+    @Override
+    public Long nextId() {
+        long[] current = block.get();
+        if (current[0] == current[1]) {
+            current[0] = nextBlock() * blockSize;
+            current[1] = current[0] + blockSize;
+        }
+        return current[0]++;
+    }
+
+    private long nextBlock() {
+        return jdbcTemplate.queryForObject(nextBlockSql, Long.class);
+    }
+}
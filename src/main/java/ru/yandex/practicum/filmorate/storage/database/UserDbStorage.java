@@ -1,7 +1,11 @@
 package ru.yandex.practicum.filmorate.storage.database;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
@@ -9,57 +13,87 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.model.BulkReport;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FriendshipGraph;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.storage.database.dbutils.ColumnNamesProvider;
 import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
 import ru.yandex.practicum.filmorate.storage.database.dbutils.UserTable;
+import ru.yandex.practicum.filmorate.util.TransactionHooks;
 
+import javax.annotation.PostConstruct;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
 
+    private static final int IN_CLAUSE_BATCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
     private final SqlProvider sqlProvider;
     private final ColumnNamesProvider columnNamesProvider;
+    private final FriendshipGraph friendshipGraph;
+    private final EdgeBatchWriter edgeBatchWriter;
+    private final ReferenceValidator referenceValidator;
+    private final HiLoIdGenerators idGenerators;
+    private final DeletedEntitiesPurger purger;
+    private final MeterRegistry meterRegistry;
+    @Value("${filmorate.friendship-graph.enabled:false}")
+    private final boolean friendshipGraphEnabled;
+
+    @PostConstruct
+    public void rebuildFriendshipGraph() {
+        if (!friendshipGraphEnabled) {
+            return;
+        }
+        String sql = sqlProvider.provideFindAllFriendshipsSql();
+        Map<Long, List<Long>> friendsByUser = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            friendsByUser.computeIfAbsent(rs.getLong("user_id"), id -> new ArrayList<>())
+                    .add(rs.getLong("friend_id"));
+        });
+        friendshipGraph.rebuild(friendsByUser);
+    }
 
     @Transactional
     @Override
     public User save(User user) {
         throwIfUserExists(user.getId());
+        Map<Long, User> friends = findFriendRowsOrThrow(user);
 
         User saved = saveUserInternal(user);
-        saveUserFriendsInternal(saved);
-        // return user with all info about him/her
-        return findUserById(saved.getId()).get();
-    }
-
-    private void saveUserFriendsInternal(User saved) {
-        saved.getFriends().forEach(f -> {
-            throwIfUserNotFound(f.getId());
-        });
-        String sql = sqlProvider.provideSaveUserFriendsSql();
-        jdbcTemplate.batchUpdate(
-                sql,
-                saved.getFriends(),
-                saved.getFriends().size(),
-                (PreparedStatement ps, User u) -> {
-                    ps.setLong(1, saved.getId());
-                    ps.setLong(2, u.getId());
-                }
-        );
+        batchUpdateFriendsInternal(sqlProvider.provideSaveUserFriendsSql(), saved.getId(),
+                List.copyOf(friends.keySet()));
+        setFriendsAfterCommit(saved);
+        return writtenUser(saved, friends);
     }
 
     private User saveUserInternal(User user) {
+        if (idGenerators.isEnabled()) {
+            user.setId(idGenerators.users().nextId());
+            jdbcTemplate.update(sqlProvider.provideInsertUserWithIdSql(), user.getId(), user.getEmail(),
+                    user.getLogin(), user.getName(), user.getBirthday());
+            return user;
+        }
         String sql = sqlProvider.provideInsertUserSql();
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(connection -> {
@@ -76,15 +110,106 @@ public class UserDbStorage implements UserStorage {
     }
 
 
+    /**
+     * Как и для фильмов, записываются только изменения: столбцы пользователя
+     * и отличающиеся строки дружбы.
+     */
     @Transactional
     @Override
     public User update(User user) {
-        throwIfUserNotFound(user.getId());
+        User stored = findUserRowInternal(user.getId()).orElseThrow(() -> {
+            String msg = String.format("User with ID: %d is not found.", user.getId());
+            return new ResourceNotFoundException(msg);
+        });
+        int rows = 0;
+        if (userColumnsChanged(stored, user)) {
+            updateUserInternal(user);
+            rows++;
+        }
+        Map<Long, User> friends = findFriendRowsOrThrow(user);
+        rows += updateUserFriendsInternal(user.getId(), friends.keySet());
+        setFriendsAfterCommit(user);
+        meterRegistry.summary("filmorate.update.rows", "entity", "user").record(rows);
+        return writtenUser(user, friends);
+    }
+
+    /**
+     * Читает только собственные столбцы друзей пользователя (без их друзей) IN-запросами.
+     * Этого достаточно и для проверки, что все друзья существуют, и для ответа на запись.
+     */
+    private Map<Long, User> findFriendRowsOrThrow(User user) {
+        List<Long> friendIds = user.getFriends().stream()
+                .map(User::getId)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<Long, User> friends = new LinkedHashMap<>();
+        if (friendIds.isEmpty()) {
+            return friends;
+        }
+        String sql = sqlProvider.provideFindUserColumnsByIdsSql();
+        UserTable userTable = columnNamesProvider.provideUserColumns();
+        Map<Long, User> found = new HashMap<>();
+        for (int from = 0; from < friendIds.size(); from += IN_CLAUSE_BATCH_SIZE) {
+            List<Long> batch = friendIds.subList(from, Math.min(from + IN_CLAUSE_BATCH_SIZE, friendIds.size()));
+            namedJdbcTemplate.query(sql, Collections.singletonMap("userIds", batch), rs -> {
+                long id = rs.getLong(userTable.getId());
+                found.put(id, extractUser(rs, userTable, id));
+            });
+        }
+        referenceValidator.throwIfAnyUserMissing(friendIds, found.keySet());
+        friendIds.forEach(friendId -> friends.put(friendId, found.get(friendId)));
+        return friends;
+    }
 
-        updateUserInternal(user);
-        deleteUserFriendsInternal(user);
-        saveUserFriendsInternal(user);
-        return findUserById(user.getId()).get();
+    /**
+     * Ответ на запись строится из записанных данных, без повторного чтения пользователя и всех его друзей.
+     */
+    private User writtenUser(User user, Map<Long, User> friends) {
+        return user.toBuilder()
+                .friends(new HashSet<>(friends.values()))
+                .build();
+    }
+
+    private Optional<User> findUserRowInternal(Long userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        String sql = sqlProvider.provideFindUserColumnsByIdSql();
+        UserTable userTable = columnNamesProvider.provideUserColumns();
+        return jdbcTemplate.query(sql, (rs, rowNum) -> extractUser(rs, userTable, userId), userId)
+                .stream()
+                .findFirst();
+    }
+
+    private boolean userColumnsChanged(User stored, User user) {
+        return !Objects.equals(stored.getEmail(), user.getEmail())
+                || !Objects.equals(stored.getLogin(), user.getLogin())
+                || !Objects.equals(stored.getName(), user.getName())
+                || !Objects.equals(stored.getBirthday(), user.getBirthday());
+    }
+
+    private int updateUserFriendsInternal(Long userId, Set<Long> incoming) {
+        Set<Long> stored = new HashSet<>(jdbcTemplate.queryForList(
+                sqlProvider.provideFindFriendIdsOfUserSql(), Long.class, userId));
+        List<Long> removed = stored.stream()
+                .filter(id -> !incoming.contains(id))
+                .collect(Collectors.toList());
+        List<Long> added = incoming.stream()
+                .filter(id -> !stored.contains(id))
+                .collect(Collectors.toList());
+        batchUpdateFriendsInternal(sqlProvider.provideDeleteSingleUserFriendSql(), userId, removed);
+        batchUpdateFriendsInternal(sqlProvider.provideSaveUserFriendsSql(), userId, added);
+        return removed.size() + added.size();
+    }
+
+    private void batchUpdateFriendsInternal(String sql, Long userId, List<Long> friendIds) {
+        if (friendIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, friendIds, friendIds.size(), (PreparedStatement ps, Long friendId) -> {
+            ps.setLong(1, userId);
+            ps.setLong(2, friendId);
+        });
     }
 
     private void updateUserInternal(User user) {
@@ -97,39 +222,91 @@ public class UserDbStorage implements UserStorage {
                 user.getId());
     }
 
-    private void deleteUserFriendsInternal(User user) {
-        String sql = sqlProvider.provideDeleteUserFriendsSql();
-        jdbcTemplate.update(sql, user.getId());
-    }
-
     @Override
     public List<User> findAll() {
         String sql = sqlProvider.provideFindAllUsersSql();
         return selectUsersBySqlInternal(sql);
     }
 
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        String sql = sqlProvider.provideFindUsersPageSql();
+        return selectUsersBySqlInternal(sql, afterId, limit);
+    }
+
     @Override
     public void addFriendForUser(Long userId, Long newFriendId) {
-        throwIfUserNotFound(userId);
-        throwIfUserNotFound(newFriendId);
+        // the merge writes nothing if one of the users is missing or deleted
+        String sql = sqlProvider.provideMergeUserFriendSql();
+        int merged;
+        try {
+            merged = jdbcTemplate.update(sql, userId, newFriendId);
+        } catch (DataIntegrityViolationException e) {
+            throw translateFriendshipViolation(e, userId, newFriendId);
+        }
+        if (merged == 0) {
+            throwIfUserNotFound(userId);
+            throwIfUserNotFound(newFriendId);
+            return;
+        }
+        if (friendshipGraphEnabled) {
+            TransactionHooks.runAfterCommit(() -> friendshipGraph.addFriend(userId, newFriendId));
+        }
+    }
 
-        String sql = sqlProvider.provideSaveUserFriendsSql();
-        jdbcTemplate.update(sql, userId, newFriendId);
+    @Transactional
+    @Override
+    public BulkReport addFriends(List<Friendship> friendships) {
+        BulkReport report = new BulkReport();
+        List<long[]> inserted = edgeBatchWriter.insertNew(friendships, Friendship::getUserId, Friendship::getFriendId,
+                friendshipEdgeSpec(), report);
+        if (friendshipGraphEnabled && !inserted.isEmpty()) {
+            TransactionHooks.runAfterCommit(() -> inserted.forEach(edge -> friendshipGraph.addFriend(edge[0], edge[1])));
+        }
+        return report;
     }
 
     @Override
     public void removeFriendForUser(Long userId, Long friendId) {
-        throwIfUserNotFound(userId);
-        throwIfUserNotFound(friendId);
-
         String sql = sqlProvider.provideDeleteSingleUserFriendSql();
-        jdbcTemplate.update(sql, userId, friendId);
+        int removed = jdbcTemplate.update(sql, userId, friendId);
+        if (removed == 0) {
+            // nothing was removed: either they were not friends, or one of the users does not exist
+            throwIfUserNotFound(userId);
+            throwIfUserNotFound(friendId);
+            return;
+        }
+        if (friendshipGraphEnabled) {
+            TransactionHooks.runAfterCommit(() -> friendshipGraph.removeFriend(userId, friendId));
+        }
+    }
+
+    /**
+     * Пользователь только помечается удаленным и сразу пропадает из чтения, в том числе
+     * из списков друзей, а его лайки - из лайков, счетчиков и топа фильмов. Строки дружбы
+     * и лайков удаляет {@link DeletedEntitiesPurger}.
+     */
+    @Transactional
+    @Override
+    public void deleteUser(Long userId) {
+        int marked = jdbcTemplate.update(sqlProvider.provideMarkUserDeletedSql(), userId);
+        if (marked == 0) {
+            String msg = String.format("User with ID: %d is not found.", userId);
+            throw new ResourceNotFoundException(msg);
+        }
+        purger.subtractLikesOfUser(userId);
+        if (friendshipGraphEnabled) {
+            TransactionHooks.runAfterCommit(() -> friendshipGraph.removeUser(userId));
+        }
     }
 
     @Override
     public List<User> getFriends(Long userId) {
         throwIfUserNotFound(userId);
 
+        if (friendshipGraphEnabled) {
+            return selectUsersByIdsInternal(friendshipGraph.getFriendIds(userId));
+        }
         String sql = sqlProvider.provideGetFriendsOfUserSql();
         return selectUsersBySqlInternal(sql, userId);
     }
@@ -139,6 +316,9 @@ public class UserDbStorage implements UserStorage {
         throwIfUserNotFound(userId);
         throwIfUserNotFound(friendId);
 
+        if (friendshipGraphEnabled) {
+            return selectUsersByIdsInternal(friendshipGraph.getCommonFriendIds(userId, friendId));
+        }
         String sql = sqlProvider.provideGetCommonFriendsOfUsersSql();
         return selectUsersBySqlInternal(sql, userId, friendId);
     }
@@ -206,6 +386,33 @@ public class UserDbStorage implements UserStorage {
     }
 
 
+    private EdgeBatchWriter.EdgeSpec friendshipEdgeSpec() {
+        String existingUserIdsSql = sqlProvider.provideFindExistingUserIdsSql();
+        return EdgeBatchWriter.EdgeSpec.builder()
+                .fromIdsSql(existingUserIdsSql)
+                .fromIdsParam("userIds")
+                .fromNotFoundMessage("User with ID: %d is not found.")
+                .toIdsSql(existingUserIdsSql)
+                .toIdsParam("userIds")
+                .toNotFoundMessage("Friend with ID: %d is not found.")
+                .existingEdgesSql(sqlProvider.provideFindExistingFriendshipsSql())
+                .insertSql(sqlProvider.provideSaveUserFriendsSql())
+                .selfLoopAllowed(false)
+                .build();
+    }
+
+    private RuntimeException translateFriendshipViolation(DataIntegrityViolationException e, Long userId, Long friendId) {
+        if (ForeignKeys.isViolated(e, ForeignKeys.FRIENDSHIP_USER)) {
+            return new ResourceNotFoundException(String.format("User with ID: %d is not found.", userId));
+        }
+        if (ForeignKeys.isViolated(e, ForeignKeys.FRIENDSHIP_FRIEND)) {
+            return new ResourceNotFoundException(String.format("User with ID: %d is not found.", friendId));
+        }
+        throwIfUserNotFound(userId);
+        throwIfUserNotFound(friendId);
+        return e;
+    }
+
     private void throwIfUserNotFound(Long userId) {
         if (userNotFound(userId)) {
             String msg = String.format("User with ID: %d is not found.", userId);
@@ -221,27 +428,54 @@ public class UserDbStorage implements UserStorage {
     }
 
     private List<User> selectUsersBySqlInternal(String sql, Object... args) {
+        return jdbcTemplate.query(sql, this::collectUsersInternal, args);
+    }
+
+    private List<User> collectUsersInternal(ResultSet rs) throws SQLException {
         UserTable userTable = columnNamesProvider.provideUserColumns();
-        return jdbcTemplate.query(sql, rs -> {
-            Map<Long, User> idToUser = new HashMap<>();
-            while (rs.next()) {
-                User friend = extractFriend(rs, columnNamesProvider.provideFriendColumns());
+        // only users selected by the query go to the result, friends are
+        // attached to them, so the result keeps the order and size of the query
+        Map<Long, User> idToUser = new LinkedHashMap<>();
+        while (rs.next()) {
+            User friend = extractFriend(rs, columnNamesProvider.provideFriendColumns());
+
+            Long id = rs.getLong(userTable.getId());
+            User user = idToUser.get(id);
+            if (user == null) { // first time we see the user
+                user = extractUser(rs, userTable, id);
+                idToUser.put(user.getId(), user);
+            }
+            if (friend != null) {
+                user.addFriend(friend);
+            }
+        }
+        return List.copyOf(idToUser.values());
+    }
 
-                if (friend != null) {
-                    idToUser.put(friend.getId(), friend);
-                }
+    /**
+     * Загружает из базы только пользователей с переданными id (вместе с их друзьями),
+     * сами id берутся из {@link FriendshipGraph}.
+     */
+    private List<User> selectUsersByIdsInternal(long[] userIds) {
+        if (userIds.length == 0) {
+            return List.of();
+        }
+        String sql = sqlProvider.provideFindUsersByIdsSql();
+        List<Long> ids = Arrays.stream(userIds).boxed().collect(Collectors.toList());
+        List<User> users = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + IN_CLAUSE_BATCH_SIZE, ids.size()));
+            users.addAll(namedJdbcTemplate.query(sql, Map.of("userIds", batch), this::collectUsersInternal));
+        }
+        return users;
+    }
 
-                Long id = rs.getLong(userTable.getId());
-                User user = idToUser.get(id);
-                if (user == null) { // first time we see the user
-                    user = extractUser(rs, userTable, id);
-                    idToUser.put(user.getId(), user);
-                }
-                if (friend != null) {
-                    user.addFriend(friend);
-                }
-            }
-            return List.copyOf(idToUser.values());
-        }, args);
+    private void setFriendsAfterCommit(User user) {
+        if (friendshipGraphEnabled) {
+            List<Long> friendIds = user.getFriends().stream()
+                    .map(User::getId)
+                    .collect(Collectors.toList());
+            TransactionHooks.runAfterCommit(() -> friendshipGraph.setFriends(user.getId(), friendIds));
+        }
     }
 }
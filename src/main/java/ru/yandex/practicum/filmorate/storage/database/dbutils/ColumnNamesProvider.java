@@ -45,6 +45,7 @@ public class ColumnNamesProvider {
                 .descr("film_descr")
                 .releaseDate("film_rel_d")
                 .duration("film_dur")
+                .likesCount("film_likes")
                 .build();
     }
 }
@@ -11,4 +11,5 @@ public class FilmTable {
     private String descr;
     private String releaseDate;
     private String duration;
+    private String likesCount;
 }
@@ -2,27 +2,21 @@ package ru.yandex.practicum.filmorate.storage.database.dbutils;
 
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
+
 @Component
 public class SqlProvider {
 
-    public String provideFindRatingByIdSql() {
-        return "SELECT * FROM Ratings WHERE id = ?";
-    }
-
     public String provideFindAllRatingsSql() {
-        return "SELECT * FROM Ratings";
+        return "SELECT * FROM Ratings ORDER BY id";
     }
 
     public String provideInsertRatingSql() {
         return "INSERT INTO Ratings (name) VALUES (?)";
     }
 
-    public String provideFindGenreByIdSql() {
-        return "SELECT * FROM Genres WHERE id = ?";
-    }
-
     public String provideFindAllGenresSql() {
-        return "SELECT * FROM Genres";
+        return "SELECT * FROM Genres ORDER BY id";
     }
 
     public String provideInsertGenreSql() {
@@ -30,7 +24,11 @@ public class SqlProvider {
     }
 
     public String provideCheckUserIdSql() {
-        return "SELECT id FROM Users WHERE id = ?";
+        return "SELECT id FROM Users WHERE id = ? AND deleted = FALSE";
+    }
+
+    public String provideFindExistingUserIdsSql() {
+        return "SELECT id FROM Users WHERE id IN (:userIds) AND deleted = FALSE";
     }
 
     public String provideFindUserByIdSql() {
@@ -45,8 +43,8 @@ public class SqlProvider {
                 "uu.birthday f_bd " +
                 "FROM Users u " +
                 "LEFT JOIN FriendshipStatus fs ON u.id = fs.user_id " +
-                "LEFT JOIN Users uu ON uu.id = fs.friend_id " +
-                "WHERE u.id = ?";
+                "LEFT JOIN Users uu ON uu.id = fs.friend_id AND uu.deleted = FALSE " +
+                "WHERE u.id = ? AND u.deleted = FALSE";
     }
 
     public String provideGetCommonFriendsOfUsersSql() {
@@ -70,8 +68,8 @@ public class SqlProvider {
                 "uu.birthday f_bd " +
                 "FROM Users u " +
                 "LEFT JOIN FriendshipStatus fs ON u.id = fs.user_id " +
-                "LEFT JOIN Users uu ON uu.id = fs.friend_id " +
-                "WHERE u.id IN (SELECT f_id FROM common_friend_ids)";
+                "LEFT JOIN Users uu ON uu.id = fs.friend_id AND uu.deleted = FALSE " +
+                "WHERE u.id IN (SELECT f_id FROM common_friend_ids) AND u.deleted = FALSE";
     }
 
     public String provideGetFriendsOfUserSql() {
@@ -87,8 +85,8 @@ public class SqlProvider {
                 "uu.birthday f_bd " +
                 "FROM Users u " +
                 "LEFT JOIN FriendshipStatus fs on u.id = fs.user_id " +
-                "LEFT JOIN Users uu on uu.id = fs.friend_id " +
-                "WHERE u.id IN (SELECT ffs.friend_id FROM Users uuu " +
+                "LEFT JOIN Users uu ON uu.id = fs.friend_id AND uu.deleted = FALSE " +
+                "WHERE u.deleted = FALSE AND u.id IN (SELECT ffs.friend_id FROM Users uuu " +
                 "INNER JOIN FriendshipStatus ffs ON uuu.id = ffs.user_id " +
                 "WHERE uuu.id = ?)";
     }
@@ -106,7 +104,62 @@ public class SqlProvider {
                 "uu.birthday f_bd " +
                 "FROM Users u " +
                 "LEFT JOIN FriendshipStatus fs ON u.id = fs.user_id " +
-                "LEFT JOIN Users uu ON uu.id = fs.friend_id";
+                "LEFT JOIN Users uu ON uu.id = fs.friend_id AND uu.deleted = FALSE " +
+                "WHERE u.deleted = FALSE " +
+                "ORDER BY u.id";
+    }
+
+    public String provideFindUsersPageSql() {
+        return "WITH page_ids AS ( " +
+                "SELECT id p_id FROM Users " +
+                "WHERE id > ? AND deleted = FALSE " +
+                "ORDER BY id " +
+                "LIMIT ?" +
+                ") " +
+                "SELECT u.id u_id, " +
+                "u.email u_email, " +
+                "u.login u_login, " +
+                "u.name u_name, " +
+                "u.birthday u_bd, " +
+                "uu.id f_id, " +
+                "uu.email f_email, " +
+                "uu.login f_login, " +
+                "uu.name f_name, " +
+                "uu.birthday f_bd " +
+                "FROM Users u " +
+                "LEFT JOIN FriendshipStatus fs ON u.id = fs.user_id " +
+                "LEFT JOIN Users uu ON uu.id = fs.friend_id AND uu.deleted = FALSE " +
+                "WHERE u.id IN (SELECT p_id FROM page_ids) " +
+                "ORDER BY u.id";
+    }
+
+    public String provideFindUsersByIdsSql() {
+        return "SELECT u.id u_id, " +
+                "u.email u_email, " +
+                "u.login u_login, " +
+                "u.name u_name, " +
+                "u.birthday u_bd, " +
+                "uu.id f_id, " +
+                "uu.email f_email, " +
+                "uu.login f_login, " +
+                "uu.name f_name, " +
+                "uu.birthday f_bd " +
+                "FROM Users u " +
+                "LEFT JOIN FriendshipStatus fs ON u.id = fs.user_id " +
+                "LEFT JOIN Users uu ON uu.id = fs.friend_id AND uu.deleted = FALSE " +
+                "WHERE u.id IN (:userIds) AND u.deleted = FALSE " +
+                "ORDER BY u.id";
+    }
+
+    public String provideFindAllFriendshipsSql() {
+        return "SELECT fs.user_id, fs.friend_id FROM FriendshipStatus fs " +
+                "INNER JOIN Users u ON u.id = fs.user_id AND u.deleted = FALSE " +
+                "INNER JOIN Users f ON f.id = fs.friend_id AND f.deleted = FALSE";
+    }
+
+    public String provideFindExistingFriendshipsSql() {
+        return "SELECT user_id, friend_id FROM FriendshipStatus " +
+                "WHERE user_id IN (:fromIds) AND friend_id IN (:toIds)";
     }
 
     public String provideDeleteUserFriendsSql() {
@@ -117,10 +170,40 @@ public class SqlProvider {
         return "DELETE FROM FriendshipStatus WHERE user_id = ? AND friend_id = ?";
     }
 
+    public String provideFindUserColumnsByIdSql() {
+        return "SELECT u.id u_id, " +
+                "u.email u_email, " +
+                "u.login u_login, " +
+                "u.name u_name, " +
+                "u.birthday u_bd " +
+                "FROM Users u " +
+                "WHERE u.id = ? AND u.deleted = FALSE";
+    }
+
+    public String provideFindUserColumnsByIdsSql() {
+        return "SELECT u.id u_id, " +
+                "u.email u_email, " +
+                "u.login u_login, " +
+                "u.name u_name, " +
+                "u.birthday u_bd " +
+                "FROM Users u " +
+                "WHERE u.id IN (:userIds) AND u.deleted = FALSE";
+    }
+
+    public String provideFindFriendIdsOfUserSql() {
+        return "SELECT friend_id FROM FriendshipStatus WHERE user_id = ?";
+    }
+
     public String provideUpdateUserSql() {
         return "UPDATE Users SET email = ?, login = ?, name = ?, birthday = ? WHERE id = ?";
     }
 
+    public String provideMergeUserFriendSql() {
+        return "MERGE INTO FriendshipStatus (user_id, friend_id) KEY (user_id, friend_id) " +
+                "SELECT u.id, f.id FROM Users u, Users f " +
+                "WHERE u.id = ? AND f.id = ? AND u.deleted = FALSE AND f.deleted = FALSE";
+    }
+
     public String provideSaveUserFriendsSql() {
         return "INSERT INTO FriendshipStatus (user_id, friend_id) VALUES (?, ?)";
     }
@@ -130,10 +213,35 @@ public class SqlProvider {
                "VALUES (?, ?, ?, ?)";
     }
 
+    public String provideInsertUserWithIdSql() {
+        return "INSERT INTO Users (id, email, login, name, birthday) " +
+               "VALUES (?, ?, ?, ?, ?)";
+    }
+
+    public String provideNextUserIdBlockSql() {
+        return "SELECT NEXT VALUE FOR users_id_blocks";
+    }
+
+    public String provideRestartUserIdBlocksSql(long nextBlock) {
+        return "ALTER SEQUENCE users_id_blocks RESTART WITH " + nextBlock;
+    }
+
+    public String provideMaxUserIdSql() {
+        return "SELECT COALESCE(MAX(id), 0) FROM Users";
+    }
+
     public String provideDeleteFilmGenresSql() {
         return "DELETE FROM FilmGenre WHERE film_id = ?";
     }
 
+    public String provideFindGenreIdsOfFilmSql() {
+        return "SELECT genre_id FROM FilmGenre WHERE film_id = ?";
+    }
+
+    public String provideDeleteSingleFilmGenreSql() {
+        return "DELETE FROM FilmGenre WHERE film_id = ? AND genre_id = ?";
+    }
+
     public String provideSaveFilmGenresSql() {
         return "INSERT INTO FilmGenre (film_id, genre_id) VALUES (?, ?)";
     }
@@ -144,62 +252,87 @@ public class SqlProvider {
     }
 
     public String provideCheckFilmIdSql() {
-        return "SELECT id FROM Films WHERE id = ?";
+        return "SELECT id FROM Films WHERE id = ? AND deleted = FALSE";
     }
 
     public String provideFindFilmByIdSql() {
-        return "SELECT f.id film_id, " +
+        return "SELECT " +
+                "f.id film_id, " +
                 "f.name film_name, " +
                 "f.description film_descr, " +
                 "f.release_date film_rel_d, " +
                 "f.duration film_dur, " +
+                "f.likes_count film_likes, " +
                 "r.id mpa_id, " +
-                "r.name mpa, " +
-                "g.id genre_id, " +
-                "g.name genre, " +
-                "u.id u_id " +
+                "r.name mpa " +
                 "FROM Films f " +
                 "LEFT JOIN Ratings r ON f.rating_id = r.id " +
-                "LEFT JOIN FilmGenre fg ON f.id = fg.film_id " +
-                "LEFT JOIN Genres g ON g.id = fg.genre_id " +
-                "LEFT JOIN FilmUserLikes ful ON ful.film_id = f.id " +
-                "LEFT JOIN Users u ON u.id = ful.user_id " +
-                "WHERE f.id = ?";
+                "WHERE f.id = ? AND f.deleted = FALSE";
     }
 
     public String provideMostPopularFilmsSql() {
-        return "WITH top_id_to_count AS ( " +
-                "SELECT ff.id t_id, " +
-                "COUNT(ful.film_id) cnt " +
-                "FROM Films ff " +
-                "LEFT JOIN FilmUserLikes ful ON ff.id = ful.film_id " +
-                "GROUP BY t_id " +
-                "ORDER BY cnt DESC " +
-                "LIMIT ?" +
-                ") " +
-                "SELECT f.id film_id, " +
+        return "SELECT " +
+                "f.id film_id, " +
                 "f.name film_name, " +
                 "f.description film_descr, " +
                 "f.release_date film_rel_d, " +
                 "f.duration film_dur, " +
+                "f.likes_count film_likes, " +
                 "r.id mpa_id, " +
-                "r.name mpa, " +
-                "g.id genre_id, " +
-                "g.name genre, " +
-                "u.id u_id " +
+                "r.name mpa " +
+                "FROM Films f " +
+                "LEFT JOIN Ratings r ON f.rating_id = r.id " +
+                "WHERE f.deleted = FALSE " +
+                "ORDER BY f.likes_count DESC, f.id " +
+                "LIMIT ?";
+    }
+
+    public String provideFindFilmsByIdsSql() {
+        return "SELECT " +
+                "f.id film_id, " +
+                "f.name film_name, " +
+                "f.description film_descr, " +
+                "f.release_date film_rel_d, " +
+                "f.duration film_dur, " +
+                "f.likes_count film_likes, " +
+                "r.id mpa_id, " +
+                "r.name mpa " +
                 "FROM Films f " +
                 "LEFT JOIN Ratings r ON f.rating_id = r.id " +
-                "LEFT JOIN FilmGenre fg ON f.id = fg.film_id " +
-                "LEFT JOIN Genres g ON g.id = fg.genre_id " +
+                "WHERE f.id IN (:filmIds) AND f.deleted = FALSE";
+    }
+
+    public String provideFindLikesCountsOfAllFilmsSql() {
+        return "SELECT f.id film_id, COUNT(u.id) likes " +
+                "FROM Films f " +
                 "LEFT JOIN FilmUserLikes ful ON ful.film_id = f.id " +
-                "LEFT JOIN Users u ON u.id = ful.user_id " +
-                "WHERE f.id IN (SELECT t_id FROM top_id_to_count)";
+                "LEFT JOIN Users u ON u.id = ful.user_id AND u.deleted = FALSE " +
+                "WHERE f.deleted = FALSE " +
+                "GROUP BY f.id";
+    }
+
+    public String provideFindUserIdsLikedFilmSql() {
+        return "SELECT ful.user_id FROM FilmUserLikes ful " +
+                "INNER JOIN Users u ON u.id = ful.user_id AND u.deleted = FALSE " +
+                "WHERE ful.film_id = ?";
+    }
+
+    public String provideAddUserLikeIfAbsentSql() {
+        return "INSERT INTO FilmUserLikes (film_id, user_id) " +
+                "SELECT f.id, u.id FROM Films f, Users u " +
+                "WHERE f.id = ? AND u.id = ? AND f.deleted = FALSE AND u.deleted = FALSE " +
+                "AND NOT EXISTS (SELECT 1 FROM FilmUserLikes WHERE film_id = ? AND user_id = ?)";
     }
 
     public String provideRemoveSingleUserLikeForFilmSql() {
         return "DELETE FROM FilmUserLikes WHERE film_id = ? AND user_id = ?";
     }
 
+    public String provideRemoveLikeOfActiveUserSql() {
+        return "DELETE FROM FilmUserLikes WHERE film_id = ? AND user_id = ? " +
+                "AND user_id IN (SELECT id FROM Users WHERE deleted = FALSE)";
+    }
+
     public String provideRemoveAllUserLikesForFilmSql() {
         return "DELETE FROM FilmUserLikes WHERE film_id = ?";
     }
@@ -213,22 +346,217 @@ public class SqlProvider {
                 "VALUES (?, ?, ?, ?, ?)";
     }
 
+    public String provideInsertFilmWithIdSql() {
+        return "INSERT INTO Films (id, name, description, release_date, duration, rating_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
+    }
+
+    public String provideInsertFilmsWithIdsSql(int rows) {
+        return "INSERT INTO Films (id, name, description, release_date, duration, rating_id, likes_count) " +
+                "VALUES " + String.join(", ", Collections.nCopies(rows, "(?, ?, ?, ?, ?, ?, ?)"));
+    }
+
+    public String provideNextFilmIdBlockSql() {
+        return "SELECT NEXT VALUE FOR films_id_blocks";
+    }
+
+    public String provideRestartFilmIdBlocksSql(long nextBlock) {
+        return "ALTER SEQUENCE films_id_blocks RESTART WITH " + nextBlock;
+    }
+
+    public String provideInsertFilmsSql(int rows) {
+        return "INSERT INTO Films (name, description, release_date, duration, rating_id, likes_count) " +
+                "VALUES " + String.join(", ", Collections.nCopies(rows, "(?, ?, ?, ?, ?, ?)"));
+    }
+
+    public String provideFindExistingUserLikesSql() {
+        return "SELECT film_id, user_id FROM FilmUserLikes " +
+                "WHERE film_id IN (:fromIds) AND user_id IN (:toIds)";
+    }
+
+    public String provideFindExistingFilmIdsSql() {
+        return "SELECT id FROM Films WHERE id IN (:filmIds) AND deleted = FALSE";
+    }
+
     public String provideFilmFindAllSql() {
-        return "SELECT f.id film_id, " +
+        return "SELECT " +
+                "f.id film_id, " +
                 "f.name film_name, " +
                 "f.description film_descr, " +
                 "f.release_date film_rel_d, " +
                 "f.duration film_dur, " +
+                "f.likes_count film_likes, " +
                 "r.id mpa_id, " +
-                "r.name mpa, " +
-                "g.id genre_id, " +
-                "g.name genre, " +
-                "u.id u_id " +
+                "r.name mpa " +
                 "FROM Films f " +
                 "LEFT JOIN Ratings r ON f.rating_id = r.id " +
-                "LEFT JOIN FilmGenre fg ON f.id = fg.film_id " +
-                "LEFT JOIN Genres g ON g.id = fg.genre_id " +
-                "LEFT JOIN FilmUserLikes ful ON ful.film_id = f.id " +
-                "LEFT JOIN Users u ON u.id = ful.user_id ";
+                "WHERE f.deleted = FALSE " +
+                "ORDER BY f.id";
+    }
+
+    public String provideFilmFindPageSql() {
+        return "SELECT " +
+                "f.id film_id, " +
+                "f.name film_name, " +
+                "f.description film_descr, " +
+                "f.release_date film_rel_d, " +
+                "f.duration film_dur, " +
+                "f.likes_count film_likes, " +
+                "r.id mpa_id, " +
+                "r.name mpa " +
+                "FROM Films f " +
+                "LEFT JOIN Ratings r ON f.rating_id = r.id " +
+                "WHERE f.id > ? AND f.deleted = FALSE " +
+                "ORDER BY f.id " +
+                "LIMIT ?";
+    }
+
+    public String provideFindGenresOfFilmsSql() {
+        return "SELECT fg.film_id film_id, " +
+                "g.id genre_id, " +
+                "g.name genre " +
+                "FROM FilmGenre fg " +
+                "INNER JOIN Genres g ON g.id = fg.genre_id " +
+                "WHERE fg.film_id IN (:filmIds) " +
+                "ORDER BY fg.film_id, g.id";
+    }
+
+    public String provideFindAllFilmGenresSql() {
+        return "SELECT fg.film_id film_id, " +
+                "g.id genre_id, " +
+                "g.name genre " +
+                "FROM FilmGenre fg " +
+                "INNER JOIN Genres g ON g.id = fg.genre_id " +
+                "ORDER BY fg.film_id, g.id";
+    }
+
+    public String provideFindAllFilmUserLikesSql() {
+        return "SELECT ful.film_id film_id, " +
+                "ful.user_id u_id " +
+                "FROM FilmUserLikes ful " +
+                "INNER JOIN Users u ON u.id = ful.user_id AND u.deleted = FALSE " +
+                "ORDER BY ful.film_id, ful.user_id";
+    }
+
+    public String provideFindUserLikesOfFilmsSql() {
+        return "SELECT ful.film_id film_id, " +
+                "ful.user_id u_id " +
+                "FROM FilmUserLikes ful " +
+                "INNER JOIN Users u ON u.id = ful.user_id AND u.deleted = FALSE " +
+                "WHERE ful.film_id IN (:filmIds)";
+    }
+
+    public String provideAddToFilmLikesCountSql() {
+        return "UPDATE Films SET likes_count = likes_count + ? WHERE id = ?";
+    }
+
+    public String provideSetFilmLikesCountSql() {
+        return "UPDATE Films SET likes_count = ? WHERE id = ?";
+    }
+
+    public String provideAddToFilmLikesCounterStripeSql() {
+        return "MERGE INTO FilmLikesCounter c " +
+                "USING (VALUES (CAST(? AS BIGINT), CAST(? AS INT), CAST(? AS BIGINT))) " +
+                "s(film_id, stripe, delta) " +
+                "ON c.film_id = s.film_id AND c.stripe = s.stripe " +
+                "WHEN MATCHED THEN UPDATE SET c.delta = c.delta + s.delta " +
+                "WHEN NOT MATCHED THEN INSERT (film_id, stripe, delta) " +
+                "VALUES (s.film_id, s.stripe, s.delta)";
+    }
+
+    public String provideResetFilmLikesCounterStripesSql() {
+        return "UPDATE FilmLikesCounter SET delta = 0 WHERE film_id = ?";
+    }
+
+    public String provideFindPendingFilmLikesCounterStripesSql() {
+        return "SELECT film_id, stripe, delta FROM FilmLikesCounter WHERE delta <> 0";
+    }
+
+    public String provideSubtractFromFilmLikesCounterStripeSql() {
+        return "UPDATE FilmLikesCounter SET delta = delta - ? WHERE film_id = ? AND stripe = ?";
+    }
+
+    public String provideMaxFilmIdSql() {
+        return "SELECT COALESCE(MAX(id), 0) FROM Films";
+    }
+
+    public String provideMarkFilmDeletedSql() {
+        return "UPDATE Films SET deleted = TRUE WHERE id = ? AND deleted = FALSE";
+    }
+
+    public String provideMarkUserDeletedSql() {
+        return "UPDATE Users SET deleted = TRUE WHERE id = ? AND deleted = FALSE";
+    }
+
+    public String provideFindDeletedFilmIdsSql() {
+        return "SELECT id FROM Films WHERE deleted = TRUE ORDER BY id LIMIT ?";
+    }
+
+    public String provideFindDeletedUserIdsSql() {
+        return "SELECT id FROM Users WHERE deleted = TRUE ORDER BY id LIMIT ?";
+    }
+
+    public String providePurgeFilmUserLikesSql() {
+        return "DELETE FROM FilmUserLikes WHERE film_id = ? LIMIT ?";
+    }
+
+    public String providePurgeFilmGenresSql() {
+        return "DELETE FROM FilmGenre WHERE film_id = ? LIMIT ?";
+    }
+
+    public String provideFindFilmIdsLikedByUserSql() {
+        return "SELECT film_id FROM FilmUserLikes WHERE user_id = ?";
+    }
+
+    public String provideSubtractLikesOfUserSql() {
+        return "UPDATE Films SET likes_count = likes_count - 1 " +
+                "WHERE id IN (SELECT film_id FROM FilmUserLikes WHERE user_id = ?)";
+    }
+
+    public String providePurgeUserLikesSql() {
+        return "DELETE FROM FilmUserLikes WHERE user_id = ? LIMIT ?";
+    }
+
+    public String providePurgeUserFriendshipsSql() {
+        return "DELETE FROM FriendshipStatus WHERE user_id = ? OR friend_id = ? LIMIT ?";
+    }
+
+    public String provideDeleteFilmLikesCounterStripesSql() {
+        return "DELETE FROM FilmLikesCounter WHERE film_id = ?";
+    }
+
+    public String providePurgeDeletedFilmSql() {
+        return "DELETE FROM Films WHERE id = ? AND deleted = TRUE";
+    }
+
+    public String providePurgeDeletedUserSql() {
+        return "DELETE FROM Users WHERE id = ? AND deleted = TRUE";
+    }
+
+    public String provideFindIdempotencyRecordSql() {
+        return "SELECT request_hash, response_body FROM IdempotencyKeys WHERE id_key = ? AND created_at > ?";
+    }
+
+    public String provideInsertIdempotencyRecordSql() {
+        return "INSERT INTO IdempotencyKeys (id_key, request_hash, response_body, created_at) VALUES (?, ?, ?, ?)";
+    }
+
+    public String provideDeleteExpiredIdempotencyRecordSql() {
+        return "DELETE FROM IdempotencyKeys WHERE id_key = ? AND created_at <= ?";
+    }
+
+    public String provideDeleteExpiredIdempotencyRecordsSql() {
+        return "DELETE FROM IdempotencyKeys WHERE created_at <= ? LIMIT ?";
+    }
+
+    public String provideFindFilmLikesCountDriftsSql() {
+        return "SELECT id, drift FROM (" +
+                "SELECT f.id id, " +
+                "(SELECT COUNT(*) FROM FilmUserLikes ful INNER JOIN Users u ON u.id = ful.user_id " +
+                "WHERE ful.film_id = f.id AND u.deleted = FALSE) - f.likes_count - " +
+                "(SELECT COALESCE(SUM(c.delta), 0) FROM FilmLikesCounter c WHERE c.film_id = f.id) drift " +
+                "FROM Films f " +
+                "WHERE f.id > ? AND f.id <= ?) d " +
+                "WHERE drift <> 0";
     }
 }
@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.storage.inmemory;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
@@ -9,29 +10,51 @@ import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmPopularityIndex;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.RatingStorage;
-import ru.yandex.practicum.filmorate.util.IdGenerator;
+import ru.yandex.practicum.filmorate.util.ConcurrentLongBitmapSet;
+import ru.yandex.practicum.filmorate.util.InMemoryIdGenerator;
+import ru.yandex.practicum.filmorate.util.LongBitmapSet;
 
-import java.util.Comparator;
+import javax.annotation.PostConstruct;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
-public class InMemoryFilmStorage implements FilmStorage {
+public class InMemoryFilmStorage implements FilmStorage, ApplicationListener<InMemoryUserDeletedEvent> {
 
     private final Map<Long, Film> filmMap;
     private final Map<Long, User> userMap;
-    private final IdGenerator idGenerator;
+    private final InMemoryIdGenerator idGenerator;
     @Qualifier("inMemoryRatingStorage")
     private final RatingStorage ratingStorage;
     @Qualifier("inMemoryGenreStorage")
     private final GenreStorage genreStorage;
+    // sorted index of film ids, used for keyset pagination
+    private final NavigableSet<Long> filmIds = new ConcurrentSkipListSet<>();
+    private final FilmPopularityIndex popularityIndex;
+    private final VersionedSnapshot<Film> snapshot =
+            new VersionedSnapshot<>(this::storedFilms, InMemoryFilmStorage::freeze);
+
+    @PostConstruct
+    public void rebuildIndexes() {
+        filmMap.values().forEach(this::useConcurrentLikes);
+        filmIds.addAll(filmMap.keySet());
+        popularityIndex.rebuild(filmMap.values().stream()
+                .collect(Collectors.toMap(Film::getId, f -> (long) f.getLikesCount())));
+        filmMap.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idGenerator::skipPast);
+        snapshot.invalidateAll();
+    }
 
     @Override
     public Film save(Film film) {
@@ -41,7 +64,11 @@ public class InMemoryFilmStorage implements FilmStorage {
         }
         film.setId(idGenerator.nextId());
         setGenresAndRatingToFilm(film);
+        useConcurrentLikes(film);
         filmMap.put(film.getId(), film);
+        filmIds.add(film.getId());
+        popularityIndex.set(film.getId(), film.getLikesCount());
+        snapshot.invalidate(film.getId());
         return film;
     }
 
@@ -52,34 +79,76 @@ public class InMemoryFilmStorage implements FilmStorage {
             throw new ResourceNotFoundException(msg);
         }
         setGenresAndRatingToFilm(film);
+        useConcurrentLikes(film);
         filmMap.put(film.getId(), film);
+        popularityIndex.set(film.getId(), film.getLikesCount());
+        snapshot.invalidate(film.getId());
         return film;
     }
 
     @Override
     public List<Film> findAll() {
-        return List.copyOf(filmMap.values());
+        return snapshot.get();
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return filmIds.tailSet(afterId, false).stream()
+                .map(filmMap::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .collect(Collectors.toList());
     }
 
     @Override
     public void addUserLikeToFilm(Long userId, Long filmId) {
         Film film = findFilmOrThrow(filmId);
         User user = findUserOrThrow(userId);
-        film.addUserLike(user.getId());
+        if (film.addUserLike(user.getId())) {
+            popularityIndex.add(filmId, 1);
+            snapshot.invalidate(filmId);
+        }
     }
 
     @Override
     public void removeUserLike(Long userId, Long filmId) {
         Film film = findFilmOrThrow(filmId);
         User user = findUserOrThrow(userId);
-        film.removeUserLike(user.getId());
+        if (film.removeUserLike(user.getId())) {
+            popularityIndex.add(filmId, -1);
+            snapshot.invalidate(filmId);
+        }
+    }
+
+    @Override
+    public void deleteFilm(Long filmId) {
+        findFilmOrThrow(filmId);
+        filmMap.remove(filmId);
+        filmIds.remove(filmId);
+        popularityIndex.remove(filmId);
+        snapshot.invalidate(filmId);
+    }
+
+    /**
+     * Убирает лайки удаленного пользователя из фильмов и топа. Индекса лайков по пользователям
+     * нет, поэтому это обход всех фильмов, рассчитанный на редкое удаление.
+     */
+    @Override
+    public void onApplicationEvent(InMemoryUserDeletedEvent event) {
+        Long userId = event.getUserId();
+        filmMap.values().forEach(film -> {
+            if (film.removeUserLike(userId)) {
+                popularityIndex.add(film.getId(), -1);
+                snapshot.invalidate(film.getId());
+            }
+        });
     }
 
     @Override
     public List<Film> getMostPopularFilms(long count) {
-        return filmMap.values().stream()
-                .sorted(Comparator.comparing(Film::getLikesCount, Comparator.reverseOrder()))
-                .limit(count)
+        return popularityIndex.findTopFilmIds(count).stream()
+                .map(filmMap::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
@@ -120,6 +189,25 @@ public class InMemoryFilmStorage implements FilmStorage {
                 .orElseThrow(() -> new ResourceNotFoundException(msgSupplier.get()));
     }
 
+    /**
+     * Лайки сохраненного фильма меняются из многих потоков, поэтому хранятся в сжатом
+     * множестве с разделением блокировок, а их количество - в LongAdder этого множества.
+     */
+    private void useConcurrentLikes(Film film) {
+        film.setUserLikes(new ConcurrentLongBitmapSet(film.getUserLikes()));
+    }
+
+    private Map<Long, Film> storedFilms() {
+        return filmMap;
+    }
+
+    private static Film freeze(Film film) {
+        return film.toBuilder()
+                .genres(List.copyOf(film.getGenres()))
+                .userLikes(Collections.unmodifiableSet(LongBitmapSet.copyOf(film.getUserLikes())))
+                .build();
+    }
+
     private void setGenresAndRatingToFilm(Film film) {
         List<Genre> genres = getFilmGenres(film);
         film.setGenres(genres);
@@ -5,7 +5,7 @@ import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
-import ru.yandex.practicum.filmorate.util.IdGenerator;
+import ru.yandex.practicum.filmorate.util.InMemoryIdGenerator;
 
 import java.util.List;
 import java.util.Map;
@@ -16,7 +16,7 @@ import java.util.Optional;
 public class InMemoryGenreStorage implements GenreStorage {
 
     private final Map<Long, Genre> genreMap;
-    private final IdGenerator idGenerator;
+    private final InMemoryIdGenerator idGenerator;
 
     @Override
     public List<Genre> findAll() {
@@ -39,6 +39,13 @@ public class InMemoryGenreStorage implements GenreStorage {
         return genre;
     }
 
+    /**
+     * Вызывается после восстановления жанров из снимка: новые id продолжают восстановленные.
+     */
+    public void afterRestore() {
+        genreMap.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idGenerator::skipPast);
+    }
+
     private boolean genreAlreadyExists(Genre genre) {
         return genre.getId() != null && genreMap.containsKey(genre.getId());
     }
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IdempotencyRecord;
+import ru.yandex.practicum.filmorate.storage.IdempotencyStorage;
+import ru.yandex.practicum.filmorate.storage.cache.BoundedCache;
+import ru.yandex.practicum.filmorate.storage.cache.BoundedCacheMetrics;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Ключи идемпотентности в памяти узла: не больше max-size записей, давно не использованные
+ * вытесняются первыми. Используется, если не включено filmorate.idempotency.db.enabled.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.idempotency.db.enabled", havingValue = "false", matchIfMissing = true)
+public class InMemoryIdempotencyStorage implements IdempotencyStorage, MeterBinder {
+
+    private final BoundedCache<String, IdempotencyRecord> records;
+
+    public InMemoryIdempotencyStorage(@Value("${filmorate.idempotency.max-size:10000}") int maxSize,
+                                      @Value("${filmorate.idempotency.ttl-seconds:86400}") long ttlSeconds) {
+        this.records = new BoundedCache<>("idempotency", maxSize, Duration.ofSeconds(ttlSeconds));
+    }
+
+    @Override
+    public Optional<IdempotencyRecord> find(String key) {
+        return Optional.ofNullable(records.get(key));
+    }
+
+    @Override
+    public synchronized void save(String key, IdempotencyRecord record) {
+        if (records.get(key) == null) {
+            records.put(key, record);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new BoundedCacheMetrics(records).bindTo(registry);
+    }
+}
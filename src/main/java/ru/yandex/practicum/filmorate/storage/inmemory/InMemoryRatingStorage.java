@@ -5,7 +5,7 @@ import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.storage.RatingStorage;
-import ru.yandex.practicum.filmorate.util.IdGenerator;
+import ru.yandex.practicum.filmorate.util.InMemoryIdGenerator;
 
 import java.util.List;
 import java.util.Map;
@@ -15,7 +15,7 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class InMemoryRatingStorage implements RatingStorage {
 
-    private final IdGenerator idGenerator;
+    private final InMemoryIdGenerator idGenerator;
     private final Map<Long, Rating> ratingMap;
 
 
@@ -40,6 +40,13 @@ public class InMemoryRatingStorage implements RatingStorage {
         return rating;
     }
 
+    /**
+     * Вызывается после восстановления рейтингов из снимка: новые id продолжают восстановленные.
+     */
+    public void afterRestore() {
+        ratingMap.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idGenerator::skipPast);
+    }
+
     private boolean ratingAlreadyExists(Rating rating) {
         return rating.getId() != null && ratingMap.containsKey(rating.getId());
     }
@@ -0,0 +1,334 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.GenreName;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.RatingName;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.LongBitmapSet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Снимок словарей, пользователей и фильмов хранилищ в памяти в одном двоичном файле.
+ * <p>
+ * Заголовок: magic, версия формата, длина данных, CRC32 данных и время записи. Дальше
+ * идут жанры, рейтинги, пользователи и фильмы, каждый раздел начинается с количества записей.
+ * Жанры фильма пишутся как id. Друзья и лайки - множества, поэтому они пишутся сжато: количество
+ * и разности соседних id по возрастанию, числами переменной длины; подряд идущие id занимают
+ * по байту. Строки - int длина и байты UTF-8, длина -1 - null. Снимки версии 1 с id по 8 байт
+ * по-прежнему читаются.
+ * <p>
+ * Файл пишется рядом, во временный файл, и заменяет предыдущий снимок атомарным переносом,
+ * так что упавшая запись оставляет предыдущий снимок целым. Читается файл через отображение
+ * в память окнами ({@link MappedFileReader}), поэтому размер снимка не ограничен 2 ГБ.
+ * Поврежденный снимок не загружается. Снимок снимается без остановки записи,
+ * поэтому изменения, сделанные во время записи, могут попасть в него частично.
+ */
+@Component
+@RequiredArgsConstructor
+public class InMemorySnapshotFile {
+
+    static final int MAGIC = 0x464C4D53;
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    private static final int FIXED_IDS_VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAPPED_WINDOW_SIZE = 1 << 30;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final Map<Long, Film> filmMap;
+    private final Map<Long, User> userMap;
+    private final Map<Long, Genre> genreMap;
+    private final Map<Long, Rating> ratingMap;
+    private int mappedWindowSize = MAPPED_WINDOW_SIZE;
+
+    /**
+     * Для тестов: маленькое окно проверяет чтение на границах окон без файла в несколько гигабайт.
+     */
+    void setMappedWindowSize(int mappedWindowSize) {
+        this.mappedWindowSize = mappedWindowSize;
+    }
+
+    public synchronized void write(Path path) throws IOException {
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32 crc = new CRC32();
+            channel.position(HEADER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), BUFFER_SIZE));
+            writePayload(out);
+            // not closed: that would close the channel before the header is written
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(channel.size() - HEADER_SIZE)
+                    .putLong(crc.getValue())
+                    .putLong(System.currentTimeMillis())
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Загружает снимок в пустые хранилища. Возвращает false, если файла нет.
+     *
+     * @throws IllegalStateException если снимок поврежден или записан в другом формате
+     */
+    public synchronized boolean read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw corrupted(path, "unexpected size " + size);
+            }
+            MappedFileReader in = new MappedFileReader(channel, 0, mappedWindowSize);
+            if (in.getInt() != MAGIC) {
+                throw corrupted(path, "not a snapshot file");
+            }
+            int version = in.getInt();
+            if (version != FORMAT_VERSION && version != FIXED_IDS_VERSION) {
+                throw corrupted(path, "unsupported format version " + version);
+            }
+            long length = in.getLong();
+            long expectedCrc = in.getLong();
+            in.getLong();
+            if (length != size - HEADER_SIZE) {
+                throw corrupted(path, "truncated");
+            }
+            if (in.checksumToEnd() != expectedCrc) {
+                throw corrupted(path, "checksum mismatch");
+            }
+            readPayload(in, version);
+            return true;
+        }
+    }
+
+    private void writePayload(DataOutputStream out) throws IOException {
+        List<Genre> genres = List.copyOf(genreMap.values());
+        out.writeInt(genres.size());
+        for (Genre genre : genres) {
+            out.writeLong(genre.getId());
+            writeString(out, genre.getName() == null ? null : genre.getName().name());
+        }
+        List<Rating> ratings = List.copyOf(ratingMap.values());
+        out.writeInt(ratings.size());
+        for (Rating rating : ratings) {
+            out.writeLong(rating.getId());
+            writeString(out, rating.getName() == null ? null : rating.getName().name());
+        }
+        List<User> users = List.copyOf(userMap.values());
+        out.writeInt(users.size());
+        for (User user : users) {
+            out.writeLong(user.getId());
+            writeString(out, user.getEmail());
+            writeString(out, user.getLogin());
+            writeString(out, user.getName());
+            writeDate(out, user.getBirthday());
+            writeIdSet(out, user.getFriends().stream()
+                    .map(User::getId)
+                    .filter(Objects::nonNull)
+                    .mapToLong(Long::longValue)
+                    .toArray());
+        }
+        List<Film> films = List.copyOf(filmMap.values());
+        out.writeInt(films.size());
+        for (Film film : films) {
+            out.writeLong(film.getId());
+            writeString(out, film.getName());
+            writeString(out, film.getDescription());
+            writeDate(out, film.getReleaseDate());
+            out.writeLong(film.getDuration());
+            out.writeLong(film.getMpa() == null ? 0 : film.getMpa().getId());
+            writeIds(out, film.getGenres().stream().mapToLong(Genre::getId).toArray());
+            writeIdSet(out, film.getUserLikes().stream().mapToLong(Long::longValue).toArray());
+        }
+    }
+
+    private void readPayload(MappedFileReader in, int version) throws IOException {
+        // decoded in full first, so a snapshot that fails half way leaves the storages empty
+        Map<Long, Genre> genres = new HashMap<>();
+        for (int i = in.getInt(); i > 0; i--) {
+            Genre genre = Genre.builder().id(in.getLong()).build();
+            String name = readString(in);
+            genre.setName(name == null ? null : GenreName.valueOf(name));
+            genres.put(genre.getId(), genre);
+        }
+        Map<Long, Rating> ratings = new HashMap<>();
+        for (int i = in.getInt(); i > 0; i--) {
+            Rating rating = Rating.builder().id(in.getLong()).build();
+            String name = readString(in);
+            rating.setName(name == null ? null : RatingName.valueOf(name));
+            ratings.put(rating.getId(), rating);
+        }
+        Map<Long, User> users = new HashMap<>();
+        Map<Long, long[]> friendIds = new HashMap<>();
+        for (int i = in.getInt(); i > 0; i--) {
+            User user = User.builder()
+                    .id(in.getLong())
+                    .email(readString(in))
+                    .login(readString(in))
+                    .name(readString(in))
+                    .birthday(readDate(in))
+                    .build();
+            users.put(user.getId(), user);
+            friendIds.put(user.getId(), readIdSet(in, version));
+        }
+        friendIds.forEach((userId, ids) -> {
+            for (long friendId : ids) {
+                User friend = users.get(friendId);
+                if (friend != null) {
+                    users.get(userId).addFriend(friend);
+                }
+            }
+        });
+        Map<Long, Film> films = new HashMap<>();
+        for (int i = in.getInt(); i > 0; i--) {
+            Film film = Film.builder()
+                    .id(in.getLong())
+                    .name(readString(in))
+                    .description(readString(in))
+                    .releaseDate(readDate(in))
+                    .duration(in.getLong())
+                    .mpa(ratings.get(in.getLong()))
+                    .genres(byIds(readIds(in), genres))
+                    .build();
+            LongBitmapSet likes = new LongBitmapSet();
+            for (long userId : readIdSet(in, version)) {
+                likes.add(userId);
+            }
+            film.setUserLikes(likes);
+            films.put(film.getId(), film);
+        }
+        genreMap.putAll(genres);
+        ratingMap.putAll(ratings);
+        userMap.putAll(users);
+        filmMap.putAll(films);
+    }
+
+    private static <T> List<T> byIds(long[] ids, Map<Long, T> entities) {
+        List<T> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            T entity = entities.get(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    private static void writeIds(DataOutputStream out, long[] ids) throws IOException {
+        out.writeInt(ids.length);
+        for (long id : ids) {
+            out.writeLong(id);
+        }
+    }
+
+    private static long[] readIds(MappedFileReader in) throws IOException {
+        long[] ids = new long[in.getInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = in.getLong();
+        }
+        return ids;
+    }
+
+    private static void writeIdSet(DataOutputStream out, long[] ids) throws IOException {
+        Arrays.sort(ids);
+        writeVarLong(out, ids.length);
+        long previous = 0;
+        for (long id : ids) {
+            writeVarLong(out, id - previous);
+            previous = id;
+        }
+    }
+
+    private static long[] readIdSet(MappedFileReader in, int version) throws IOException {
+        if (version == FIXED_IDS_VERSION) {
+            return readIds(in);
+        }
+        long[] ids = new long[Math.toIntExact(in.getVarLong())];
+        long previous = 0;
+        for (int i = 0; i < ids.length; i++) {
+            previous += in.getVarLong();
+            ids[i] = previous;
+        }
+        return ids;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static void writeDate(DataOutputStream out, LocalDate date) throws IOException {
+        out.writeLong(date == null ? NO_DATE : date.toEpochDay());
+    }
+
+    private static LocalDate readDate(MappedFileReader in) throws IOException {
+        long epochDay = in.getLong();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedFileReader in) throws IOException {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static IllegalStateException corrupted(Path path, String reason) {
+        return new IllegalStateException(String.format("Snapshot %s can not be loaded: %s.", path, reason));
+    }
+}
@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Восстанавливает хранилища в памяти из снимка при старте, дальше периодически
+ * и при остановке приложения записывает новый снимок.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.inmemory.snapshot.enabled")
+public class InMemorySnapshotJob {
+
+    private final InMemorySnapshotFile snapshotFile;
+    private final InMemoryGenreStorage genreStorage;
+    private final InMemoryRatingStorage ratingStorage;
+    private final InMemoryUserStorage userStorage;
+    private final InMemoryFilmStorage filmStorage;
+    @Value("${filmorate.inmemory.snapshot.path:data/filmorate.snapshot}")
+    private final String path;
+
+    @PostConstruct
+    public void restore() {
+        long start = System.nanoTime();
+        try {
+            if (!snapshotFile.read(Path.of(path))) {
+                log.info("No in-memory snapshot at {}, starting empty.", path);
+                return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read in-memory snapshot " + path, e);
+        }
+        genreStorage.afterRestore();
+        ratingStorage.afterRestore();
+        userStorage.rebuildIndexes();
+        filmStorage.rebuildIndexes();
+        log.info("Restored in-memory snapshot {} in {} ms.", path,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Scheduled(
+            initialDelayString = "${filmorate.inmemory.snapshot.interval-ms:60000}",
+            fixedDelayString = "${filmorate.inmemory.snapshot.interval-ms:60000}"
+    )
+    public void snapshot() {
+        try {
+            snapshotFile.write(Path.of(path));
+        } catch (IOException e) {
+            // the previous snapshot stays in place, the next run tries again
+            log.warn("Failed to write in-memory snapshot {}: {}", path, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        snapshot();
+    }
+}
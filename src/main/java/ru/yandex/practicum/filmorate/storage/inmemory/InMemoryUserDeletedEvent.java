@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Пользователь удален из {@link InMemoryUserStorage}. Хранилища фильмов в памяти
+ * убирают его лайки из фильмов и топа.
+ */
+class InMemoryUserDeletedEvent extends ApplicationEvent {
+
+    private final Long userId;
+
+    InMemoryUserDeletedEvent(Object source, Long userId) {
+        super(source);
+        this.userId = userId;
+    }
+
+    Long getUserId() {
+        return userId;
+    }
+}
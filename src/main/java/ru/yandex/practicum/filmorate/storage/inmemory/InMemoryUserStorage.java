@@ -1,22 +1,44 @@
 package ru.yandex.practicum.filmorate.storage.inmemory;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FriendshipGraph;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
-import ru.yandex.practicum.filmorate.util.IdGenerator;
+import ru.yandex.practicum.filmorate.util.InMemoryIdGenerator;
 
+import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
 public class InMemoryUserStorage implements UserStorage {
 
     private final Map<Long, User> userMap;
-    private final IdGenerator idGenerator;
+    private final InMemoryIdGenerator idGenerator;
+    // sorted index of user ids, used for keyset pagination
+    private final NavigableSet<Long> userIds = new ConcurrentSkipListSet<>();
+    private final FriendshipGraph friendshipGraph;
+    private final ApplicationEventPublisher eventPublisher;
+    private final VersionedSnapshot<User> snapshot =
+            new VersionedSnapshot<>(this::storedUsers, InMemoryUserStorage::freeze);
+
+    @PostConstruct
+    public void rebuildIndexes() {
+        userMap.values().forEach(this::useConcurrentFriends);
+        userIds.addAll(userMap.keySet());
+        friendshipGraph.rebuild(userMap.values().stream()
+                .collect(Collectors.toMap(User::getId, this::friendIdsOf)));
+        userMap.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idGenerator::skipPast);
+        snapshot.invalidateAll();
+    }
 
     @Override
     public User save(User user) {
@@ -25,7 +47,11 @@ public class InMemoryUserStorage implements UserStorage {
             throw new ResourceAlreadyExistsException(msg);
         }
         user.setId(idGenerator.nextId());
+        useConcurrentFriends(user);
         userMap.put(user.getId(), user);
+        userIds.add(user.getId());
+        friendshipGraph.setFriends(user.getId(), friendIdsOf(user));
+        snapshot.invalidate(user.getId());
         return user;
     }
 
@@ -35,13 +61,25 @@ public class InMemoryUserStorage implements UserStorage {
             String msg = String.format("User with ID: %d is not found.", user.getId());
             throw new ResourceNotFoundException(msg);
         }
+        useConcurrentFriends(user);
         userMap.put(user.getId(), user);
+        friendshipGraph.setFriends(user.getId(), friendIdsOf(user));
+        snapshot.invalidate(user.getId());
         return user;
     }
 
     @Override
     public List<User> findAll() {
-        return List.copyOf(userMap.values());
+        return snapshot.get();
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return userIds.tailSet(afterId, false).stream()
+                .map(userMap::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -49,6 +87,8 @@ public class InMemoryUserStorage implements UserStorage {
         User user = findUserOrThrow(userId);
         User userFriend = findFriendOrThrow(newFriendId);
         user.addFriend(userFriend);
+        friendshipGraph.addFriend(user.getId(), userFriend.getId());
+        snapshot.invalidate(user.getId());
     }
 
 
@@ -57,21 +97,38 @@ public class InMemoryUserStorage implements UserStorage {
         User user = findUserOrThrow(userId);
         User friend = findFriendOrThrow(friendId);
         user.removeFriend(friend);
+        friendshipGraph.removeFriend(user.getId(), friend.getId());
+        snapshot.invalidate(user.getId());
+    }
+
+    @Override
+    public void deleteUser(Long userId) {
+        findUserOrThrow(userId);
+        userMap.remove(userId);
+        userIds.remove(userId);
+        snapshot.invalidate(userId);
+        for (long followerId : friendshipGraph.removeUser(userId)) {
+            User follower = userMap.get(followerId);
+            if (follower != null) {
+                // friends are compared by id here: User.equals ignores ids
+                follower.getFriends().removeIf(friend -> userId.equals(friend.getId()));
+                snapshot.invalidate(followerId);
+            }
+        }
+        eventPublisher.publishEvent(new InMemoryUserDeletedEvent(this, userId));
     }
 
     @Override
     public List<User> getFriends(Long userId) {
         User user = findUserOrThrow(userId);
-        return List.copyOf(user.getFriends());
+        return usersByIds(friendshipGraph.getFriendIds(user.getId()));
     }
 
     @Override
     public List<User> getCommonFriendsForUser(Long userId, Long friendId) {
         User user = findUserOrThrow(userId);
         User friend = findFriendOrThrow(friendId);
-        Set<User> commonFriends = new HashSet<>(user.getFriends());
-        commonFriends.retainAll(friend.getFriends());
-        return List.copyOf(commonFriends);
+        return usersByIds(friendshipGraph.getCommonFriendIds(user.getId(), friend.getId()));
     }
 
     @Override
@@ -87,6 +144,46 @@ public class InMemoryUserStorage implements UserStorage {
         return Optional.empty();
     }
 
+    private List<User> usersByIds(long[] ids) {
+        return Arrays.stream(ids)
+                .mapToObj(userMap::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<Long> friendIdsOf(User user) {
+        return user.getFriends().stream()
+                .map(User::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Друзья сохраненного пользователя меняются из многих потоков, поэтому хранятся
+     * в конкурентном множестве. Списки друзей при этом читаются из {@link FriendshipGraph}.
+     */
+    private void useConcurrentFriends(User user) {
+        Set<User> friends = ConcurrentHashMap.newKeySet();
+        friends.addAll(user.getFriends());
+        user.setFriends(friends);
+    }
+
+    private Map<Long, User> storedUsers() {
+        return userMap;
+    }
+
+    /**
+     * Друзья замораживаются копиями без их собственных друзей: иначе снимок держал бы живые
+     * изменяемые объекты других пользователей и через них весь граф дружбы.
+     */
+    private static User freeze(User user) {
+        return user.toBuilder()
+                .friends(user.getFriends().stream()
+                        .map(friend -> friend.toBuilder().friends(Set.of()).build())
+                        .collect(Collectors.toUnmodifiableSet()))
+                .build();
+    }
+
     private User findUserOrThrow(Long userId) {
         return findUserOrThrow(userId,
                 () -> provideNotFoundErrorMessage("User", userId));
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Последовательное чтение файла через отображение в память окнами. Одно отображение не может
+ * быть больше Integer.MAX_VALUE байт, поэтому файл любого размера читается окнами не больше
+ * windowSize байт: когда в текущем окне не хватает байт на следующее значение, окно
+ * отображается заново с текущей позиции. Класс не потокобезопасен.
+ */
+final class MappedFileReader {
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedFileReader(FileChannel channel, long position, int windowSize) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        map(position, 0);
+    }
+
+    long position() {
+        return windowStart + window.position();
+    }
+
+    byte get() throws IOException {
+        ensure(Byte.BYTES);
+        return window.get();
+    }
+
+    int getInt() throws IOException {
+        ensure(Integer.BYTES);
+        return window.getInt();
+    }
+
+    long getLong() throws IOException {
+        ensure(Long.BYTES);
+        return window.getLong();
+    }
+
+    void get(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        window.get(bytes);
+    }
+
+    /**
+     * Беззнаковое число переменной длины: по 7 бит в байте, старший бит - есть продолжение.
+     */
+    long getVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed variable-length number at " + position());
+    }
+
+    /**
+     * CRC32 байт от текущей позиции до конца файла. Позиция чтения не меняется.
+     */
+    long checksumToEnd() throws IOException {
+        CRC32 crc = new CRC32();
+        for (long at = position(); at < size; at += windowSize) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(windowSize, size - at)));
+        }
+        return crc.getValue();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return;
+        }
+        long at = position();
+        if (size - at < bytes) {
+            throw new BufferUnderflowException();
+        }
+        map(at, bytes);
+    }
+
+    private void map(long at, int atLeast) throws IOException {
+        windowStart = at;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(Math.max(windowSize, atLeast), size - at));
+    }
+}
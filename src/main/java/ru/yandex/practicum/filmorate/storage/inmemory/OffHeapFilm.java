@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import lombok.Value;
+
+import java.time.LocalDate;
+
+/**
+ * Поля фильма в том виде, в каком они лежат в {@link OffHeapFilmRecords}: жанры - битовой маской,
+ * рейтинг - id.
+ */
+@Value
+class OffHeapFilm {
+    long id;
+    String name;
+    String description;
+    LocalDate releaseDate;
+    long duration;
+    int ratingId;
+    long genreMask;
+}
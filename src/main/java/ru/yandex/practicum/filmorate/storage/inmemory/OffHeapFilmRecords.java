@@ -0,0 +1,256 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Записи фильмов фиксированной длины в direct ByteBuffer, вне кучи. Запись занимает
+ * {@link #RECORD_SIZE} байт:
+ * <pre>
+ *  0 id             long
+ *  8 releaseDate    long, день от эпохи, Long.MIN_VALUE - нет даты
+ * 16 duration       long
+ * 24 genres         long, бит (id - 1) на каждый жанр
+ * 32 text           long, номер куска области строк (старшие 32 бита) и смещение в нем
+ * 40 ratingId       int, 0 - нет рейтинга
+ * 44 flags          int, {@link #LIVE} - фильм не удален
+ * </pre>
+ * Название и описание лежат подряд в области строк: int длина и байты UTF-8, длина -1 - null.
+ * При обновлении фильма строки пишутся заново, а удаленная запись остается на своем месте:
+ * место старых строк и удаленных записей копится как мусор ({@link #garbageBytes()}) и
+ * возвращается сжатием ({@link #compactIfWasteful()}), когда мусора становится больше половины.
+ * <p>
+ * Записи добавляются в конец по возрастанию id, поэтому поиск по id - двоичный поиск по номерам
+ * записей, и отдельного индекса в куче нет. Класс не потокобезопасен.
+ */
+final class OffHeapFilmRecords {
+
+    static final int RECORD_SIZE = 48;
+    static final int MAX_GENRE_ID = Long.SIZE;
+    private static final int LIVE = 1;
+    private static final int RECORDS_PER_CHUNK = 16_384;
+    private static final int TEXT_CHUNK_SIZE = 1 << 20;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    // below this much garbage a copy of the records costs more than it returns
+    private static final long MIN_GARBAGE_TO_COMPACT = TEXT_CHUNK_SIZE;
+
+    private final List<ByteBuffer> recordChunks = new ArrayList<>();
+    private final List<ByteBuffer> textChunks = new ArrayList<>();
+    private int count;
+    private long allocatedBytes;
+    private long garbageBytes;
+
+    int count() {
+        return count;
+    }
+
+    long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Байты удаленных записей и строк, которые заменило обновление.
+     */
+    long garbageBytes() {
+        return garbageBytes;
+    }
+
+    /**
+     * Переписывает живые записи в новые буферы, если мусор занимает больше половины выделенной памяти.
+     * Старые буферы освобождаются сборщиком мусора вместе с их ByteBuffer. Номера записей меняются.
+     *
+     * @return true, если записи были сжаты
+     */
+    boolean compactIfWasteful() {
+        if (garbageBytes < MIN_GARBAGE_TO_COMPACT || garbageBytes * 2 < allocatedBytes) {
+            return false;
+        }
+        OffHeapFilmRecords compacted = new OffHeapFilmRecords();
+        for (int slot = 0; slot < count; slot++) {
+            if (isLive(slot)) {
+                compacted.append(idAt(slot), read(slot));
+            }
+        }
+        recordChunks.clear();
+        recordChunks.addAll(compacted.recordChunks);
+        textChunks.clear();
+        textChunks.addAll(compacted.textChunks);
+        count = compacted.count;
+        allocatedBytes = compacted.allocatedBytes;
+        garbageBytes = 0;
+        return true;
+    }
+
+    /**
+     * id должен быть больше id всех уже добавленных записей.
+     */
+    int append(long id, OffHeapFilm film) {
+        if (count > 0 && id <= idAt(count - 1)) {
+            throw new IllegalArgumentException(String.format("Film id %d is not greater than the last one.", id));
+        }
+        if (count == recordChunks.size() * RECORDS_PER_CHUNK) {
+            recordChunks.add(allocate(RECORDS_PER_CHUNK * RECORD_SIZE));
+        }
+        int slot = count++;
+        write(slot, id, film);
+        return slot;
+    }
+
+    void overwrite(int slot, OffHeapFilm film) {
+        garbageBytes += textSize(slot);
+        write(slot, idAt(slot), film);
+    }
+
+    void markDeleted(int slot) {
+        if (!isLive(slot)) {
+            return;
+        }
+        garbageBytes += RECORD_SIZE + textSize(slot);
+        chunk(slot).putInt(offset(slot) + 44, 0);
+    }
+
+    boolean isLive(int slot) {
+        return chunk(slot).getInt(offset(slot) + 44) == LIVE;
+    }
+
+    long idAt(int slot) {
+        return chunk(slot).getLong(offset(slot));
+    }
+
+    /**
+     * Номер живой записи с этим id или -1.
+     */
+    int findSlot(long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = idAt(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return isLive(mid) ? mid : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Номер первой записи с id больше заданного, count(), если таких нет.
+     */
+    int firstSlotAfter(long id) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (idAt(mid) <= id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    OffHeapFilm read(int slot) {
+        ByteBuffer records = chunk(slot);
+        int at = offset(slot);
+        long epochDay = records.getLong(at + 8);
+        long textOffset = records.getLong(at + 32);
+        ByteBuffer text = textChunks.get((int) (textOffset >>> 32));
+        int textAt = (int) textOffset;
+        String name = readString(text, textAt);
+        String description = readString(text, textAt + 4 + Math.max(text.getInt(textAt), 0));
+        return new OffHeapFilm(
+                records.getLong(at),
+                name,
+                description,
+                epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay),
+                records.getLong(at + 16),
+                records.getInt(at + 40),
+                records.getLong(at + 24)
+        );
+    }
+
+    private void write(int slot, long id, OffHeapFilm film) {
+        long textOffset = appendText(film.getName(), film.getDescription());
+        ByteBuffer records = chunk(slot);
+        int at = offset(slot);
+        records.putLong(at, id);
+        records.putLong(at + 8, film.getReleaseDate() == null ? NO_DATE : film.getReleaseDate().toEpochDay());
+        records.putLong(at + 16, film.getDuration());
+        records.putLong(at + 24, film.getGenreMask());
+        records.putLong(at + 32, textOffset);
+        records.putInt(at + 40, film.getRatingId());
+        records.putInt(at + 44, LIVE);
+    }
+
+    private long appendText(String name, String description) {
+        byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        byte[] descriptionBytes = description == null ? null : description.getBytes(StandardCharsets.UTF_8);
+        int size = 8 + length(nameBytes) + length(descriptionBytes);
+        ByteBuffer text = textChunks.isEmpty() ? null : textChunks.get(textChunks.size() - 1);
+        // an entry never spans two chunks; an entry larger than a chunk gets a chunk of its own
+        if (text == null || text.remaining() < size) {
+            text = allocate(Math.max(TEXT_CHUNK_SIZE, size));
+            textChunks.add(text);
+        }
+        long offset = ((long) (textChunks.size() - 1) << 32) | text.position();
+        putString(text, nameBytes);
+        putString(text, descriptionBytes);
+        return offset;
+    }
+
+    private int textSize(int slot) {
+        long textOffset = chunk(slot).getLong(offset(slot) + 32);
+        ByteBuffer text = textChunks.get((int) (textOffset >>> 32));
+        int nameAt = (int) textOffset;
+        int nameLength = Math.max(text.getInt(nameAt), 0);
+        int descriptionLength = Math.max(text.getInt(nameAt + 4 + nameLength), 0);
+        return 8 + nameLength + descriptionLength;
+    }
+
+    private ByteBuffer allocate(int bytes) {
+        allocatedBytes += bytes;
+        return ByteBuffer.allocateDirect(bytes);
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return recordChunks.get(slot / RECORDS_PER_CHUNK);
+    }
+
+    private static int offset(int slot) {
+        return (slot % RECORDS_PER_CHUNK) * RECORD_SIZE;
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putString(ByteBuffer text, byte[] bytes) {
+        if (bytes == null) {
+            text.putInt(-1);
+            return;
+        }
+        text.putInt(bytes.length);
+        text.put(bytes);
+    }
+
+    private static String readString(ByteBuffer text, int at) {
+        int length = text.getInt(at);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        // a duplicate keeps concurrent readers off the shared position
+        ByteBuffer view = text.duplicate();
+        view.position(at + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,327 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
+import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.RatingStorage;
+import ru.yandex.practicum.filmorate.util.ConcurrentLongBitmapSet;
+import ru.yandex.practicum.filmorate.util.IdGenerator;
+import ru.yandex.practicum.filmorate.util.LongBitmapSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Хранилище фильмов в памяти вне кучи: каталог лежит в {@link OffHeapFilmRecords}, а объекты
+ * Film собираются только при чтении и сразу становятся мусором молодого поколения. Сборщику
+ * мусора не нужно обходить миллионы долгоживущих фильмов со строками, списками жанров и лайками.
+ * <p>
+ * Лайки меняются постоянно и остаются в куче, в сжатых множествах с разделением блокировок
+ * ({@link ConcurrentLongBitmapSet}) по фильмам.
+ * Записи каталога защищены блокировкой чтения-записи: каталог меняется редко. Лайк ставится
+ * и снимается под блокировкой чтения, а удаление и обновление фильма идут под блокировкой записи,
+ * поэтому лайк не может вернуть множество лайков и место в топе уже удаленному фильму или попасть
+ * в множество, которое обновление только что заменило.
+ */
+@Component
+@RequiredArgsConstructor
+public class OffHeapFilmStorage implements FilmStorage, MeterBinder,
+        ApplicationListener<InMemoryUserDeletedEvent> {
+
+    private final Map<Long, User> userMap;
+    private final IdGenerator idGenerator;
+    @Qualifier("inMemoryRatingStorage")
+    private final RatingStorage ratingStorage;
+    @Qualifier("inMemoryGenreStorage")
+    private final GenreStorage genreStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final OffHeapFilmRecords records = new OffHeapFilmRecords();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ConcurrentMap<Long, ConcurrentLongBitmapSet> likes = new ConcurrentHashMap<>();
+
+    @Override
+    public Film save(Film film) {
+        if (filmAlreadyExists(film.getId())) {
+            String msg = String.format("Film with ID: %d already exists", film.getId());
+            throw new ResourceAlreadyExistsException(msg);
+        }
+        OffHeapFilm record = toRecord(film);
+        long id;
+        lock.writeLock().lock();
+        try {
+            // ids grow with the append order, which keeps the records sorted by id
+            id = idGenerator.nextId();
+            records.append(id, record);
+            setLikes(id, film.getUserLikes());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return findFilmOrThrow(id);
+    }
+
+    @Override
+    public Film update(Film film) {
+        if (film.getId() == null) {
+            throw new ResourceNotFoundException("Film with ID: null is not found.");
+        }
+        OffHeapFilm record = toRecord(film);
+        lock.writeLock().lock();
+        try {
+            int slot = records.findSlot(film.getId());
+            if (slot < 0) {
+                String msg = String.format("Film with ID: %d is not found.", film.getId());
+                throw new ResourceNotFoundException(msg);
+            }
+            records.overwrite(slot, record);
+            records.compactIfWasteful();
+            setLikes(film.getId(), film.getUserLikes());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return findFilmOrThrow(film.getId());
+    }
+
+    @Override
+    public List<Film> findAll() {
+        return findPage(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        List<OffHeapFilm> page = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int slot = records.firstSlotAfter(afterId); slot < records.count() && page.size() < limit; slot++) {
+                if (records.isLive(slot)) {
+                    page.add(records.read(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page.stream()
+                .map(this::toFilm)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void addUserLikeToFilm(Long userId, Long filmId) {
+        findUserOrThrow(userId);
+        lock.readLock().lock();
+        try {
+            findFilmIdOrThrow(filmId);
+            if (likes.computeIfAbsent(filmId, id -> new ConcurrentLongBitmapSet()).add(userId)) {
+                popularityIndex.add(filmId, 1);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeUserLike(Long userId, Long filmId) {
+        findUserOrThrow(userId);
+        lock.readLock().lock();
+        try {
+            findFilmIdOrThrow(filmId);
+            ConcurrentLongBitmapSet filmLikes = likes.get(filmId);
+            if (filmLikes != null && filmLikes.remove(userId)) {
+                popularityIndex.add(filmId, -1);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteFilm(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            int slot = records.findSlot(filmId);
+            if (slot < 0) {
+                throw new ResourceNotFoundException(provideNotFoundErrorMessage("Film", filmId));
+            }
+            records.markDeleted(slot);
+            records.compactIfWasteful();
+            likes.remove(filmId);
+            popularityIndex.remove(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Убирает лайки удаленного пользователя из фильмов и топа обходом всех множеств лайков.
+     */
+    @Override
+    public void onApplicationEvent(InMemoryUserDeletedEvent event) {
+        Long userId = event.getUserId();
+        lock.readLock().lock();
+        try {
+            likes.forEach((filmId, filmLikes) -> {
+                if (filmLikes.remove(userId)) {
+                    popularityIndex.add(filmId, -1);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Film> getMostPopularFilms(long count) {
+        return popularityIndex.findTopFilmIds(count).stream()
+                .map(this::findFilmById)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<Film> findFilmById(Long filmId) {
+        OffHeapFilm record;
+        lock.readLock().lock();
+        try {
+            int slot = filmId == null ? -1 : records.findSlot(filmId);
+            record = slot < 0 ? null : records.read(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Optional.ofNullable(record).map(this::toFilm);
+    }
+
+    @Override
+    public Optional<Long> checkFilmId(Long id) {
+        lock.readLock().lock();
+        try {
+            return id != null && records.findSlot(id) >= 0 ? Optional.of(id) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return records.allocatedBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long offHeapGarbageBytes() {
+        lock.readLock().lock();
+        try {
+            return records.garbageBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("filmorate.films.offheap.bytes", this, OffHeapFilmStorage::offHeapBytes)
+                .description("Direct memory allocated for off-heap film records")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("filmorate.films.offheap.garbage.bytes", this, OffHeapFilmStorage::offHeapGarbageBytes)
+                .description("Direct memory held by deleted film records and replaced strings until compaction")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private void setLikes(Long filmId, Set<Long> userLikes) {
+        ConcurrentLongBitmapSet filmLikes = new ConcurrentLongBitmapSet(userLikes);
+        likes.put(filmId, filmLikes);
+        popularityIndex.set(filmId, filmLikes.size());
+    }
+
+    private OffHeapFilm toRecord(Film film) {
+        long genreMask = 0;
+        for (Genre genre : film.getGenres()) {
+            if (genre.getId() == null || genreStorage.getById(genre.getId()).isEmpty()) {
+                continue;
+            }
+            if (genre.getId() < 1 || genre.getId() > OffHeapFilmRecords.MAX_GENRE_ID) {
+                String msg = String.format("Genre with ID: %d can not be stored off heap.", genre.getId());
+                throw new IllegalArgumentException(msg);
+            }
+            genreMask |= 1L << (genre.getId() - 1);
+        }
+        int ratingId = 0;
+        if (film.getMpa() != null) {
+            Long mpaId = film.getMpa().getId();
+            Rating rating = ratingStorage.getById(mpaId)
+                    .orElseThrow(() -> {
+                        String msg = String.format("Rating with ID: %d is not found.", mpaId);
+                        return new ResourceNotFoundException(msg);
+                    });
+            ratingId = Math.toIntExact(rating.getId());
+        }
+        return new OffHeapFilm(0, film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), ratingId, genreMask);
+    }
+
+    private Film toFilm(OffHeapFilm record) {
+        List<Genre> genres = new ArrayList<>();
+        for (long mask = record.getGenreMask(); mask != 0; mask &= mask - 1) {
+            genreStorage.getById((long) Long.numberOfTrailingZeros(mask) + 1).ifPresent(genres::add);
+        }
+        Rating mpa = record.getRatingId() == 0
+                ? null
+                : ratingStorage.getById((long) record.getRatingId()).orElse(null);
+        ConcurrentLongBitmapSet filmLikes = likes.get(record.getId());
+        return Film.builder()
+                .id(record.getId())
+                .name(record.getName())
+                .description(record.getDescription())
+                .releaseDate(record.getReleaseDate())
+                .duration(record.getDuration())
+                .mpa(mpa)
+                .genres(genres)
+                .userLikes(filmLikes == null ? new LongBitmapSet() : LongBitmapSet.copyOf(filmLikes))
+                .build();
+    }
+
+    private Film findFilmOrThrow(Long filmId) {
+        return findFilmById(filmId)
+                .orElseThrow(() -> new ResourceNotFoundException(provideNotFoundErrorMessage("Film", filmId)));
+    }
+
+    private void findFilmIdOrThrow(Long filmId) {
+        if (checkFilmId(filmId).isEmpty()) {
+            throw new ResourceNotFoundException(provideNotFoundErrorMessage("Film", filmId));
+        }
+    }
+
+    private void findUserOrThrow(Long userId) {
+        if (userId == null || !userMap.containsKey(userId)) {
+            throw new ResourceNotFoundException(provideNotFoundErrorMessage("User", userId));
+        }
+    }
+
+    private String provideNotFoundErrorMessage(String what, Long id) {
+        return String.format("%s with ID=%d not found!", what, id);
+    }
+}
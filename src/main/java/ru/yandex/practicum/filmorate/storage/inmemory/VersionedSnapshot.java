@@ -0,0 +1,249 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Неизменяемый снимок всех сущностей хранилища для findAll, упорядоченный по id. Снимок строится
+ * один раз на версию: пока нет записей, все читатели получают один и тот же список без копирования
+ * и блокировок. Каждая запись увеличивает версию и запоминает id измененной сущности.
+ * <p>
+ * Сущности в снимке - замороженные копии, которые не меняются вместе с хранилищем. Снимок
+ * разбит на неизменяемые куски до {@link #MAX_CHUNK_SIZE} сущностей, и новый снимок делит
+ * с предыдущим все куски, кроме затронутых: изменение сущности копирует только ее кусок и массив
+ * ссылок на куски, а не весь список. Полностью снимок перестраивается только после invalidateAll.
+ */
+final class VersionedSnapshot<T> {
+
+    static final int MAX_CHUNK_SIZE = 512;
+
+    private final Supplier<Map<Long, T>> source;
+    private final Function<T, T> freeze;
+    private final Set<Long> changedIds = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean rebuildAll = new AtomicBoolean(true);
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot<T> current = new Snapshot<>(-1, new ChunkedList<>(List.of()));
+
+    VersionedSnapshot(Supplier<Map<Long, T>> source, Function<T, T> freeze) {
+        this.source = source;
+        this.freeze = freeze;
+    }
+
+    /**
+     * Вызывается после изменения, добавления или удаления сущности.
+     */
+    void invalidate(Long id) {
+        changedIds.add(id);
+        version.incrementAndGet();
+    }
+
+    void invalidateAll() {
+        rebuildAll.set(true);
+        version.incrementAndGet();
+    }
+
+    List<T> get() {
+        Snapshot<T> snapshot = current;
+        if (snapshot.version == version.get()) {
+            return snapshot.items;
+        }
+        synchronized (this) {
+            // the version is read before the copy: a write during the copy makes this snapshot stale at once
+            long latest = version.get();
+            if (current.version == latest) {
+                return current.items;
+            }
+            Map<Long, T> stored = source.get();
+            ChunkedList<T> items;
+            if (rebuildAll.getAndSet(false)) {
+                changedIds.clear();
+                items = rebuild(stored);
+            } else {
+                items = patch(current.items, stored);
+            }
+            current = new Snapshot<>(latest, items);
+            return current.items;
+        }
+    }
+
+    private ChunkedList<T> rebuild(Map<Long, T> stored) {
+        long[] ids = stored.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        List<Chunk> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.length; from += MAX_CHUNK_SIZE) {
+            long[] chunkIds = Arrays.copyOfRange(ids, from, Math.min(from + MAX_CHUNK_SIZE, ids.length));
+            Object[] chunkItems = new Object[chunkIds.length];
+            int size = 0;
+            for (long id : chunkIds) {
+                T item = stored.get(id);
+                // removed after the ids were taken: the removal marked it for the next snapshot anyway
+                if (item != null) {
+                    chunkIds[size] = id;
+                    chunkItems[size++] = freeze.apply(item);
+                }
+            }
+            if (size > 0) {
+                chunks.add(new Chunk(Arrays.copyOf(chunkIds, size), Arrays.copyOf(chunkItems, size)));
+            }
+        }
+        return new ChunkedList<>(chunks);
+    }
+
+    private ChunkedList<T> patch(ChunkedList<T> previous, Map<Long, T> stored) {
+        List<Chunk> chunks = new ArrayList<>(Arrays.asList(previous.chunks));
+        // an id is taken out before its entity is read, so a later write marks it again
+        for (Iterator<Long> it = changedIds.iterator(); it.hasNext(); ) {
+            Long id = it.next();
+            it.remove();
+            T item = stored.get(id);
+            int at = chunkIndexFor(chunks, id);
+            if (item == null) {
+                if (at >= 0) {
+                    Chunk patched = chunks.get(at).without(id);
+                    if (patched.ids.length == 0) {
+                        chunks.remove(at);
+                    } else {
+                        chunks.set(at, patched);
+                    }
+                }
+            } else if (at < 0) {
+                chunks.add(0, new Chunk(new long[]{id}, new Object[]{freeze.apply(item)}));
+            } else {
+                Chunk patched = chunks.get(at).with(id, freeze.apply(item));
+                if (patched.ids.length > MAX_CHUNK_SIZE) {
+                    chunks.set(at, patched.slice(0, patched.ids.length / 2));
+                    chunks.add(at + 1, patched.slice(patched.ids.length / 2, patched.ids.length));
+                } else {
+                    chunks.set(at, patched);
+                }
+            }
+        }
+        return new ChunkedList<>(chunks);
+    }
+
+    /**
+     * Номер последнего куска, первый id которого не больше заданного, или -1.
+     */
+    private static int chunkIndexFor(List<Chunk> chunks, long id) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (chunks.get(mid).ids[0] <= id) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // an id below the first chunk goes into it rather than into a chunk of its own
+        return found < 0 && !chunks.isEmpty() ? 0 : found;
+    }
+
+    /**
+     * Неизменяемый кусок снимка: id по возрастанию и замороженные сущности под теми же номерами.
+     */
+    private static final class Chunk {
+        private final long[] ids;
+        private final Object[] items;
+
+        private Chunk(long[] ids, Object[] items) {
+            this.ids = ids;
+            this.items = items;
+        }
+
+        private Chunk with(long id, Object item) {
+            int at = Arrays.binarySearch(ids, id);
+            if (at >= 0) {
+                Object[] patched = items.clone();
+                patched[at] = item;
+                return new Chunk(ids, patched);
+            }
+            int insertAt = -at - 1;
+            long[] patchedIds = new long[ids.length + 1];
+            Object[] patchedItems = new Object[items.length + 1];
+            System.arraycopy(ids, 0, patchedIds, 0, insertAt);
+            System.arraycopy(items, 0, patchedItems, 0, insertAt);
+            patchedIds[insertAt] = id;
+            patchedItems[insertAt] = item;
+            System.arraycopy(ids, insertAt, patchedIds, insertAt + 1, ids.length - insertAt);
+            System.arraycopy(items, insertAt, patchedItems, insertAt + 1, items.length - insertAt);
+            return new Chunk(patchedIds, patchedItems);
+        }
+
+        private Chunk without(long id) {
+            int at = Arrays.binarySearch(ids, id);
+            if (at < 0) {
+                return this;
+            }
+            long[] patchedIds = new long[ids.length - 1];
+            Object[] patchedItems = new Object[items.length - 1];
+            System.arraycopy(ids, 0, patchedIds, 0, at);
+            System.arraycopy(items, 0, patchedItems, 0, at);
+            System.arraycopy(ids, at + 1, patchedIds, at, ids.length - at - 1);
+            System.arraycopy(items, at + 1, patchedItems, at, items.length - at - 1);
+            return new Chunk(patchedIds, patchedItems);
+        }
+
+        private Chunk slice(int from, int to) {
+            return new Chunk(Arrays.copyOfRange(ids, from, to), Arrays.copyOfRange(items, from, to));
+        }
+    }
+
+    /**
+     * Неизменяемый список поверх кусков. Элемент по номеру ищется двоичным поиском по началам кусков.
+     */
+    private static final class ChunkedList<T> extends AbstractList<T> implements RandomAccess {
+        private final Chunk[] chunks;
+        private final int[] starts;
+        private final int size;
+
+        private ChunkedList(List<Chunk> chunks) {
+            this.chunks = chunks.toArray(new Chunk[0]);
+            this.starts = new int[this.chunks.length];
+            int total = 0;
+            for (int i = 0; i < this.chunks.length; i++) {
+                starts[i] = total;
+                total += this.chunks[i].ids.length;
+            }
+            this.size = total;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            int at = Arrays.binarySearch(starts, index);
+            int chunk = at >= 0 ? at : -at - 2;
+            return (T) chunks[chunk].items[index - starts[chunk]];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private static final class Snapshot<T> {
+        private final long version;
+        private final ChunkedList<T> items;
+
+        private Snapshot(long version, ChunkedList<T> items) {
+            this.version = version;
+            this.items = items;
+        }
+    }
+}
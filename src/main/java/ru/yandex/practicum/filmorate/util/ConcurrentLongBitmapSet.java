@@ -0,0 +1,191 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Потокобезопасный {@link LongBitmapSet} с разделением блокировок. Значения разложены
+ * по полосам по младшим битам, каждая полоса - отдельный LongBitmapSet под своей блокировкой.
+ * В полосе значение хранится без этих битов, поэтому подряд идущие id остаются плотными
+ * и сжимаются так же, как в одном LongBitmapSet. Потоки, ставящие лайки одному фильму,
+ * чаще всего попадают в разные полосы и не ждут друг друга.
+ * <p>
+ * Размер ведется в {@link LongAdder} и читается без блокировок. Итератор обходит копии полос,
+ * снятые по очереди, по возрастанию значений: он не бросает ConcurrentModificationException,
+ * но и не является мгновенным снимком всего множества.
+ */
+public class ConcurrentLongBitmapSet extends AbstractSet<Long> {
+
+    private static final int STRIPE_BITS = 3;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int STRIPE_MASK = STRIPES - 1;
+
+    // stripes are created on first add: most films have few likes
+    private final AtomicReferenceArray<LongBitmapSet> stripes = new AtomicReferenceArray<>(STRIPES);
+    private final LongAdder size = new LongAdder();
+
+    public ConcurrentLongBitmapSet() {
+    }
+
+    public ConcurrentLongBitmapSet(Collection<Long> values) {
+        addAll(values);
+    }
+
+    @Override
+    public boolean add(Long value) {
+        long v = value;
+        LongBitmapSet stripe = stripeOf(v);
+        boolean added;
+        synchronized (stripe) {
+            added = stripe.add(v >> STRIPE_BITS);
+        }
+        if (added) {
+            size.increment();
+        }
+        return added;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Long)) {
+            return false;
+        }
+        long v = (Long) o;
+        LongBitmapSet stripe = stripes.get((int) (v & STRIPE_MASK));
+        if (stripe == null) {
+            return false;
+        }
+        boolean removed;
+        synchronized (stripe) {
+            removed = stripe.remove(v >> STRIPE_BITS);
+        }
+        if (removed) {
+            size.decrement();
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Long)) {
+            return false;
+        }
+        long v = (Long) o;
+        LongBitmapSet stripe = stripes.get((int) (v & STRIPE_MASK));
+        if (stripe == null) {
+            return false;
+        }
+        synchronized (stripe) {
+            return stripe.contains(v >> STRIPE_BITS);
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            LongBitmapSet stripe = stripes.get(i);
+            if (stripe == null) {
+                continue;
+            }
+            synchronized (stripe) {
+                size.add(-stripe.size());
+                stripe.clear();
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        Iterator<Long>[] heads = stripeCopies();
+        return new Iterator<>() {
+            private final long[] next = new long[STRIPES];
+            private final boolean[] present = new boolean[STRIPES];
+            private boolean canRemove;
+            private long last;
+
+            {
+                for (int i = 0; i < STRIPES; i++) {
+                    advance(i);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                for (boolean p : present) {
+                    if (p) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Long next() {
+                int min = -1;
+                for (int i = 0; i < STRIPES; i++) {
+                    if (present[i] && (min < 0 || next[i] < next[min])) {
+                        min = i;
+                    }
+                }
+                if (min < 0) {
+                    throw new NoSuchElementException();
+                }
+                last = next[min];
+                canRemove = true;
+                advance(min);
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                canRemove = false;
+                ConcurrentLongBitmapSet.this.remove(last);
+            }
+
+            private void advance(int i) {
+                present[i] = heads[i].hasNext();
+                if (present[i]) {
+                    next[i] = (heads[i].next() << STRIPE_BITS) | i;
+                }
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Iterator<Long>[] stripeCopies() {
+        Iterator<Long>[] copies = new Iterator[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            LongBitmapSet stripe = stripes.get(i);
+            if (stripe == null) {
+                copies[i] = new LongBitmapSet().iterator();
+                continue;
+            }
+            synchronized (stripe) {
+                copies[i] = stripe.copy().iterator();
+            }
+        }
+        return copies;
+    }
+
+    private LongBitmapSet stripeOf(long value) {
+        int i = (int) (value & STRIPE_MASK);
+        LongBitmapSet stripe = stripes.get(i);
+        if (stripe == null) {
+            stripes.compareAndSet(i, null, new LongBitmapSet());
+            stripe = stripes.get(i);
+        }
+        return stripe;
+    }
+}
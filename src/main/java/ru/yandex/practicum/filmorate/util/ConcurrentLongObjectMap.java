@@ -0,0 +1,417 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Конкурентная таблица с ключами long и открытой адресацией. Ключи лежат в массиве long,
+ * значения - в параллельном массиве ссылок: слот занимает 12 байт (со сжатыми ссылками),
+ * таблица заполнена на 30-60%, то есть 20-40 байт на запись. В ConcurrentHashMap на запись
+ * приходятся узел, ключ Long и ячейка таблицы - около 55 байт, и поиск по long не упаковывает ключ.
+ * <p>
+ * Таблица разбита на {@link #SEGMENTS} сегментов со своим {@link StampedLock}: запись
+ * блокирует только свой сегмент, чтение идет без блокировки (оптимистичное чтение)
+ * и берет блокировку на чтение, только если сегмент изменился во время поиска. Коллизии
+ * разрешаются линейным пробированием, удаление сдвигает следующие записи назад, без надгробий.
+ * <p>
+ * Как и ConcurrentHashMap, не принимает null в ключах и значениях. Итераторы обходят
+ * копию каждого сегмента, снятую под блокировкой на чтение в массивы long и Object без
+ * упаковки ключей, и не бросают ConcurrentModificationException.
+ */
+public class ConcurrentLongObjectMap<V> extends AbstractMap<Long, V> implements ConcurrentMap<Long, V> {
+
+    private static final int SEGMENTS = 16;
+    private static final int SEGMENT_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment<V>[] segments;
+
+    public ConcurrentLongObjectMap() {
+        @SuppressWarnings("unchecked")
+        Segment<V>[] created = (Segment<V>[]) new Segment<?>[SEGMENTS];
+        segments = created;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>();
+        }
+    }
+
+    public V get(long key) {
+        return segmentFor(key).get(key);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public V put(long key, V value) {
+        return segmentFor(key).put(key, Objects.requireNonNull(value), false);
+    }
+
+    public V remove(long key) {
+        return segmentFor(key).remove(key, null);
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Long ? get((long) (Long) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(Long key, V value) {
+        return put((long) key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Long ? remove((long) (Long) key) : null;
+    }
+
+    @Override
+    public V putIfAbsent(Long key, V value) {
+        return segmentFor(key).put(key, Objects.requireNonNull(value), true);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!(key instanceof Long) || value == null) {
+            return false;
+        }
+        long k = (Long) key;
+        return segmentFor(k).remove(k, value) != null;
+    }
+
+    @Override
+    public boolean replace(Long key, V oldValue, V newValue) {
+        return segmentFor(key).replace(key, Objects.requireNonNull(oldValue), Objects.requireNonNull(newValue)) != null;
+    }
+
+    @Override
+    public V replace(Long key, V value) {
+        return segmentFor(key).replace(key, null, Objects.requireNonNull(value));
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment<V> segment : segments) {
+            if (segment.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public Set<Entry<Long, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Long, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentLongObjectMap.this.size();
+            }
+        };
+    }
+
+    private Segment<V> segmentFor(long key) {
+        return segments[(int) (mix(key) >>> SEGMENT_SHIFT)];
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) mix(key) & mask;
+    }
+
+    /**
+     * Ключи и значения сегмента меняются вместе, поэтому читатель берет их одной ссылкой.
+     */
+    private static final class Table {
+        private final long[] keys;
+        private final Object[] values;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+
+    private static final class Segment<V> {
+        private final StampedLock lock = new StampedLock();
+        private Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+        private volatile int size;
+
+        V get(long key) {
+            long stamp = lock.tryOptimisticRead();
+            Object value = find(table, key);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    value = find(table, key);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return cast(value);
+        }
+
+        V put(long key, V value, boolean onlyIfAbsent) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int mask = t.keys.length - 1;
+                int i = slot(key, mask);
+                while (t.values[i] != null) {
+                    if (t.keys[i] == key) {
+                        V old = cast(t.values[i]);
+                        if (!onlyIfAbsent) {
+                            t.values[i] = value;
+                        }
+                        return old;
+                    }
+                    i = (i + 1) & mask;
+                }
+                t.keys[i] = key;
+                t.values[i] = value;
+                size++;
+                // keep probe sequences short: at most 60% of slots are taken
+                if (size * 5L > t.keys.length * 3L) {
+                    table = resize(t);
+                }
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        V replace(long key, Object expected, V value) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int i = indexOf(t, key);
+                if (i < 0 || (expected != null && !expected.equals(t.values[i]))) {
+                    return null;
+                }
+                V old = cast(t.values[i]);
+                t.values[i] = value;
+                return old;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Удаляет ключ, если expected равен null или текущему значению.
+         */
+        V remove(long key, Object expected) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int i = indexOf(t, key);
+                if (i < 0 || (expected != null && !expected.equals(t.values[i]))) {
+                    return null;
+                }
+                V old = cast(t.values[i]);
+                shiftBack(t, i);
+                size--;
+                return old;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                table = new Table(INITIAL_SEGMENT_CAPACITY);
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Копирует записи сегмента в начало массивов copy, расширяя их при нехватке места.
+         *
+         * @return количество скопированных записей
+         */
+        int copyTo(SegmentCopy copy) {
+            long stamp = lock.readLock();
+            try {
+                Table t = table;
+                copy.ensureCapacity(size);
+                int count = 0;
+                for (int i = 0; i < t.values.length; i++) {
+                    if (t.values[i] != null) {
+                        copy.keys[count] = t.keys[i];
+                        copy.values[count++] = t.values[i];
+                    }
+                }
+                return count;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private static Object find(Table t, long key) {
+            int mask = t.keys.length - 1;
+            int i = slot(key, mask);
+            // bounded by the table length: an optimistic read may see a table in the middle of a write
+            for (int probes = 0; probes < t.keys.length; probes++) {
+                Object value = t.values[i];
+                if (value == null || t.keys[i] == key) {
+                    return value;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int indexOf(Table t, long key) {
+            int mask = t.keys.length - 1;
+            int i = slot(key, mask);
+            while (t.values[i] != null) {
+                if (t.keys[i] == key) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Удаление при линейном пробировании: записи за дыркой, которые иначе стали бы
+         * недостижимы от своего слота, сдвигаются в дырку.
+         */
+        private static void shiftBack(Table t, int hole) {
+            int mask = t.keys.length - 1;
+            int i = hole;
+            while (true) {
+                i = (i + 1) & mask;
+                if (t.values[i] == null) {
+                    break;
+                }
+                int home = slot(t.keys[i], mask);
+                // the entry stays if its home slot lies cyclically in (hole, i]
+                boolean reachable = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+                if (!reachable) {
+                    t.keys[hole] = t.keys[i];
+                    t.values[hole] = t.values[i];
+                    hole = i;
+                }
+            }
+            t.keys[hole] = 0;
+            t.values[hole] = null;
+        }
+
+        private static Table resize(Table old) {
+            Table resized = new Table(old.keys.length * 2);
+            int mask = resized.keys.length - 1;
+            for (int j = 0; j < old.keys.length; j++) {
+                if (old.values[j] != null) {
+                    int i = slot(old.keys[j], mask);
+                    while (resized.values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    resized.keys[i] = old.keys[j];
+                    resized.values[i] = old.values[j];
+                }
+            }
+            return resized;
+        }
+
+        @SuppressWarnings("unchecked")
+        private V cast(Object value) {
+            return (V) value;
+        }
+    }
+
+    /**
+     * Копия одного сегмента для итератора. Массивы переиспользуются для следующих сегментов.
+     */
+    private static final class SegmentCopy {
+        private long[] keys = new long[0];
+        private Object[] values = new Object[0];
+
+        private void ensureCapacity(int capacity) {
+            if (keys.length < capacity) {
+                keys = new long[capacity];
+                values = new Object[capacity];
+            }
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<Long, V>> {
+        private final SegmentCopy copy = new SegmentCopy();
+        private int count;
+        private int segment;
+        private int index;
+        private boolean canRemove;
+        private long lastKey;
+
+        @Override
+        public boolean hasNext() {
+            while (index == count && segment < SEGMENTS) {
+                // the previous segment's values are dropped, so they are not kept reachable
+                Arrays.fill(copy.values, 0, count, null);
+                index = 0;
+                count = segments[segment++].copyTo(copy);
+            }
+            return index < count;
+        }
+
+        @Override
+        public Entry<Long, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastKey = copy.keys[index];
+            canRemove = true;
+            @SuppressWarnings("unchecked")
+            V value = (V) copy.values[index++];
+            return new SimpleImmutableEntry<>(lastKey, value);
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            ConcurrentLongObjectMap.this.remove(lastKey);
+            canRemove = false;
+        }
+    }
+}
@@ -22,6 +22,10 @@ public class DemoAppRunner implements ApplicationRunner {
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
+        // dictionaries restored from an in-memory snapshot are not seeded again
+        if (!genreStorage.findAll().isEmpty() || !ratingStorage.findAll().isEmpty()) {
+            return;
+        }
         genreStorage.save(Genre.builder().name(GenreName.COMEDY).build());
         genreStorage.save(Genre.builder().name(GenreName.DRAMA).build());
         genreStorage.save(Genre.builder().name(GenreName.CARTOON).build());
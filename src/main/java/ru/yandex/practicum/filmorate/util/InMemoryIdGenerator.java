@@ -16,4 +16,11 @@ public class InMemoryIdGenerator implements IdGenerator {
     public Long nextId() {
         return currentId.incrementAndGet();
     }
+
+    /**
+     * Следующие id будут больше maxExistingId, например, после восстановления данных из снимка.
+     */
+    public void skipPast(long maxExistingId) {
+        currentId.accumulateAndGet(maxExistingId, Math::max);
+    }
 }
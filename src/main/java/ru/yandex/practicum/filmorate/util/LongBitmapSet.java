@@ -0,0 +1,574 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Сжатое множество long по мотивам Roaring Bitmap. Число делится на старшие 48 бит (ключ)
+ * и младшие 16 бит, которые хранятся в контейнере этого ключа:
+ * <ul>
+ *     <li>пока в контейнере не больше 4096 значений - отсортированный массив char (2 байта на значение);</li>
+ *     <li>дальше - битовая карта на 65536 бит (8 КБ на контейнер).</li>
+ * </ul>
+ * Id пользователей идут подряд, поэтому лайки фильма обычно лежат в одном-двух контейнерах
+ * и занимают в разы меньше памяти, чем HashSet из Long. retainAll и addAll с другим
+ * LongBitmapSet считают пересечение и объединение по контейнерам, без обхода отдельных элементов.
+ * <p>
+ * Как и HashSet, класс не потокобезопасен. Итератор обходит значения по возрастанию.
+ */
+public class LongBitmapSet extends AbstractSet<Long> {
+
+    private static final int MAX_ARRAY_CONTAINER_SIZE = 4096;
+
+    private long[] keys = new long[1];
+    private Container[] containers = new Container[1];
+    private int containerCount;
+    private int size;
+
+    public LongBitmapSet() {
+    }
+
+    public LongBitmapSet(Collection<Long> values) {
+        addAll(values);
+    }
+
+    public static LongBitmapSet copyOf(Collection<Long> values) {
+        if (values instanceof LongBitmapSet) {
+            return ((LongBitmapSet) values).copy();
+        }
+        return new LongBitmapSet(values);
+    }
+
+    /**
+     * Пересечение двух множеств.
+     */
+    private static LongBitmapSet and(LongBitmapSet first, LongBitmapSet second) {
+        LongBitmapSet result = new LongBitmapSet();
+        int i = 0;
+        int j = 0;
+        while (i < first.containerCount && j < second.containerCount) {
+            int cmp = Long.compare(first.keys[i], second.keys[j]);
+            if (cmp < 0) {
+                i++;
+            } else if (cmp > 0) {
+                j++;
+            } else {
+                Container c = first.containers[i].and(second.containers[j]);
+                if (c.cardinality() > 0) {
+                    result.appendContainer(first.keys[i], c);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Объединение двух множеств.
+     */
+    private static LongBitmapSet or(LongBitmapSet first, LongBitmapSet second) {
+        LongBitmapSet result = new LongBitmapSet();
+        int i = 0;
+        int j = 0;
+        while (i < first.containerCount || j < second.containerCount) {
+            int cmp;
+            if (i == first.containerCount) {
+                cmp = 1;
+            } else if (j == second.containerCount) {
+                cmp = -1;
+            } else {
+                cmp = Long.compare(first.keys[i], second.keys[j]);
+            }
+            if (cmp < 0) {
+                result.appendContainer(first.keys[i], first.containers[i].copy());
+                i++;
+            } else if (cmp > 0) {
+                result.appendContainer(second.keys[j], second.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(first.keys[i], first.containers[i].or(second.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public LongBitmapSet copy() {
+        LongBitmapSet copy = new LongBitmapSet();
+        for (int i = 0; i < containerCount; i++) {
+            copy.appendContainer(keys[i], containers[i].copy());
+        }
+        return copy;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        long v = value;
+        long key = highBits(v);
+        int i = indexOfKey(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key, new ArrayContainer());
+        }
+        Container container = containers[i];
+        int before = container.cardinality();
+        containers[i] = container.add(lowBits(v));
+        if (containers[i].cardinality() > before) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Long)) {
+            return false;
+        }
+        long v = (Long) o;
+        int i = indexOfKey(highBits(v));
+        if (i < 0) {
+            return false;
+        }
+        Container container = containers[i];
+        int before = container.cardinality();
+        container = container.remove(lowBits(v));
+        if (container.cardinality() == before) {
+            return false;
+        }
+        size--;
+        if (container.cardinality() == 0) {
+            removeContainer(i);
+        } else {
+            containers[i] = container;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Long)) {
+            return false;
+        }
+        long v = (Long) o;
+        int i = indexOfKey(highBits(v));
+        return i >= 0 && containers[i].contains(lowBits(v));
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        if (!(c instanceof LongBitmapSet)) {
+            return super.retainAll(c);
+        }
+        LongBitmapSet retained = and(this, (LongBitmapSet) c);
+        if (retained.size == size) {
+            return false;
+        }
+        replaceWith(retained);
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Long> c) {
+        if (!(c instanceof LongBitmapSet)) {
+            return super.addAll(c);
+        }
+        LongBitmapSet union = or(this, (LongBitmapSet) c);
+        if (union.size == size) {
+            return false;
+        }
+        replaceWith(union);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        keys = new long[1];
+        containers = new Container[1];
+        containerCount = 0;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<>() {
+            private int containerIndex;
+            private int low = -1;
+            private boolean hasNext = advance();
+            private boolean canRemove;
+            private long last;
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public Long next() {
+                if (!hasNext) {
+                    throw new NoSuchElementException();
+                }
+                last = compose(keys[containerIndex], low);
+                canRemove = true;
+                hasNext = advance();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                canRemove = false;
+                long nextKey = hasNext ? keys[containerIndex] : 0;
+                LongBitmapSet.this.remove(last);
+                if (hasNext) {
+                    // the removed value may have been the last one of its container
+                    containerIndex = indexOfKey(nextKey);
+                }
+            }
+
+            private boolean advance() {
+                while (containerIndex < containerCount) {
+                    int next = containers[containerIndex].higher(low);
+                    if (next >= 0) {
+                        low = next;
+                        return true;
+                    }
+                    containerIndex++;
+                    low = -1;
+                }
+                return false;
+            }
+        };
+    }
+
+    private void replaceWith(LongBitmapSet other) {
+        keys = other.keys;
+        containers = other.containers;
+        containerCount = other.containerCount;
+        size = other.size;
+    }
+
+    private int indexOfKey(long key) {
+        return Arrays.binarySearch(keys, 0, containerCount, key);
+    }
+
+    private void insertContainer(int index, long key, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        containerCount++;
+    }
+
+    private void appendContainer(long key, Container container) {
+        insertContainer(containerCount, key, container);
+        size += container.cardinality();
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, containerCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containerCount - index - 1);
+        containerCount--;
+        containers[containerCount] = null;
+    }
+
+    private static long highBits(long value) {
+        return value >> 16;
+    }
+
+    private static char lowBits(long value) {
+        return (char) value;
+    }
+
+    private static long compose(long key, int low) {
+        return (key << 16) | low;
+    }
+
+    private abstract static class Container {
+
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        /**
+         * Возвращает контейнер с добавленным значением: этот же или новый, если поменялся тип.
+         */
+        abstract Container add(char low);
+
+        abstract Container remove(char low);
+
+        /**
+         * Наименьшее значение больше low (low может быть -1) или -1, если такого нет.
+         */
+        abstract int higher(int low);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+
+        abstract Container copy();
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        private ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        Container add(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality >= MAX_ARRAY_CONTAINER_SIZE) {
+                return toBitmap().add(low);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.max(4, Math.min(cardinality * 2, MAX_ARRAY_CONTAINER_SIZE)));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        int higher(int low) {
+            int from = low + 1;
+            if (from > Character.MAX_VALUE) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < cardinality ? values[index] : -1;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            ArrayContainer union = new ArrayContainer(result, count);
+            return count > MAX_ARRAY_CONTAINER_SIZE ? union.toBitmap() : union;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapContainer() {
+            this(new long[1 << 10], 0);
+        }
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Container add(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                words[low >>> 6] &= ~bit;
+                cardinality--;
+            }
+            return cardinality <= MAX_ARRAY_CONTAINER_SIZE ? toArray() : this;
+        }
+
+        @Override
+        int higher(int low) {
+            int from = low + 1;
+            if (from > Character.MAX_VALUE) {
+                return -1;
+            }
+            int index = from >>> 6;
+            long word = words[index] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return index * 64 + Long.numberOfTrailingZeros(word);
+                }
+                if (++index == words.length) {
+                    return -1;
+                }
+                word = words[index];
+            }
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[words.length];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            BitmapContainer intersection = new BitmapContainer(result, count);
+            return count <= MAX_ARRAY_CONTAINER_SIZE ? intersection.toArray() : intersection;
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer union = copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    union.add(array.values[i]);
+                }
+                return union;
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                union.words[i] |= otherWords[i];
+                count += Long.bitCount(union.words[i]);
+            }
+            union.cardinality = count;
+            return union;
+        }
+
+        @Override
+        BitmapContainer copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int low = higher(-1); low >= 0; low = higher(low)) {
+                values[count++] = (char) low;
+            }
+            return new ArrayContainer(values, count);
+        }
+    }
+}
@@ -5,6 +5,10 @@ drop table if exists FilmGenre cascade;
 drop table if exists Users cascade;
 drop table if exists FilmUserLikes cascade;
 drop table if exists FriendshipStatus cascade;
+drop table if exists FilmLikesCounter cascade;
+drop table if exists IdempotencyKeys cascade;
+drop sequence if exists films_id_blocks;
+drop sequence if exists users_id_blocks;
 
 create table if not exists Genres
 (
@@ -26,10 +30,14 @@ create table if not exists Films
     RELEASE_DATE TIMESTAMP         not null,
     DURATION     BIGINT            not null,
     RATING_ID    BIGINT,
+    LIKES_COUNT  BIGINT default 0  not null,
+    DELETED      BOOLEAN default FALSE not null,
     constraint "films_ratings_id_fk"
         foreign key (RATING_ID) references Ratings
 );
 
+create index if not exists films_likes_count_idx on Films (LIKES_COUNT desc, ID);
+
 create table if not exists FilmGenre
 (
     FILM_ID  BIGINT not null,
@@ -48,7 +56,8 @@ create table if not exists Users
     EMAIL    VARCHAR(63) not null,
     LOGIN    VARCHAR(63) not null,
     NAME     VARCHAR(63) not null,
-    BIRTHDAY TIMESTAMP         not null
+    BIRTHDAY TIMESTAMP         not null,
+    DELETED  BOOLEAN default FALSE not null
 );
 
 create table if not exists FilmUserLikes
@@ -76,3 +85,28 @@ create table if not exists FriendshipStatus
     constraint "friends_are_distinct_ck"
         check (USER_ID <> FRIEND_ID)
 );
+
+create table if not exists FilmLikesCounter
+(
+    FILM_ID BIGINT not null,
+    STRIPE  INT    not null,
+    DELTA   BIGINT not null,
+    constraint "film_likes_counter_pk"
+        primary key (FILM_ID, STRIPE),
+    constraint "film_likes_counter_film_id_fk"
+        foreign key (FILM_ID) references Films
+);
+
+create table if not exists IdempotencyKeys
+(
+    ID_KEY        VARCHAR(300) primary key,
+    REQUEST_HASH  VARCHAR(64)  not null,
+    RESPONSE_BODY CLOB         not null,
+    CREATED_AT    TIMESTAMP    not null
+);
+
+create index if not exists idempotency_keys_created_at_idx on IdempotencyKeys (CREATED_AT);
+
+-- hi-lo id blocks, used when filmorate.ids.hilo.enabled is set
+create sequence if not exists films_id_blocks start with 1;
+create sequence if not exists users_id_blocks start with 1;
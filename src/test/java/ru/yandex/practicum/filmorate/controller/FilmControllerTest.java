@@ -1,26 +1,49 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSummary;
 import ru.yandex.practicum.filmorate.service.IFilmService;
+import ru.yandex.practicum.filmorate.storage.inmemory.InMemoryIdempotencyStorage;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static ru.yandex.practicum.filmorate.testutil.TestConstants.LONG_DESCRIPTION;
 import static ru.yandex.practicum.filmorate.testutil.TestConstants.THRESHOLD_DATE;
 
 @WebMvcTest(FilmController.class)
+@Import({IdempotentRequests.class, InMemoryIdempotencyStorage.class})
 class FilmControllerTest {
 
     @Autowired
@@ -49,6 +72,136 @@ class FilmControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void whenCreateFilmTwiceWithSameIdempotencyKey_serviceCalledOnce() throws Exception {
+        Film film = Film.builder().name("Name").description("Description")
+                .releaseDate(LocalDate.now()).duration(10).build();
+        Film created = film.toBuilder().id(1L).build();
+        when(service.createFilm(any())).thenReturn(created);
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/films")
+                            .header(IdempotentRequests.HEADER, "create-1")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(film)))
+                    .andExpect(status().isCreated())
+                    .andExpect(jsonPath("$.id").value(1));
+        }
+        verify(service, times(1)).createFilm(any());
+    }
+
+    @Test
+    void whenIdempotencyKeyReusedWithDifferentFilm_status422() throws Exception {
+        Film film = Film.builder().name("Name").description("Description")
+                .releaseDate(LocalDate.now()).duration(10).build();
+        when(service.createFilm(any())).thenReturn(film.toBuilder().id(1L).build());
+
+        mockMvc.perform(post("/films")
+                        .header(IdempotentRequests.HEADER, "create-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(film)))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/films")
+                        .header(IdempotentRequests.HEADER, "create-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(film.toBuilder().name("Other").build())))
+                .andExpect(status().isUnprocessableEntity());
+        verify(service, times(1)).createFilm(any());
+    }
+
+    @Test
+    void whenIdempotencyKeyTooLong_status400() throws Exception {
+        Film film = Film.builder().name("Name").description("Description")
+                .releaseDate(LocalDate.now()).duration(10).build();
+
+        mockMvc.perform(post("/films")
+                        .header(IdempotentRequests.HEADER, "k".repeat(IdempotentRequests.MAX_KEY_LENGTH + 1))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(film)))
+                .andExpect(status().isBadRequest());
+        verify(service, never()).createFilm(any());
+    }
+
+    @Test
+    void whenDeleteMissingFilm_status404() throws Exception {
+        doThrow(new ResourceNotFoundException("Film with ID: 5 is not found.")).when(service).deleteFilm(5L);
+
+        mockMvc.perform(delete("/films/5"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void whenGetFilmsPageWithNonPositiveLimit_status400() throws Exception {
+        mockMvc.perform(get("/films").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void whenGetFullFilmsPage_nextCursorHeaderPointsToLastFilm() throws Exception {
+        Film first = Film.builder().id(1L).name("Name").build();
+        Film second = Film.builder().id(2L).name("Name").build();
+        when(service.findFilmsPage(0L, 2)).thenReturn(List.of(first, second));
+
+        mockMvc.perform(get("/films").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "2"));
+    }
+
+    @Test
+    void whenGetLastFilmsPage_noNextCursorHeader() throws Exception {
+        Film first = Film.builder().id(1L).name("Name").build();
+        when(service.findFilmsPage(0L, 2)).thenReturn(List.of(first));
+
+        mockMvc.perform(get("/films").param("after", "0").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    void whenGetPopularFilmsWithSummaryView_returnsLikesCountWithoutUserLikes() throws Exception {
+        FilmSummary summary = FilmSummary.builder().id(1L).name("Name").likesCount(3).build();
+        when(service.getMostPopularFilmSummaries(10)).thenReturn(List.of(summary));
+
+        mockMvc.perform(get("/films/popular").param("view", "summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].likesCount").value(3))
+                .andExpect(jsonPath("$[0].userLikes").doesNotExist());
+    }
+
+    @Test
+    void whenGetFilmByIdWithSummaryView_returnsSummary() throws Exception {
+        FilmSummary summary = FilmSummary.builder().id(1L).name("Name").likesCount(1).build();
+        when(service.getFilmSummaryById(1L)).thenReturn(summary);
+
+        mockMvc.perform(get("/films/1").param("view", "summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.likesCount").value(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void whenExportFilms_streamsOneJsonObjectPerLine() throws Exception {
+        Film first = Film.builder().id(1L).name("First").duration(10).build();
+        Film second = Film.builder().id(2L).name("Second").duration(20).build();
+        doAnswer(invocation -> {
+            Consumer<Film> consumer = invocation.getArgument(0);
+            consumer.accept(first);
+            consumer.accept(second);
+            return null;
+        }).when(service).exportFilms(any(Consumer.class));
+
+        MvcResult result = mockMvc.perform(get("/films/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String expected = objectMapper.writeValueAsString(first) + "\n"
+                + objectMapper.writeValueAsString(second) + "\n";
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(FilmController.NDJSON))
+                .andExpect(content().string(expected));
+    }
+
     private static Stream<Film> invalidFilms() {
         return Stream.of(
                 Film // null name
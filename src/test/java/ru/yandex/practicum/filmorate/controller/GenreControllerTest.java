@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.GenreName;
+import ru.yandex.practicum.filmorate.service.IGenreService;
+
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(GenreController.class)
+class GenreControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private IGenreService service;
+
+    @Test
+    void getAllGenres_isCacheableByClients() throws Exception {
+        Genre comedy = Genre.builder().id(1L).name(GenreName.COMEDY).build();
+        when(service.getAllGenres()).thenReturn(List.of(comedy));
+
+        mockMvc.perform(get("/genres"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=86400, public"))
+                .andExpect(jsonPath("$[0].id").value(1));
+    }
+
+    @Test
+    void getGenreById_isCacheableByClients() throws Exception {
+        Genre comedy = Genre.builder().id(1L).name(GenreName.COMEDY).build();
+        when(service.getGenreById(1L)).thenReturn(comedy);
+
+        mockMvc.perform(get("/genres/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=86400, public"));
+    }
+}
@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.inmemory.InMemoryIdempotencyStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotentRequestsTest {
+
+    private final IdempotentRequests requests = new IdempotentRequests(
+            new InMemoryIdempotencyStorage(100, 60), new ObjectMapper().findAndRegisterModules());
+
+    private final User user = User.builder()
+            .email("user@mail.ru")
+            .login("login")
+            .name("name")
+            .birthday(LocalDate.of(1990, 1, 1))
+            .build();
+
+    @Test
+    void whenConcurrentDuplicates_operationRunsOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<User>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return requests.execute("users", "key", user, User.class, () -> {
+                        calls.incrementAndGet();
+                        return user.toBuilder().id(7L).build();
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<User> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS).getId()).isEqualTo(7L);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void whenOperationFails_sameKeyCanBeRetried() {
+        assertThatThrownBy(() -> requests.execute("users", "key", user, User.class, () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        User created = requests.execute("users", "key", user, User.class, () -> user.toBuilder().id(3L).build());
+
+        assertThat(created.getId()).isEqualTo(3L);
+    }
+}
@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.model.BulkReport;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.IFilmService;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.database.FilmDbStorage;
+
+import javax.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "filmorate.bulk.chunk-size=2")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(
+        scripts = "classpath:db/clean-films.sql",
+        executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD
+)
+class FilmServiceBulkImportTest {
+
+    private static final String VALID = "{\"name\":\"%s\",\"description\":\"d\",\"releaseDate\":\"2000-01-01\","
+            + "\"duration\":90,\"mpa\":{\"id\":1},\"genres\":[{\"id\":2}]}";
+
+    private final IFilmService filmService;
+    private final FilmDbStorage filmDbStorage;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @Test
+    void whenImportJsonArray_savesAllFilms() throws IOException {
+        String body = "[" + String.format(VALID, "a") + "," + String.format(VALID, "b") + ","
+                + String.format(VALID, "c") + "]";
+
+        BulkReport report = filmService.importFilms(stream(body));
+
+        assertThat(report.getAccepted()).isEqualTo(3);
+        assertThat(report.getRejected()).isZero();
+        List<Film> saved = filmDbStorage.findAll();
+        assertThat(saved).extracting(Film::getName).contains("a", "b", "c");
+    }
+
+    @Test
+    void whenImportNdjsonWithInvalidItems_reportsThemAndSavesTheRest() throws IOException {
+        String body = String.join("\n",
+                String.format(VALID, "first"),
+                "{\"name\":\"\",\"description\":\"d\",\"releaseDate\":\"2000-01-01\",\"duration\":90}",
+                "{\"name\":\"x\",\"releaseDate\":\"not a date\",\"duration\":90}",
+                String.format(VALID, "unknown genre").replace("{\"id\":2}", "{\"id\":999}"),
+                String.format(VALID, "last"));
+
+        BulkReport report = filmService.importFilms(stream(body));
+
+        assertThat(report.getAccepted()).isEqualTo(2);
+        assertThat(report.getRejected()).isEqualTo(3);
+        assertThat(report.getErrors()).extracting(BulkReport.ItemError::getIndex).containsExactly(1L, 2L, 3L);
+        assertThat(report.getErrors().get(2).getMessage()).contains("999");
+        assertThat(filmDbStorage.findAll()).extracting(Film::getName).contains("first", "last")
+                .doesNotContain("unknown genre");
+    }
+
+    @Test
+    void whenImportMalformedJson_stopsAtTheBrokenItem() throws IOException {
+        String body = String.format(VALID, "ok") + "\n{\"name\": ";
+
+        BulkReport report = filmService.importFilms(stream(body));
+
+        assertThat(report.getAccepted()).isEqualTo(1);
+        assertThat(report.getErrors()).extracting(BulkReport.ItemError::getIndex).containsExactly(1L);
+    }
+
+    @Test
+    void whenChunkFails_filmsAreRetriedWithoutIdsOfTheFailedAttempt() throws IOException {
+        FilmStorage storage = mock(FilmStorage.class);
+        List<Long> idsOnEntry = new ArrayList<>();
+        AtomicLong nextId = new AtomicLong(100);
+        when(storage.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Film> films = invocation.getArgument(0);
+            films.forEach(f -> {
+                idsOnEntry.add(f.getId());
+                f.setId(nextId.getAndIncrement());
+            });
+            if (films.size() > 1) {
+                throw new IllegalStateException("batch rolled back");
+            }
+            return films;
+        });
+        FilmService service = new FilmService(storage, objectMapper, validator, 2);
+
+        BulkReport report = service.importFilms(stream(String.format(VALID, "a") + String.format(VALID, "b")));
+
+        assertThat(report.getAccepted()).isEqualTo(2);
+        assertThat(idsOnEntry).hasSize(4).containsOnlyNulls();
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
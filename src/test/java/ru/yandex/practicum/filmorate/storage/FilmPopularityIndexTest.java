@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilmPopularityIndexTest {
+
+    private final FilmPopularityIndex index = new FilmPopularityIndex();
+
+    @Test
+    void whenFindTopFilmIds_returnsMostLikedFirstAndTiesById() {
+        index.set(1L, 2);
+        index.set(2L, 5);
+        index.set(3L, 2);
+        index.set(4L, 0);
+
+        assertThat(index.findTopFilmIds(3)).containsExactly(2L, 1L, 3L);
+        assertThat(index.findTopFilmIds(10)).containsExactly(2L, 1L, 3L, 4L);
+    }
+
+    @Test
+    void whenLikesAreAddedAndRemoved_filmMovesInRanking() {
+        index.set(1L, 1);
+        index.set(2L, 2);
+
+        index.add(1L, 2);
+        assertThat(index.findTopFilmIds(2)).containsExactly(1L, 2L);
+
+        index.add(1L, -2);
+        index.add(2L, 0);
+        assertThat(index.findTopFilmIds(2)).containsExactly(2L, 1L);
+
+        index.remove(2L);
+        assertThat(index.findTopFilmIds(2)).containsExactly(1L);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    void whenRebuild_previousContentIsReplaced() {
+        index.set(1L, 10);
+
+        index.rebuild(Map.of(2L, 3L, 3L, 4L));
+
+        assertThat(index.findTopFilmIds(5)).containsExactly(3L, 2L);
+    }
+
+    @Test
+    void whenLikesAreAddedConcurrently_noUpdateIsLost() throws Exception {
+        int threads = 8;
+        int likesPerThread = 1000;
+        long films = 10;
+        for (long id = 1; id <= films; id++) {
+            index.set(id, 0);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < likesPerThread; i++) {
+                    // film 1 gets every like, the rest are spread over the other films
+                    index.add(1L, 1);
+                    index.add(2 + (long) (i % (films - 1)), 1);
+                    assertThat(index.findTopFilmIds(films)).doesNotHaveDuplicates();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        List<Long> top = index.findTopFilmIds(films);
+        assertThat(top).hasSize((int) films);
+        assertThat(top.get(0)).isEqualTo(1L);
+        index.add(1L, -(long) threads * likesPerThread);
+        index.add(2L, 1);
+        assertThat(index.findTopFilmIds(1)).containsExactly(2L);
+    }
+}
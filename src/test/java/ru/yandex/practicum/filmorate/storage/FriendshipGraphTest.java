@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FriendshipGraphTest {
+
+    private final FriendshipGraph graph = new FriendshipGraph();
+
+    @Test
+    void whenAddAndRemoveFriends_friendIdsStaySortedAndUnique() {
+        assertThat(graph.addFriend(1L, 5L)).isTrue();
+        assertThat(graph.addFriend(1L, 2L)).isTrue();
+        assertThat(graph.addFriend(1L, 9L)).isTrue();
+        assertThat(graph.addFriend(1L, 2L)).isFalse();
+        assertThat(graph.getFriendIds(1L)).containsExactly(2L, 5L, 9L);
+
+        assertThat(graph.removeFriend(1L, 5L)).isTrue();
+        assertThat(graph.removeFriend(1L, 5L)).isFalse();
+        assertThat(graph.removeFriend(2L, 1L)).isFalse();
+        assertThat(graph.getFriendIds(1L)).containsExactly(2L, 9L);
+        assertThat(graph.getFriendIds(2L)).isEmpty();
+    }
+
+    @Test
+    void whenRemoveUser_edgesLeadingToItAreRemovedToo() {
+        graph.setFriends(1L, List.of(2L, 3L));
+        graph.setFriends(2L, List.of(1L, 3L));
+        graph.setFriends(3L, List.of(1L));
+
+        assertThat(graph.removeUser(1L)).containsExactlyInAnyOrder(2L, 3L);
+
+        assertThat(graph.getFriendIds(1L)).isEmpty();
+        assertThat(graph.getFriendIds(2L)).containsExactly(3L);
+        assertThat(graph.getFriendIds(3L)).isEmpty();
+    }
+
+    @Test
+    void whenGetCommonFriendIds_returnsSortedIntersection() {
+        graph.setFriends(1L, List.of(7L, 3L, 5L, 3L, 10L));
+        graph.setFriends(2L, List.of(10L, 4L, 5L, 1L));
+
+        assertThat(graph.getCommonFriendIds(1L, 2L)).containsExactly(5L, 10L);
+        assertThat(graph.getCommonFriendIds(2L, 1L)).containsExactly(5L, 10L);
+        assertThat(graph.getCommonFriendIds(1L, 3L)).isEmpty();
+    }
+
+    @Test
+    void whenRebuild_previousFriendshipsAreReplaced() {
+        graph.addFriend(1L, 2L);
+
+        graph.rebuild(Map.of(3L, List.of(1L, 2L)));
+
+        assertThat(graph.getFriendIds(1L)).isEmpty();
+        assertThat(graph.getFriendIds(3L)).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void whenFriendsAreAddedConcurrently_noneIsLost() {
+        IntStream.range(0, 10_000).parallel()
+                .forEach(i -> graph.addFriend(1L, (long) i));
+
+        long[] friends = graph.getFriendIds(1L);
+        assertThat(friends).hasSize(10_000);
+        assertThat(friends).isSorted();
+    }
+}
@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoundedCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final BoundedCache<Long, String> cache =
+            new BoundedCache<>("test", 2, Duration.ofSeconds(10), clock::get);
+
+    @Test
+    void whenCacheIsFull_leastRecentlyUsedEntryIsEvicted() {
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+        cache.put(3L, "three");
+
+        assertThat(cache.get(2L)).isNull();
+        assertThat(cache.get(1L)).isEqualTo("one");
+        assertThat(cache.get(3L)).isEqualTo("three");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.stats()).isEqualTo(new CacheStats(3, 1, 3, 1));
+    }
+
+    @Test
+    void whenEntryOutlivesTtl_itIsTreatedAsMiss() {
+        cache.put(1L, "one");
+        clock.addAndGet(Duration.ofSeconds(9).toNanos());
+        assertThat(cache.get(1L)).isEqualTo("one");
+
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertThat(cache.get(1L)).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.stats()).isEqualTo(new CacheStats(1, 1, 1, 1));
+    }
+
+    @Test
+    void whenInvalidate_entriesAreRemoved() {
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+
+        cache.invalidate(1L);
+        assertThat(cache.get(1L)).isNull();
+
+        cache.invalidateIf(v -> v.startsWith("t"));
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void whenKeyIsInvalidatedDuringLoad_loadedValueIsNotPut() {
+        long generation = cache.generation(1L);
+        cache.invalidate(1L);
+        assertThat(cache.putIfGeneration(1L, "stale", generation)).isFalse();
+
+        generation = cache.generation(1L);
+        cache.invalidateIf(v -> false);
+        assertThat(cache.putIfGeneration(1L, "stale", generation)).isFalse();
+        assertThat(cache.get(1L)).isNull();
+
+        generation = cache.generation(1L);
+        assertThat(cache.putIfGeneration(1L, "fresh", generation)).isTrue();
+        assertThat(cache.get(1L)).isEqualTo("fresh");
+    }
+
+    @Test
+    void whenSizeIsNotPositive_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BoundedCache<Long, String>("test", 0, Duration.ofSeconds(1)));
+    }
+}
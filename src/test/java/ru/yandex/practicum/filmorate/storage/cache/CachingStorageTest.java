@@ -0,0 +1,155 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.GenreName;
+import ru.yandex.practicum.filmorate.model.RatingName;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newFilm;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newUser;
+
+@SpringBootTest(properties = "filmorate.cache.enabled=true")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(
+        scripts = "classpath:db/clean-films.sql",
+        executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD
+)
+class CachingStorageTest {
+
+    @Qualifier("filmDbStorage")
+    private final FilmStorage filmStorage;
+    @Qualifier("userDbStorage")
+    private final UserStorage userStorage;
+    private final CachingStoragePostProcessor cachingStoragePostProcessor;
+    private final TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void clearCaches() {
+        cachingStoragePostProcessor.getFilmCache().invalidateAll();
+        cachingStoragePostProcessor.getUserCache().invalidateAll();
+    }
+
+    @Test
+    void whenCacheEnabled_dbStoragesAreDecorated() {
+        assertThat(filmStorage).isInstanceOf(CachingFilmStorage.class);
+        assertThat(userStorage).isInstanceOf(CachingUserStorage.class);
+    }
+
+    @Test
+    void whenFindFilmByIdTwice_secondReadIsServedFromCache() {
+        BoundedCache<Long, Film> cache = cachingStoragePostProcessor.getFilmCache();
+        Film film = filmStorage.save(newFilm());
+        cache.invalidate(film.getId());
+        long hits = cache.stats().getHits();
+
+        Film first = filmStorage.findFilmById(film.getId()).get();
+        first.setName("changed by caller");
+        Film second = filmStorage.findFilmById(film.getId()).get();
+
+        assertThat(cache.stats().getHits()).isEqualTo(hits + 1);
+        assertThat(second.getName()).isEqualTo(film.getName());
+    }
+
+    @Test
+    void whenCallerChangesGenresOrRatingOfCopy_cachedFilmIsUntouched() {
+        Film film = filmStorage.save(newFilm().toBuilder()
+                .genres(List.of(Genre.builder().id(1L).build()))
+                .build());
+        Film first = filmStorage.findFilmById(film.getId()).get();
+        GenreName genreName = first.getGenres().get(0).getName();
+        RatingName ratingName = first.getMpa().getName();
+
+        Film second = filmStorage.findFilmById(film.getId()).get();
+        second.getGenres().get(0).setName(GenreName.THRILLER);
+        second.getMpa().setName(RatingName.NC_17);
+        Film third = filmStorage.findFilmById(film.getId()).get();
+
+        assertThat(third.getGenres()).extracting(Genre::getName).containsExactly(genreName);
+        assertThat(third.getMpa().getName()).isEqualTo(ratingName);
+    }
+
+    @Test
+    void whenFilmIsLikedOrUpdated_cachedFilmIsInvalidated() {
+        User user = userStorage.save(newUser());
+        Film film = filmStorage.save(newFilm());
+        filmStorage.findFilmById(film.getId());
+
+        filmStorage.addUserLikeToFilm(user.getId(), film.getId());
+        assertThat(filmStorage.findFilmById(film.getId()).get().getUserLikes())
+                .containsExactly(user.getId());
+
+        filmStorage.removeUserLike(user.getId(), film.getId());
+        assertThat(filmStorage.findFilmById(film.getId()).get().getUserLikes()).isEmpty();
+
+        filmStorage.update(film.setName("updated"));
+        assertThat(filmStorage.findFilmById(film.getId()).get().getName()).isEqualTo("updated");
+    }
+
+    @Test
+    void whenFilmIsReadBeforeUpdateCommits_staleVersionIsNotLeftInCache() {
+        Film film = filmStorage.save(newFilm());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            filmStorage.update(film.toBuilder().name("updated").build());
+            // a concurrent reader misses and loads the row that is still committed
+            Film stale = CompletableFuture
+                    .supplyAsync(() -> filmStorage.findFilmById(film.getId()).orElseThrow())
+                    .join();
+            assertThat(stale.getName()).isEqualTo(film.getName());
+        });
+
+        assertThat(filmStorage.findFilmById(film.getId()).get().getName()).isEqualTo("updated");
+    }
+
+    @Test
+    void whenFriendIsUpdated_usersHavingThatFriendAreInvalidated() {
+        User user = userStorage.save(newUser());
+        User friend = userStorage.save(newUser());
+        userStorage.findUserById(user.getId());
+
+        userStorage.addFriendForUser(user.getId(), friend.getId());
+        assertThat(userStorage.findUserById(user.getId()).get().getFriends())
+                .extracting(User::getId).containsExactly(friend.getId());
+
+        userStorage.update(friend.setName("renamed"));
+        assertThat(userStorage.findUserById(user.getId()).get().getFriends())
+                .extracting(User::getName).containsExactly("renamed");
+
+        userStorage.removeFriendForUser(user.getId(), friend.getId());
+        assertThat(userStorage.findUserById(user.getId()).get().getFriends()).isEmpty();
+    }
+
+    @Test
+    void whenUserIsDeleted_cachedFilmLosesItsLike() {
+        User user = userStorage.save(newUser());
+        User friend = userStorage.save(newUser().setLogin("friend"));
+        Film film = filmStorage.save(newFilm()
+                .setUserLikes(new HashSet<>(Set.of(user.getId(), friend.getId()))));
+        assertThat(filmStorage.findFilmById(film.getId()).get().getUserLikes())
+                .containsExactlyInAnyOrder(user.getId(), friend.getId());
+
+        userStorage.deleteUser(user.getId());
+
+        assertThat(filmStorage.findFilmById(film.getId()).get().getUserLikes())
+                .containsExactly(friend.getId());
+    }
+}
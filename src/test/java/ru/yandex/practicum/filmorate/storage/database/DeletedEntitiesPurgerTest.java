@@ -0,0 +1,118 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newFilm;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newUser;
+
+@SpringBootTest(properties = {
+        "filmorate.purge.enabled=false",
+        "filmorate.purge.batch-size=2",
+        "filmorate.purge.batch-pause-ms=0",
+        "filmorate.popularity-index.enabled=true",
+        "filmorate.friendship-graph.enabled=true"
+})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(
+        scripts = "classpath:db/clean-films.sql",
+        executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD
+)
+class DeletedEntitiesPurgerTest {
+
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final DeletedEntitiesPurger purger;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    void whenDeleteFilm_itDisappearsAtOnceAndItsRowsArePurgedLater() {
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            userIds.add(userDbStorage.save(newUser().setLogin("user" + i)).getId());
+        }
+        Film film = filmDbStorage.save(newFilm()
+                .setGenres(List.of(Genre.builder().id(1L).build(), Genre.builder().id(2L).build()))
+                .setUserLikes(new HashSet<>(userIds)));
+
+        filmDbStorage.deleteFilm(film.getId());
+
+        assertThat(filmDbStorage.findFilmById(film.getId())).isEmpty();
+        assertThat(filmDbStorage.findAll()).extracting(Film::getId).doesNotContain(film.getId());
+        assertThat(filmDbStorage.getMostPopularFilms(10)).extracting(Film::getId).doesNotContain(film.getId());
+        assertThrows(ResourceNotFoundException.class,
+                () -> filmDbStorage.addUserLikeToFilm(userIds.get(0), film.getId()));
+        assertThrows(ResourceNotFoundException.class, () -> filmDbStorage.deleteFilm(film.getId()));
+        assertThat(count("SELECT COUNT(*) FROM FilmUserLikes WHERE film_id = ?", film.getId())).isEqualTo(5);
+
+        assertThat(purger.purge()).isEqualTo(1);
+
+        assertThat(count("SELECT COUNT(*) FROM FilmUserLikes WHERE film_id = ?", film.getId())).isZero();
+        assertThat(count("SELECT COUNT(*) FROM FilmGenre WHERE film_id = ?", film.getId())).isZero();
+        assertThat(count("SELECT COUNT(*) FROM Films WHERE id = ?", film.getId())).isZero();
+    }
+
+    @Test
+    void whenDeleteUser_friendListsHideItAndPurgeRemovesItsLikesAndFriendships() {
+        User user = userDbStorage.save(newUser());
+        User friend = userDbStorage.save(newUser().setLogin("friend"));
+        userDbStorage.addFriendForUser(user.getId(), friend.getId());
+        userDbStorage.addFriendForUser(friend.getId(), user.getId());
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            films.add(filmDbStorage.save(newFilm().setName("Film " + i)
+                    .setUserLikes(new HashSet<>(Set.of(user.getId(), friend.getId())))));
+        }
+
+        userDbStorage.deleteUser(user.getId());
+
+        assertThat(userDbStorage.findUserById(user.getId())).isEmpty();
+        assertThat(userDbStorage.getFriends(friend.getId())).isEmpty();
+        assertThat(userDbStorage.findUserById(friend.getId()).get().getFriends()).isEmpty();
+        assertThrows(ResourceNotFoundException.class,
+                () -> userDbStorage.addFriendForUser(friend.getId(), user.getId()));
+        assertThrows(ResourceNotFoundException.class,
+                () -> filmDbStorage.addUserLikeToFilm(user.getId(), films.get(0).getId()));
+        for (Film film : films) {
+            assertThat(filmDbStorage.findFilmById(film.getId()).get().getUserLikes())
+                    .containsExactly(friend.getId());
+            assertThat(filmDbStorage.findFilmSummaryById(film.getId()).get().getLikesCount()).isEqualTo(1);
+        }
+        assertThat(filmDbStorage.getMostPopularFilms(10))
+                .allSatisfy(film -> assertThat(film.getUserLikes()).containsExactly(friend.getId()));
+        assertThat(count("SELECT COUNT(*) FROM FilmUserLikes WHERE user_id = ?", user.getId())).isEqualTo(5);
+
+        assertThat(purger.purge()).isEqualTo(1);
+
+        for (Film film : films) {
+            Film stored = filmDbStorage.findFilmById(film.getId()).get();
+            assertThat(stored.getUserLikes()).containsExactly(friend.getId());
+            assertThat(count("SELECT likes_count FROM Films WHERE id = ?", film.getId())).isEqualTo(1);
+        }
+        assertThat(count("SELECT COUNT(*) FROM FilmUserLikes WHERE user_id = ?", user.getId())).isZero();
+        assertThat(count("SELECT COUNT(*) FROM FriendshipStatus WHERE user_id = ? OR friend_id = ?",
+                user.getId(), user.getId())).isZero();
+        assertThat(count("SELECT COUNT(*) FROM Users WHERE id = ?", user.getId())).isZero();
+    }
+
+    private long count(String sql, Object... args) {
+        return jdbcTemplate.queryForObject(sql, Long.class, args);
+    }
+}
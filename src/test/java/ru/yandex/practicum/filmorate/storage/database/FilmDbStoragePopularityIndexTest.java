@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newFilm;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newUser;
+
+@SpringBootTest(properties = "filmorate.popularity-index.enabled=true")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(
+        scripts = "classpath:db/clean-films.sql",
+        executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD
+)
+class FilmDbStoragePopularityIndexTest {
+
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+
+    @Test
+    void whenPopularityIndexEnabled_mostPopularFilmsFollowLikes() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+        Film film2 = filmDbStorage.save(newFilm().setUserLikes(Set.of(user.getId())));
+        Film film3 = filmDbStorage.save(newFilm());
+
+        List<Film> popular = filmDbStorage.getMostPopularFilms(2);
+        assertThat(popular).extracting(Film::getId).containsExactly(film2.getId(), film.getId());
+
+        filmDbStorage.addUserLikeToFilm(user.getId(), film3.getId());
+        filmDbStorage.addUserLikeToFilm(user2.getId(), film3.getId());
+        popular = filmDbStorage.getMostPopularFilms(3);
+        assertThat(popular).extracting(Film::getId)
+                .containsExactly(film3.getId(), film2.getId(), film.getId());
+        assertThat(popular.get(0).getUserLikes()).containsExactlyInAnyOrder(user.getId(), user2.getId());
+
+        filmDbStorage.removeUserLike(user.getId(), film3.getId());
+        filmDbStorage.removeUserLike(user2.getId(), film3.getId());
+        popular = filmDbStorage.getMostPopularFilms(1);
+        assertThat(popular).extracting(Film::getId).containsExactly(film2.getId());
+    }
+
+    @Test
+    void whenRebuildPopularityIndex_likesAreReadFromDb() {
+        User user = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+        Film film2 = filmDbStorage.save(newFilm().setUserLikes(Set.of(user.getId())));
+
+        filmDbStorage.rebuildPopularityIndex();
+
+        List<Film> popular = filmDbStorage.getMostPopularFilms(10);
+        assertThat(popular).extracting(Film::getId).containsExactly(film2.getId(), film.getId());
+    }
+}
@@ -1,18 +1,27 @@
 package ru.yandex.practicum.filmorate.storage.database;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.testutil.TestConstants;
 
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -31,6 +40,8 @@ class FilmDbStorageTest {
 
     private final FilmDbStorage filmDbStorage;
     private final UserDbStorage userDbStorage;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
 
     @Test
     void whenFindFilmById_ifFilmExistsInDb_returnsNonEmptyOptional() {
@@ -43,6 +54,34 @@ class FilmDbStorageTest {
         assertThat(retrieved).isEqualTo(film);
     }
 
+    @Test
+    void whenFindFilmWithSeveralGenresAndLikes_genresAreNotMultipliedByLikes() {
+        List<Genre> genres = List.of(
+                Genre.builder().id(1L).name(GenreName.COMEDY).build(),
+                Genre.builder().id(2L).name(GenreName.DRAMA).build(),
+                Genre.builder().id(4L).name(GenreName.THRILLER).build()
+        );
+        Film film = filmDbStorage.save(newFilm().setGenres(genres));
+        Set<Long> userIds = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            User user = userDbStorage.save(newUser());
+            filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+            userIds.add(user.getId());
+        }
+
+        Film byId = filmDbStorage.findFilmById(film.getId()).get();
+        assertThat(byId.getGenres()).isEqualTo(genres);
+        assertThat(byId.getUserLikes()).isEqualTo(userIds);
+
+        Film fromAll = filmDbStorage.findAll().get(0);
+        assertThat(fromAll.getGenres()).isEqualTo(genres);
+        assertThat(fromAll.getUserLikes()).isEqualTo(userIds);
+
+        Film popular = filmDbStorage.getMostPopularFilms(1).get(0);
+        assertThat(popular.getGenres()).isEqualTo(genres);
+        assertThat(popular.getLikesCount()).isEqualTo(userIds.size());
+    }
+
     @Test
     void whenFindNonExistingFilmById_returnsEmptyOptional() {
         Optional<Film> filmById = filmDbStorage.findFilmById(100L);
@@ -177,6 +216,31 @@ class FilmDbStorageTest {
         );
     }
 
+    @Test
+    void whenAddSameUserLikeTwice_secondIsNoOp() {
+        User user = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+
+        filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+        filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+
+        assertThat(filmDbStorage.findFilmSummaryById(film.getId()).get().getLikesCount()).isEqualTo(1);
+    }
+
+    @Test
+    void whenAddUserLikeWithMissingReference_messageNamesMissingEntity() {
+        User user = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+
+        ResourceNotFoundException noUser = assertThrows(ResourceNotFoundException.class,
+                () -> filmDbStorage.addUserLikeToFilm(-5L, film.getId()));
+        ResourceNotFoundException noFilm = assertThrows(ResourceNotFoundException.class,
+                () -> filmDbStorage.addUserLikeToFilm(user.getId(), -7L));
+
+        assertThat(noUser.getMessage()).isEqualTo("User with ID: -5 is not found.");
+        assertThat(noFilm.getMessage()).isEqualTo("Film with ID: -7 is not found.");
+    }
+
     @Test
     void whenAddUserLikeToNonExistingFilm_throws() {
         assertThrows(
@@ -195,6 +259,182 @@ class FilmDbStorageTest {
         assertThat(all).containsExactly(filmOne(), filmTwo(), filmThree());
     }
 
+    @Test
+    void whenFindPage_returnsFilmsAfterCursorOrderedById() {
+        Film first = filmDbStorage.save(newFilm());
+        Film second = filmDbStorage.save(newFilm());
+        Film third = filmDbStorage.save(newFilm());
+
+        List<Film> firstPage = filmDbStorage.findPage(0, 2);
+        assertThat(firstPage).extracting(Film::getId).containsExactly(first.getId(), second.getId());
+
+        List<Film> secondPage = filmDbStorage.findPage(second.getId(), 2);
+        assertThat(secondPage).extracting(Film::getId).containsExactly(third.getId());
+
+        assertThat(filmDbStorage.findPage(third.getId(), 2)).isEmpty();
+    }
+
+    @Test
+    void whenFindPageOfFilmsWithGenresAndLikes_limitAppliesToFilmsNotRows() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        Film first = newFilm().setGenres(List.of(
+                Genre.builder().id(1L).name(GenreName.COMEDY).build(),
+                Genre.builder().id(2L).name(GenreName.DRAMA).build()
+        ));
+        first = filmDbStorage.save(first);
+        filmDbStorage.addUserLikeToFilm(user.getId(), first.getId());
+        filmDbStorage.addUserLikeToFilm(user2.getId(), first.getId());
+        Film second = filmDbStorage.save(newFilm());
+
+        List<Film> page = filmDbStorage.findPage(0, 2);
+        assertThat(page).extracting(Film::getId).containsExactly(first.getId(), second.getId());
+        assertThat(page.get(0).getGenres()).hasSize(2);
+        assertThat(page.get(0).getUserLikes()).containsExactlyInAnyOrder(user.getId(), user2.getId());
+    }
+
+    @Test
+    void whenFindFilmSummaries_returnsLikesCountsAndGenresWithoutUserLikes() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        Film liked = filmDbStorage.save(newFilm().setGenres(List.of(
+                Genre.builder().id(1L).name(GenreName.COMEDY).build()
+        )));
+        filmDbStorage.addUserLikeToFilm(user.getId(), liked.getId());
+        filmDbStorage.addUserLikeToFilm(user2.getId(), liked.getId());
+        Film notLiked = filmDbStorage.save(newFilm());
+
+        List<FilmSummary> popular = filmDbStorage.getMostPopularFilmSummaries(1);
+        assertThat(popular).extracting(FilmSummary::getId).containsExactly(liked.getId());
+        assertThat(popular.get(0).getLikesCount()).isEqualTo(2);
+        assertThat(popular.get(0).getGenres()).extracting(Genre::getId).containsExactly(1L);
+        assertThat(popular.get(0).getMpa()).isEqualTo(liked.getMpa());
+
+        List<FilmSummary> page = filmDbStorage.findSummariesPage(liked.getId() - 1, 2);
+        assertThat(page).extracting(FilmSummary::getId).containsExactly(liked.getId(), notLiked.getId());
+        assertThat(page).extracting(FilmSummary::getLikesCount).containsExactly(2L, 0L);
+        assertThat(filmDbStorage.findAllSummaries()).extracting(FilmSummary::getId)
+                .contains(liked.getId(), notLiked.getId());
+        assertThat(filmDbStorage.findFilmSummaryById(liked.getId()))
+                .hasValueSatisfying(f -> assertThat(f.getLikesCount()).isEqualTo(2));
+        assertThat(filmDbStorage.findFilmSummaryById(-1L)).isEmpty();
+    }
+
+    @Test
+    void whenAddUserLikesInBulk_insertsNewLikesAndCountsDuplicates() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+        Film film2 = filmDbStorage.save(newFilm());
+        filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+
+        BulkReport report = filmDbStorage.addUserLikes(List.of(
+                FilmLike.builder().filmId(film.getId()).userId(user.getId()).build(),
+                FilmLike.builder().filmId(film.getId()).userId(user2.getId()).build(),
+                FilmLike.builder().filmId(film2.getId()).userId(user2.getId()).build(),
+                FilmLike.builder().filmId(film2.getId()).userId(user2.getId()).build(),
+                FilmLike.builder().filmId(-1L).userId(user.getId()).build(),
+                FilmLike.builder().filmId(film.getId()).userId(-1L).build()
+        ));
+
+        assertThat(report.getAccepted()).isEqualTo(2);
+        assertThat(report.getDuplicates()).isEqualTo(2);
+        assertThat(report.getErrors()).extracting(BulkReport.ItemError::getIndex).containsExactly(4L, 5L);
+        assertThat(filmDbStorage.findFilmById(film.getId()).get().getUserLikes())
+                .containsExactlyInAnyOrder(user.getId(), user2.getId());
+        assertThat(filmDbStorage.findFilmSummaryById(film.getId()).get().getLikesCount()).isEqualTo(2);
+        assertThat(filmDbStorage.getMostPopularFilms(2)).extracting(Film::getId)
+                .containsExactly(film.getId(), film2.getId());
+    }
+
+    @Test
+    void whenSaveAll_savesFilmsWithGenresAndLikesInOneBatch() {
+        User user = userDbStorage.save(newUser());
+        Film withGenres = newFilm().setGenres(List.of(
+                Genre.builder().id(1L).name(GenreName.COMEDY).build(),
+                Genre.builder().id(1L).name(GenreName.COMEDY).build(),
+                Genre.builder().id(2L).name(GenreName.DRAMA).build()
+        ));
+        Film withLikes = newFilm().setUserLikes(Set.of(user.getId()));
+        Film plain = newFilm().setMpa(null);
+
+        List<Film> saved = filmDbStorage.saveAll(List.of(withGenres, withLikes, plain));
+
+        assertThat(saved).extracting(Film::getId).doesNotContainNull().isSorted();
+        assertThat(filmDbStorage.findFilmById(withGenres.getId()).get().getGenres())
+                .extracting(Genre::getId).containsExactly(1L, 2L);
+        assertThat(filmDbStorage.findFilmById(withLikes.getId()).get().getUserLikes())
+                .containsExactly(user.getId());
+        assertThat(filmDbStorage.findFilmSummaryById(withLikes.getId()).get().getLikesCount()).isEqualTo(1);
+        assertThat(filmDbStorage.findFilmById(plain.getId()).get().getMpa()).isNull();
+    }
+
+    @Test
+    void whenSaveAllWithUnknownUserLike_throwsAndSavesNothing() {
+        Film valid = newFilm();
+        Film invalid = newFilm().setUserLikes(Set.of(-1L));
+        int before = filmDbStorage.findAll().size();
+
+        assertThrows(ResourceNotFoundException.class, () -> filmDbStorage.saveAll(List.of(valid, invalid)));
+        assertThat(filmDbStorage.findAll()).hasSize(before);
+    }
+
+    @Test
+    void whenSaveOrUpdateFilmWithUnknownUserLikes_allMissingIdsAreReported() {
+        User user = userDbStorage.save(newUser());
+        Film film = newFilm().setUserLikes(new HashSet<>(Set.of(user.getId(), -1L, -2L)));
+        int before = filmDbStorage.findAll().size();
+
+        ResourceNotFoundException e = assertThrows(ResourceNotFoundException.class, () -> filmDbStorage.save(film));
+        assertThat(e.getMessage()).startsWith("Users with IDs: ").contains("-1", "-2");
+        assertThat(filmDbStorage.findAll()).hasSize(before);
+
+        Film saved = filmDbStorage.save(newFilm().setUserLikes(new HashSet<>(Set.of(user.getId()))));
+        Film toUpdate = saved.toBuilder().userLikes(new HashSet<>(Set.of(user.getId(), -3L))).build();
+        e = assertThrows(ResourceNotFoundException.class, () -> filmDbStorage.update(toUpdate));
+        assertThat(e.getMessage()).isEqualTo("User with ID: -3 is not found.");
+    }
+
+    @Test
+    void whenExportAll_streamsFilmsOrderedByIdWithGenresAndLikes() {
+        User user = userDbStorage.save(newUser());
+        Film first = filmDbStorage.save(newFilm().setGenres(List.of(
+                Genre.builder().id(1L).name(GenreName.COMEDY).build(),
+                Genre.builder().id(2L).name(GenreName.DRAMA).build()
+        )));
+        Film second = filmDbStorage.save(newFilm());
+        Film third = filmDbStorage.save(newFilm());
+        filmDbStorage.addUserLikeToFilm(user.getId(), first.getId());
+        filmDbStorage.addUserLikeToFilm(user.getId(), third.getId());
+
+        List<Film> exported = new ArrayList<>();
+        filmDbStorage.exportAll(film -> {
+            // all cursors read one snapshot inside a read-only serializable transaction
+            assertThat(TransactionSynchronizationManager.isCurrentTransactionReadOnly()).isTrue();
+            assertThat(TransactionSynchronizationManager.getCurrentTransactionIsolationLevel())
+                    .isEqualTo(Connection.TRANSACTION_SERIALIZABLE);
+            exported.add(film);
+        });
+
+        assertThat(exported).extracting(Film::getId).isSorted()
+                .contains(first.getId(), second.getId(), third.getId());
+        assertThat(exported).filteredOn(f -> f.getId() >= first.getId())
+                .containsExactlyElementsOf(filmDbStorage.findPage(first.getId() - 1, 3));
+    }
+
+    @Test
+    void whenExportConsumerThrows_exportStopsAndExceptionIsPropagated() {
+        filmDbStorage.save(newFilm());
+        filmDbStorage.save(newFilm());
+
+        List<Film> exported = new ArrayList<>();
+        assertThrows(IllegalStateException.class, () -> filmDbStorage.exportAll(film -> {
+            exported.add(film);
+            throw new IllegalStateException("client gone");
+        }));
+        assertThat(exported).hasSize(1);
+    }
+
     @Test
     void whenFindAllOnEmptyDb_returnsEmptyList() {
         List<Film> all = filmDbStorage.findAll();
@@ -271,6 +511,30 @@ class FilmDbStorageTest {
         assertThat(updated.getGenres()).isEqualTo(toUpdate.getGenres());
     }
 
+    @Test
+    void whenUpdateOnlyDescription_likesAndGenresAreNotRewritten() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm()
+                .setGenres(List.of(Genre.builder().id(1L).name(GenreName.COMEDY).build()))
+                .setUserLikes(Set.of(user.getId(), user2.getId())));
+
+        assertThat(rowsWrittenByUpdate(() -> filmDbStorage.update(film))).isZero();
+        assertThat(rowsWrittenByUpdate(() -> filmDbStorage.update(film.setDescription("Fixed typo")))).isEqualTo(1);
+
+        Film changed = filmDbStorage.findFilmById(film.getId()).get()
+                .setGenres(List.of(Genre.builder().id(2L).name(GenreName.DRAMA).build()))
+                .setUserLikes(Set.of(user.getId()));
+        // one genre row removed and one inserted, one like removed plus the likes counter
+        assertThat(rowsWrittenByUpdate(() -> filmDbStorage.update(changed))).isEqualTo(4);
+
+        Film updated = filmDbStorage.findFilmById(film.getId()).get();
+        assertThat(updated.getDescription()).isEqualTo("Fixed typo");
+        assertThat(updated.getGenres()).extracting(Genre::getId).containsExactly(2L);
+        assertThat(updated.getUserLikes()).containsExactly(user.getId());
+        assertThat(filmDbStorage.findFilmSummaryById(film.getId()).get().getLikesCount()).isEqualTo(1);
+    }
+
     @Test
     void whenUpdateNonExistingFilm_throws() {
         Film film = newFilm().setId(100L);
@@ -318,4 +582,60 @@ class FilmDbStorageTest {
         assertThat(retrieved.getMpa()).isEqualTo(TestConstants.NEW_FILM_RATING);
     }
 
-}
\ No newline at end of file
+
+    @Test
+    void whenSaveAndUpdateFilmWithGenreIdsOnly_responseMatchesStoredFilm() {
+        User user = userDbStorage.save(newUser());
+        Film film = newFilm()
+                .setMpa(Rating.builder().id(3L).build())
+                .setGenres(List.of(Genre.builder().id(4L).build(), Genre.builder().id(1L).build()));
+        film.addUserLike(user.getId());
+
+        Film saved = filmDbStorage.save(film);
+        assertThat(saved).usingRecursiveComparison()
+                .isEqualTo(filmDbStorage.findFilmById(saved.getId()).get());
+
+        Film toUpdate = saved.toBuilder()
+                .genres(List.of(Genre.builder().id(2L).build(), Genre.builder().id(2L).build()))
+                .mpa(Rating.builder().id(1L).build())
+                .build();
+        Film updated = filmDbStorage.update(toUpdate);
+        assertThat(updated).usingRecursiveComparison()
+                .isEqualTo(filmDbStorage.findFilmById(saved.getId()).get());
+    }
+
+    private double rowsWrittenByUpdate(Runnable update) {
+        double before = meterRegistry.summary("filmorate.update.rows", "entity", "film").totalAmount();
+        update.run();
+        return meterRegistry.summary("filmorate.update.rows", "entity", "film").totalAmount() - before;
+    }
+
+    @Test
+    void whenSameLikeIsAddedConcurrently_secondLikeIsIgnored() throws Exception {
+        Film film = filmDbStorage.save(newFilm());
+        User user = userDbStorage.save(newUser());
+        CompletableFuture<Void> second = new CompletableFuture<>();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+            // the second like passes NOT EXISTS and waits for the row lock of the first one
+            second.completeAsync(() -> {
+                filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+                return null;
+            });
+            sleep(300);
+        });
+
+        second.get(5, TimeUnit.SECONDS);
+        assertThat(filmDbStorage.findFilmSummaryById(film.getId()).get().getLikesCount()).isEqualTo(1);
+        assertThat(filmDbStorage.findFilmById(film.getId()).get().getUserLikes()).containsExactly(user.getId());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
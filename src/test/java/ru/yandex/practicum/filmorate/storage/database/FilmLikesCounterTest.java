@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newFilm;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newUser;
+
+@SpringBootTest(properties = "filmorate.likes.reconciliation.enabled=false")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(
+        scripts = "classpath:db/clean-films.sql",
+        executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD
+)
+class FilmLikesCounterTest {
+
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final FilmLikesCounter filmLikesCounter;
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlProvider sqlProvider;
+
+    @Test
+    void whenAddAndRemoveUserLikes_likesCountFollowsFilmUserLikes() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+
+        filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+        filmDbStorage.addUserLikeToFilm(user2.getId(), film.getId());
+        assertThat(likesCountOf(film)).isEqualTo(2);
+
+        filmDbStorage.removeUserLike(user.getId(), film.getId());
+        filmDbStorage.removeUserLike(user.getId(), film.getId());
+        assertThat(likesCountOf(film)).isEqualTo(1);
+    }
+
+    @Test
+    void whenSaveAndUpdateFilmWithUserLikes_likesCountEqualsNumberOfLikes() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm().setUserLikes(Set.of(user.getId(), user2.getId())));
+        assertThat(likesCountOf(film)).isEqualTo(2);
+
+        filmDbStorage.update(film.setUserLikes(Set.of(user.getId())));
+        assertThat(likesCountOf(film)).isEqualTo(1);
+    }
+
+    @Test
+    void whenLikesCountDrifts_reconcileRestoresIt() {
+        User user = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+        Film other = filmDbStorage.save(newFilm());
+        filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+        jdbcTemplate.update("UPDATE Films SET likes_count = 42 WHERE id = ?", film.getId());
+
+        int fixed = filmLikesCounter.reconcile();
+
+        assertThat(fixed).isEqualTo(1);
+        assertThat(likesCountOf(film)).isEqualTo(1);
+        assertThat(likesCountOf(other)).isEqualTo(0);
+    }
+
+    @Test
+    void whenStripesArePending_reconcileCorrectsOnlyTheDrift() {
+        FilmLikesCounter striped = new FilmLikesCounter(jdbcTemplate, sqlProvider, 4);
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm().setUserLikes(Set.of(user.getId())));
+        jdbcTemplate.update("INSERT INTO FilmUserLikes (film_id, user_id) VALUES (?, ?)", film.getId(), user2.getId());
+        striped.add(film.getId(), 1);
+        jdbcTemplate.update("UPDATE Films SET likes_count = 5 WHERE id = ?", film.getId());
+
+        assertThat(striped.reconcile()).isEqualTo(1);
+        assertThat(likesCountOf(film)).isEqualTo(1);
+
+        striped.foldStripes();
+        assertThat(likesCountOf(film)).isEqualTo(2);
+        assertThat(striped.reconcile()).isZero();
+    }
+
+    @Test
+    void whenCounterIsStriped_likesAreAccumulatedInStripesUntilFolded() {
+        FilmLikesCounter striped = new FilmLikesCounter(jdbcTemplate, sqlProvider, 4);
+        Film film = filmDbStorage.save(newFilm());
+        Film other = filmDbStorage.save(newFilm());
+
+        for (int i = 0; i < 10; i++) {
+            striped.add(film.getId(), 1);
+        }
+        striped.add(other.getId(), 1);
+        striped.add(film.getId(), -3);
+        assertThat(likesCountOf(film)).isEqualTo(0);
+
+        striped.foldStripes();
+        assertThat(likesCountOf(film)).isEqualTo(7);
+        assertThat(likesCountOf(other)).isEqualTo(1);
+        assertThat(striped.foldStripes()).isZero();
+
+        List<Film> popular = filmDbStorage.getMostPopularFilms(2);
+        assertThat(popular).extracting(Film::getId).containsExactly(film.getId(), other.getId());
+    }
+
+    private long likesCountOf(Film film) {
+        return jdbcTemplate.queryForObject(
+                "SELECT likes_count FROM Films WHERE id = ?", Long.class, film.getId());
+    }
+}
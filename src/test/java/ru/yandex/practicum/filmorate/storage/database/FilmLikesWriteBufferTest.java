@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newFilm;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newUser;
+
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.flush-interval-ms=3600000",
+        "filmorate.likes.write-behind.max-pending=3",
+        "filmorate.popularity-index.enabled=true"
+})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(
+        scripts = "classpath:db/clean-films.sql",
+        executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD
+)
+class FilmLikesWriteBufferTest {
+
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final FilmLikesWriteBuffer likesWriteBuffer;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Test
+    void whenLikeIsBuffered_readsSeeItBeforeFlushAndDbAfterFlush() {
+        User user = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+
+        filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+
+        assertThat(storedLikes(film)).isZero();
+        assertThat(filmDbStorage.findFilmById(film.getId()).get().getUserLikes()).containsExactly(user.getId());
+
+        likesWriteBuffer.flush();
+
+        assertThat(likesWriteBuffer.depth()).isZero();
+        assertThat(storedLikes(film)).isEqualTo(1);
+        assertThat(likesCount(film)).isEqualTo(1);
+        assertThat(filmDbStorage.getMostPopularFilms(1)).extracting(Film::getId).containsExactly(film.getId());
+    }
+
+    @Test
+    void whenLikeAndUnlikeAreBuffered_theyCoalesce() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm().setUserLikes(Set.of(user2.getId())));
+
+        filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+        filmDbStorage.removeUserLike(user.getId(), film.getId());
+        filmDbStorage.removeUserLike(user2.getId(), film.getId());
+        filmDbStorage.addUserLikeToFilm(user2.getId(), film.getId());
+        assertThat(likesWriteBuffer.depth()).isEqualTo(2);
+        assertThat(filmDbStorage.findFilmById(film.getId()).get().getUserLikes()).containsExactly(user2.getId());
+
+        likesWriteBuffer.flush();
+
+        assertThat(storedLikes(film)).isEqualTo(1);
+        assertThat(likesCount(film)).isEqualTo(1);
+    }
+
+    @Test
+    void whenBufferIsFull_callerFlushesIt() {
+        Film film = filmDbStorage.save(newFilm());
+        for (int i = 0; i < 4; i++) {
+            User user = userDbStorage.save(newUser());
+            filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+        }
+
+        assertThat(likesWriteBuffer.depth()).isEqualTo(1);
+        assertThat(storedLikes(film)).isEqualTo(3);
+        assertThat(filmDbStorage.findFilmById(film.getId()).get().getUserLikes()).hasSize(4);
+        likesWriteBuffer.flush();
+    }
+
+    @Test
+    void whenCallerTransactionRollsBack_likesFlushedByBackpressureStayWritten() {
+        Film film = filmDbStorage.save(newFilm());
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            users.add(userDbStorage.save(newUser()));
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            users.forEach(user -> filmDbStorage.addUserLikeToFilm(user.getId(), film.getId()));
+            status.setRollbackOnly();
+        });
+
+        assertThat(storedLikes(film)).isEqualTo(3);
+        assertThat(likesCount(film)).isEqualTo(3);
+        likesWriteBuffer.flush();
+    }
+
+    @Test
+    void whenFilmIsUpdated_bufferedLikesOfFilmAreDiscarded() {
+        User user = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+        filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+
+        filmDbStorage.update(film);
+        likesWriteBuffer.flush();
+
+        assertThat(likesWriteBuffer.depth()).isZero();
+        assertThat(storedLikes(film)).isZero();
+    }
+
+    @Test
+    void whenFilmUpdateOrDeleteRollsBack_bufferedLikesAreKept() {
+        User user = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm());
+        filmDbStorage.addUserLikeToFilm(user.getId(), film.getId());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            filmDbStorage.update(film);
+            filmDbStorage.deleteFilm(film.getId());
+            status.setRollbackOnly();
+        });
+        likesWriteBuffer.flush();
+
+        assertThat(storedLikes(film)).isEqualTo(1);
+    }
+
+    @Test
+    void whenLikesAreImportedInBulk_bufferedUnlikeIsWrittenFirst() {
+        User user = userDbStorage.save(newUser());
+        Film film = filmDbStorage.save(newFilm().setUserLikes(Set.of(user.getId())));
+        filmDbStorage.removeUserLike(user.getId(), film.getId());
+
+        filmDbStorage.addUserLikes(List.of(FilmLike.builder().filmId(film.getId()).userId(user.getId()).build()));
+        likesWriteBuffer.flush();
+
+        assertThat(storedLikes(film)).isEqualTo(1);
+        assertThat(likesCount(film)).isEqualTo(1);
+    }
+
+    private long storedLikes(Film film) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM FilmUserLikes WHERE film_id = ?", Long.class, film.getId());
+    }
+
+    private long likesCount(Film film) {
+        return jdbcTemplate.queryForObject(
+                "SELECT likes_count FROM Films WHERE id = ?", Long.class, film.getId());
+    }
+}
@@ -43,6 +43,16 @@ class GenreDbStorageTest {
         assertThat(genre).isEqualTo(expected);
     }
 
+    @Test
+    void getGenreById_returnsCopyThatDoesNotChangeDictionary() {
+        Genre first = genreDbStorage.getById(2L).get();
+        first.setName(GenreName.ACTION);
+        genreDbStorage.findAll().get(1).setName(GenreName.ACTION);
+
+        assertThat(genreDbStorage.getById(2L).get().getName()).isEqualTo(GenreName.DRAMA);
+        assertThat(genreDbStorage.findAll()).element(1).extracting(Genre::getName).isEqualTo(GenreName.DRAMA);
+    }
+
     @Test
     void getGenreById_returnsEmptyOptionalIfIdNotFoundInDb() {
         Optional<Genre> byId = genreDbStorage.getById(10L);
@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.database.dbutils.SqlProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newFilm;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newUser;
+
+@SpringBootTest(properties = {
+        "filmorate.ids.hilo.enabled=true",
+        "filmorate.ids.hilo.block-size=10"
+})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(
+        scripts = "classpath:db/clean-films.sql",
+        executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD
+)
+class HiLoIdGeneratorsTest {
+
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlProvider sqlProvider;
+
+    @Test
+    void whenSaveFilmsAndUsers_idsComeFromBlocksAndAreReadBack() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser().setLogin("second"));
+        assertThat(user2.getId()).isEqualTo(user.getId() + 1);
+
+        Film film = filmDbStorage.save(newFilm().setUserLikes(Set.of(user.getId())));
+        assertThat(filmDbStorage.findFilmById(film.getId()).get().getUserLikes()).containsExactly(user.getId());
+    }
+
+    @Test
+    void whenSaveAll_filmsWithGenresAndLikesAreInsertedWithPreassignedIds() {
+        User user = userDbStorage.save(newUser());
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            films.add(newFilm().setName("Film " + i)
+                    .setGenres(List.of(Genre.builder().id(1L).build()))
+                    .setUserLikes(Set.of(user.getId())));
+        }
+
+        List<Film> saved = filmDbStorage.saveAll(films);
+
+        Set<Long> ids = saved.stream().map(Film::getId).collect(Collectors.toSet());
+        assertThat(ids).hasSize(25);
+        for (Film film : saved) {
+            Film stored = filmDbStorage.findFilmById(film.getId()).get();
+            assertThat(stored.getName()).isEqualTo(film.getName());
+            assertThat(stored.getGenres()).extracting(Genre::getId).containsExactly(1L);
+            assertThat(stored.getUserLikes()).containsExactly(user.getId());
+        }
+    }
+
+    @Test
+    void whenManyThreadsTakeIds_blocksDoNotOverlap() throws InterruptedException {
+        SequenceIdGenerator generator = new SequenceIdGenerator(jdbcTemplate,
+                sqlProvider.provideNextFilmIdBlockSql(), 7);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    ids.add(generator.nextId());
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(ids).hasSize(8 * 500);
+    }
+
+    @Test
+    void whenRowsExistAboveTheSequence_generatorSkipsPastThem() {
+        SequenceIdGenerator generator = new SequenceIdGenerator(jdbcTemplate,
+                sqlProvider.provideNextUserIdBlockSql(), 10);
+        generator.skipPast(1_000_000L, sqlProvider::provideRestartUserIdBlocksSql);
+        assertThat(generator.nextId()).isGreaterThan(1_000_000L);
+    }
+}
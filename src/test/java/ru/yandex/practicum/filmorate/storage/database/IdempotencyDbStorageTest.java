@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.IdempotencyRecord;
+import ru.yandex.practicum.filmorate.storage.IdempotencyStorage;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "filmorate.idempotency.db.enabled=true")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class IdempotencyDbStorageTest {
+
+    private final IdempotencyDbStorage storage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void clean() {
+        jdbcTemplate.update("DELETE FROM IdempotencyKeys");
+    }
+
+    @Test
+    void keyColumnLength_matchesStorageMaxKeyLength() {
+        Integer length = jdbcTemplate.queryForObject("SELECT CHARACTER_MAXIMUM_LENGTH FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_NAME = 'IDEMPOTENCYKEYS' AND COLUMN_NAME = 'ID_KEY'", Integer.class);
+
+        assertThat(length).isEqualTo(IdempotencyStorage.MAX_KEY_LENGTH);
+    }
+
+    @Test
+    void whenSavedTwice_firstRecordStays() {
+        storage.save("films:1", new IdempotencyRecord("hash-1", "{\"id\":1}"));
+        storage.save("films:1", new IdempotencyRecord("hash-2", "{\"id\":2}"));
+
+        assertThat(storage.find("films:1")).contains(new IdempotencyRecord("hash-1", "{\"id\":1}"));
+    }
+
+    @Test
+    void whenRecordExpired_notFoundAndDeleted() {
+        storage.save("films:2", new IdempotencyRecord("hash", "{}"));
+        jdbcTemplate.update("UPDATE IdempotencyKeys SET created_at = ?", LocalDateTime.now().minusDays(2));
+
+        assertThat(storage.find("films:2")).isEmpty();
+        storage.deleteExpired();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM IdempotencyKeys", Integer.class)).isZero();
+    }
+
+    @Test
+    void whenRecordExpiredButNotDeletedYet_newRecordReplacesIt() {
+        storage.save("films:3", new IdempotencyRecord("hash-1", "{\"id\":1}"));
+        jdbcTemplate.update("UPDATE IdempotencyKeys SET created_at = ?", LocalDateTime.now().minusDays(2));
+
+        storage.save("films:3", new IdempotencyRecord("hash-2", "{\"id\":2}"));
+
+        assertThat(storage.find("films:3")).contains(new IdempotencyRecord("hash-2", "{\"id\":2}"));
+    }
+}
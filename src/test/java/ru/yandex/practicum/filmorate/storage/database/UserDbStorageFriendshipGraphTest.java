@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.newUser;
+
+@SpringBootTest(properties = "filmorate.friendship-graph.enabled=true")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(
+        scripts = "classpath:db/clean-users.sql",
+        executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD
+)
+class UserDbStorageFriendshipGraphTest {
+
+    private final UserDbStorage userDbStorage;
+
+    @Test
+    void whenFriendshipGraphEnabled_friendsAndCommonFriendsFollowWrites() {
+        User user = userDbStorage.save(newUser());
+        User user2 = userDbStorage.save(newUser());
+        User common = userDbStorage.save(newUser());
+        User other = userDbStorage.save(newUser());
+        userDbStorage.addFriendForUser(user.getId(), common.getId());
+        userDbStorage.addFriendForUser(user.getId(), other.getId());
+        userDbStorage.addFriendForUser(user2.getId(), common.getId());
+
+        assertThat(userDbStorage.getFriends(user.getId()))
+                .extracting(User::getId).containsExactly(common.getId(), other.getId());
+        assertThat(userDbStorage.getCommonFriendsForUser(user.getId(), user2.getId()))
+                .extracting(User::getId).containsExactly(common.getId());
+
+        userDbStorage.removeFriendForUser(user2.getId(), common.getId());
+        assertThat(userDbStorage.getCommonFriendsForUser(user.getId(), user2.getId())).isEmpty();
+
+        userDbStorage.update(user2.setFriends(Set.of(other)));
+        assertThat(userDbStorage.getCommonFriendsForUser(user.getId(), user2.getId()))
+                .extracting(User::getId).containsExactly(other.getId());
+    }
+
+    @Test
+    void whenRebuildFriendshipGraph_friendshipsAreReadFromDb() {
+        User user = userDbStorage.save(newUser());
+        User friend = userDbStorage.save(newUser());
+        User withFriend = userDbStorage.save(newUser().setFriends(Set.of(friend)));
+        userDbStorage.addFriendForUser(user.getId(), friend.getId());
+
+        userDbStorage.rebuildFriendshipGraph();
+
+        assertThat(userDbStorage.getFriends(user.getId()))
+                .extracting(User::getId).containsExactly(friend.getId());
+        assertThat(userDbStorage.getCommonFriendsForUser(user.getId(), withFriend.getId()))
+                .extracting(User::getId).containsExactly(friend.getId());
+    }
+}
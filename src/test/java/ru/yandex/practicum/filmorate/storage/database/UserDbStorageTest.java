@@ -1,5 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.database;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,8 +10,11 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.jdbc.Sql;
 import ru.yandex.practicum.filmorate.exception.ResourceAlreadyExistsException;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.model.BulkReport;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -28,6 +33,7 @@ import static ru.yandex.practicum.filmorate.testutil.TestDataProvider.*;
 class UserDbStorageTest {
 
     private final UserDbStorage userDbStorage;
+    private final MeterRegistry meterRegistry;
 
     @Test
     void whenFindExistingUserById_returnsNonEmptyOptional() {
@@ -40,6 +46,33 @@ class UserDbStorageTest {
         assertThat(retrieved).isEqualTo(user);
     }
 
+    @Test
+    void whenAddFriendsInBulk_reportsAcceptedDuplicateAndRejectedEdges() {
+        User user = userDbStorage.save(newUser());
+        User friend = userDbStorage.save(newUser());
+        User other = userDbStorage.save(newUser());
+        userDbStorage.addFriendForUser(user.getId(), friend.getId());
+
+        BulkReport report = userDbStorage.addFriends(List.of(
+                friendship(user.getId(), friend.getId()),
+                friendship(user.getId(), other.getId()),
+                friendship(user.getId(), other.getId()),
+                friendship(other.getId(), user.getId()),
+                friendship(user.getId(), user.getId()),
+                friendship(user.getId(), -1L),
+                friendship(null, user.getId())
+        ));
+
+        assertThat(report.getAccepted()).isEqualTo(2);
+        assertThat(report.getDuplicates()).isEqualTo(2);
+        assertThat(report.getRejected()).isEqualTo(3);
+        assertThat(report.getErrors()).extracting(BulkReport.ItemError::getIndex).containsExactlyInAnyOrder(4L, 5L, 6L);
+        assertThat(userDbStorage.getFriends(user.getId())).extracting(User::getId)
+                .containsExactlyInAnyOrder(friend.getId(), other.getId());
+        assertThat(userDbStorage.getFriends(other.getId())).extracting(User::getId)
+                .containsExactly(user.getId());
+    }
+
     @Test
     void whenFindNonExistingUserById_returnsEmptyOptional() {
         Optional<User> userById = userDbStorage.findUserById(100L);
@@ -196,6 +229,68 @@ class UserDbStorageTest {
         assertThat(retrievedFriend.getFriends()).isEmpty();
     }
 
+    @Test
+    void whenUpdateUser_onlyChangedColumnsAndFriendshipsAreWritten() {
+        User friend = userDbStorage.save(newUser());
+        User friend2 = userDbStorage.save(newUser());
+        User user = userDbStorage.save(newUser().setFriends(new HashSet<>(Set.of(friend))));
+        DistributionSummary rows = meterRegistry.summary("filmorate.update.rows", "entity", "user");
+
+        double before = rows.totalAmount();
+        userDbStorage.update(userDbStorage.findUserById(user.getId()).get());
+        assertThat(rows.totalAmount() - before).isZero();
+
+        User changed = userDbStorage.findUserById(user.getId()).get().setName("Renamed");
+        changed.getFriends().clear();
+        changed.addFriend(friend2);
+        before = rows.totalAmount();
+        userDbStorage.update(changed);
+        assertThat(rows.totalAmount() - before).isEqualTo(3);
+
+        User updated = userDbStorage.findUserById(user.getId()).get();
+        assertThat(updated.getName()).isEqualTo("Renamed");
+        assertThat(updated.getFriends()).extracting(User::getId).containsExactly(friend2.getId());
+    }
+
+    @Test
+    void whenSaveAndUpdateUserWithFriends_responseMatchesStoredUser() {
+        User friend = userDbStorage.save(newUser());
+        User friendOfFriend = userDbStorage.save(newUser().setLogin("other"));
+        userDbStorage.addFriendForUser(friend.getId(), friendOfFriend.getId());
+
+        User saved = userDbStorage.save(newUser().setFriends(new HashSet<>(Set.of(friend))));
+        assertThat(saved).usingRecursiveComparison()
+                .isEqualTo(userDbStorage.findUserById(saved.getId()).get());
+
+        User updated = userDbStorage.update(saved.toBuilder()
+                .name("Renamed")
+                .friends(new HashSet<>(Set.of(friend, friendOfFriend)))
+                .build());
+        assertThat(updated).usingRecursiveComparison()
+                .isEqualTo(userDbStorage.findUserById(saved.getId()).get());
+    }
+
+    @Test
+    void whenAddSameFriendTwice_friendIsListedOnce() {
+        User user = userDbStorage.save(newUser());
+        User friend = userDbStorage.save(newUser());
+
+        userDbStorage.addFriendForUser(user.getId(), friend.getId());
+        userDbStorage.addFriendForUser(user.getId(), friend.getId());
+
+        assertThat(userDbStorage.getFriends(user.getId())).extracting(User::getId).containsExactly(friend.getId());
+    }
+
+    @Test
+    void whenAddNonExistingFriend_messageNamesTheFriend() {
+        User user = userDbStorage.save(newUser());
+
+        ResourceNotFoundException e = assertThrows(ResourceNotFoundException.class,
+                () -> userDbStorage.addFriendForUser(user.getId(), -3L));
+
+        assertThat(e.getMessage()).isEqualTo("User with ID: -3 is not found.");
+    }
+
     @Test
     void whenAddNonExistingFriendForExistingUser_throws() {
         User user = newUser();
@@ -231,6 +326,33 @@ class UserDbStorageTest {
         assertThat(all).containsAll(expected);
     }
 
+    @Test
+    void whenFindPage_returnsUsersAfterCursorOrderedById() {
+        User first = userDbStorage.save(newUser());
+        User second = userDbStorage.save(newUser());
+        User third = userDbStorage.save(newUser());
+        userDbStorage.addFriendForUser(first.getId(), third.getId());
+
+        List<User> firstPage = userDbStorage.findPage(0, 2);
+        assertThat(firstPage).extracting(User::getId).containsExactly(first.getId(), second.getId());
+        assertThat(firstPage.get(0).getFriends()).extracting(User::getId).containsExactly(third.getId());
+
+        List<User> secondPage = userDbStorage.findPage(second.getId(), 2);
+        assertThat(secondPage).extracting(User::getId).containsExactly(third.getId());
+    }
+
+    @Test
+    void whenGetFriendsOfUser_friendsOfFriendsAreNotReturned() {
+        User user = userDbStorage.save(newUser());
+        User friend = userDbStorage.save(newUser());
+        User friendOfFriend = userDbStorage.save(newUser());
+        userDbStorage.addFriendForUser(user.getId(), friend.getId());
+        userDbStorage.addFriendForUser(friend.getId(), friendOfFriend.getId());
+
+        List<User> friends = userDbStorage.getFriends(user.getId());
+        assertThat(friends).extracting(User::getId).containsExactly(friend.getId());
+    }
+
     @Test
     void whenFindAllOnEmptyDb_returnsEmptyList() {
         List<User> all = userDbStorage.findAll();
@@ -315,6 +437,18 @@ class UserDbStorageTest {
         );
     }
 
+    @Test
+    void whenSaveNewUserWithSeveralFriendsNotInDb_allMissingIdsAreReported() {
+        User friend = userDbStorage.save(newUser());
+        User newUser = newUser();
+        newUser.addFriend(friend);
+        newUser.addFriend(newUser().setId(998L).setLogin("missing1"));
+        newUser.addFriend(newUser().setId(999L).setLogin("missing2"));
+
+        ResourceNotFoundException e = assertThrows(ResourceNotFoundException.class, () -> userDbStorage.save(newUser));
+        assertThat(e.getMessage()).startsWith("Users with IDs: ").contains("998", "999");
+    }
+
     @Test
     void whenSaveUserThatExistsInDb_throws() {
         User toBeSaved = newUser();
@@ -343,4 +477,8 @@ class UserDbStorageTest {
         assertThat(saved.getFriends()).isEmpty();
     }
 
-}
\ No newline at end of file
+
+    private static Friendship friendship(Long userId, Long friendId) {
+        return Friendship.builder().userId(userId).friendId(friendId).build();
+    }
+}
@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.GenreName;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.RatingName;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.FriendshipGraph;
+import ru.yandex.practicum.filmorate.util.InMemoryIdGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InMemorySnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void whenRestored_storagesContinueWhereSnapshotEnded() throws IOException {
+        Storages source = new Storages();
+        Genre comedy = source.genres.save(Genre.builder().name(GenreName.COMEDY).build());
+        source.genres.save(Genre.builder().name(GenreName.DRAMA).build());
+        Rating pg = source.ratings.save(Rating.builder().name(RatingName.PG).build());
+        User first = source.users.save(user("first"));
+        User second = source.users.save(user("second"));
+        User third = source.users.save(user("third"));
+        source.users.addFriendForUser(first.getId(), second.getId());
+        source.users.addFriendForUser(first.getId(), third.getId());
+        Film film = source.films.save(Film.builder()
+                .name("Фильм")
+                .releaseDate(LocalDate.of(2001, 2, 3))
+                .duration(120)
+                .mpa(pg)
+                .genres(List.of(comedy))
+                .build());
+        source.films.addUserLikeToFilm(second.getId(), film.getId());
+        source.films.save(Film.builder().name("Без рейтинга").duration(10).build());
+        Path path = dir.resolve("snapshots/filmorate.snapshot");
+        source.snapshotFile.write(path);
+
+        Storages target = new Storages();
+        assertThat(target.snapshotFile.read(path)).isTrue();
+        target.afterRestore();
+
+        assertThat(target.films.findAll())
+                .usingRecursiveComparison()
+                .ignoringCollectionOrder()
+                .isEqualTo(source.films.findAll());
+        assertThat(target.users.getFriends(first.getId())).extracting(User::getId)
+                .containsExactlyInAnyOrder(second.getId(), third.getId());
+        assertThat(target.films.getMostPopularFilms(1)).extracting(Film::getId).containsExactly(film.getId());
+        assertThat(target.films.save(Film.builder().name("New").duration(1).build()).getId()).isEqualTo(3L);
+        assertThat(target.users.save(user("fourth")).getId()).isEqualTo(4L);
+        assertThat(target.genres.save(Genre.builder().name(GenreName.ACTION).build()).getId()).isEqualTo(3L);
+        assertThat(Files.list(path.getParent())).containsExactly(path);
+    }
+
+    @Test
+    void whenReadInSmallWindows_valuesAcrossWindowBordersAreRestored() throws IOException {
+        Storages source = new Storages();
+        Film film = source.films.save(Film.builder().name("Популярный").duration(90).build());
+        int users = 1_000;
+        for (int i = 0; i < users; i++) {
+            source.users.save(user("user" + i));
+        }
+        Path withoutLikes = dir.resolve("without-likes.snapshot");
+        source.snapshotFile.write(withoutLikes);
+        for (long userId = 1; userId <= users; userId++) {
+            source.films.addUserLikeToFilm(userId, film.getId());
+        }
+        Path path = dir.resolve("filmorate.snapshot");
+        source.snapshotFile.write(path);
+
+        Storages target = new Storages();
+        // odd window size, so ints, longs and strings straddle window borders
+        target.snapshotFile.setMappedWindowSize(7);
+        assertThat(target.snapshotFile.read(path)).isTrue();
+        target.afterRestore();
+
+        assertThat(target.films.findFilmById(film.getId()).orElseThrow().getUserLikes())
+                .isEqualTo(source.films.findFilmById(film.getId()).orElseThrow().getUserLikes())
+                .hasSize(users);
+        assertThat(target.users.findAll()).hasSize(users);
+        // consecutive likes take a byte each instead of eight
+        assertThat(Files.size(path) - Files.size(withoutLikes)).isLessThanOrEqualTo(users + 2L);
+    }
+
+    @Test
+    void whenSnapshotCorrupted_nothingIsLoaded() throws IOException {
+        Storages source = new Storages();
+        source.users.save(user("first"));
+        Path path = dir.resolve("filmorate.snapshot");
+        source.snapshotFile.write(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), InMemorySnapshotFile.HEADER_SIZE + 5);
+        }
+
+        Storages target = new Storages();
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> target.snapshotFile.read(path));
+
+        assertThat(e.getMessage()).contains("checksum mismatch");
+        assertThat(target.users.findAll()).isEmpty();
+    }
+
+    @Test
+    void whenNoSnapshot_readReturnsFalse() throws IOException {
+        assertThat(new Storages().snapshotFile.read(dir.resolve("missing.snapshot"))).isFalse();
+    }
+
+    private static User user(String login) {
+        return User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    private static final class Storages {
+        private final Map<Long, Film> filmMap = new ConcurrentHashMap<>();
+        private final Map<Long, User> userMap = new ConcurrentHashMap<>();
+        private final Map<Long, Genre> genreMap = new ConcurrentHashMap<>();
+        private final Map<Long, Rating> ratingMap = new ConcurrentHashMap<>();
+        private final InMemoryGenreStorage genres = new InMemoryGenreStorage(genreMap, new InMemoryIdGenerator());
+        private final InMemoryRatingStorage ratings = new InMemoryRatingStorage(new InMemoryIdGenerator(), ratingMap);
+        private final InMemoryFilmStorage films = new InMemoryFilmStorage(filmMap, userMap,
+                new InMemoryIdGenerator(), ratings, genres, new FilmPopularityIndex());
+        private final InMemoryUserStorage users = new InMemoryUserStorage(userMap, new InMemoryIdGenerator(),
+                new FriendshipGraph(), event -> films.onApplicationEvent((InMemoryUserDeletedEvent) event));
+        private final InMemorySnapshotFile snapshotFile =
+                new InMemorySnapshotFile(filmMap, userMap, genreMap, ratingMap);
+
+        void afterRestore() {
+            genres.afterRestore();
+            ratings.afterRestore();
+            users.rebuildIndexes();
+            films.rebuildIndexes();
+        }
+    }
+}
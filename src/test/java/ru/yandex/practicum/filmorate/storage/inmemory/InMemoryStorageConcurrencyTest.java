@@ -0,0 +1,236 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.FriendshipGraph;
+import ru.yandex.practicum.filmorate.util.InMemoryIdGenerator;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryStorageConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int USERS = 4000;
+
+    private final Map<Long, User> userMap = new ConcurrentHashMap<>();
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage(
+            new ConcurrentHashMap<>(),
+            userMap,
+            new InMemoryIdGenerator(),
+            new InMemoryRatingStorage(new InMemoryIdGenerator(), new ConcurrentHashMap<>()),
+            new InMemoryGenreStorage(new ConcurrentHashMap<>(), new InMemoryIdGenerator()),
+            new FilmPopularityIndex()
+    );
+    private final InMemoryUserStorage userStorage = new InMemoryUserStorage(userMap, new InMemoryIdGenerator(),
+            new FriendshipGraph(), event -> filmStorage.onApplicationEvent((InMemoryUserDeletedEvent) event));
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < USERS; i++) {
+            User user = userStorage.save(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("login" + i)
+                    .name("name" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+            userIds.add(user.getId());
+        }
+    }
+
+    @Test
+    void whenManyThreadsLikeSameFilm_noLikesLost() throws Exception {
+        Film film = filmStorage.save(hotFilm());
+
+        // every user likes the film twice, then users with even ids take the like back
+        runConcurrently(userId -> {
+            filmStorage.addUserLikeToFilm(userId, film.getId());
+            filmStorage.addUserLikeToFilm(userId, film.getId());
+        });
+        runConcurrently(userId -> {
+            if (userId % 2 == 0) {
+                filmStorage.removeUserLike(userId, film.getId());
+            }
+        });
+
+        Film stored = filmStorage.findFilmById(film.getId()).orElseThrow();
+        assertThat(stored.getLikesCount()).isEqualTo(USERS / 2);
+        assertThat(stored.getUserLikes()).allMatch(userId -> userId % 2 == 1);
+        assertThat(filmStorage.getMostPopularFilms(1)).containsExactly(stored);
+    }
+
+    @Test
+    void whenNoWrites_findAllReturnsSameSnapshot() {
+        Film film = filmStorage.save(hotFilm());
+        List<Film> before = filmStorage.findAll();
+
+        assertThat(filmStorage.findAll()).isSameAs(before);
+
+        filmStorage.addUserLikeToFilm(userIds.get(0), film.getId());
+        List<Film> after = filmStorage.findAll();
+
+        assertThat(after).isNotSameAs(before);
+        assertThat(before.get(0).getLikesCount()).isZero();
+        assertThat(after.get(0).getUserLikes()).containsExactly(userIds.get(0));
+        assertThat(userStorage.findAll()).isSameAs(userStorage.findAll());
+    }
+
+    @Test
+    void whenOneUserChanges_nextSnapshotCopiesOnlyThatUser() {
+        List<User> before = userStorage.findAll();
+        User changed = userStorage.findUserById(userIds.get(1)).orElseThrow();
+
+        userStorage.update(changed.toBuilder().name("renamed").build());
+        List<User> after = userStorage.findAll();
+
+        assertThat(after).hasSize(USERS);
+        assertThat(after.get(0)).isSameAs(before.get(0));
+        assertThat(after.get(1).getName()).isEqualTo("renamed");
+        assertThat(before.get(1).getName()).isEqualTo("name1");
+        assertThat(after.get(2)).isSameAs(before.get(2));
+    }
+
+    @Test
+    void whenFriendChangesLater_snapshotKeepsFrozenFriendCopy() {
+        Long userId = userIds.get(0);
+        Long friendId = userIds.get(1);
+        userStorage.addFriendForUser(userId, friendId);
+        userStorage.addFriendForUser(friendId, userIds.get(2));
+
+        User frozenFriend = userStorage.findAll().get(0).getFriends().iterator().next();
+        userStorage.findUserById(friendId).orElseThrow().setName("renamed");
+
+        assertThat(frozenFriend).isNotSameAs(userStorage.findUserById(friendId).orElseThrow());
+        assertThat(frozenFriend.getId()).isEqualTo(friendId);
+        assertThat(frozenFriend.getName()).isEqualTo("name1");
+        assertThat(frozenFriend.getFriends()).isEmpty();
+    }
+
+    @Test
+    void whenReadingDuringLikes_everySnapshotIsConsistent() throws Exception {
+        Film film = filmStorage.save(hotFilm());
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Integer>> reads = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                reads.add(readers.submit(() -> {
+                    int count = 0;
+                    int lastLikes = 0;
+                    while (writing.get()) {
+                        Film seen = filmStorage.findAll().get(0);
+                        // likes only grow here, so a snapshot never goes back in time
+                        assertThat(seen.getLikesCount()).isEqualTo(seen.getUserLikes().size())
+                                .isGreaterThanOrEqualTo(lastLikes);
+                        lastLikes = seen.getLikesCount();
+                        count++;
+                    }
+                    return count;
+                }));
+            }
+            runConcurrently(userId -> filmStorage.addUserLikeToFilm(userId, film.getId()));
+            writing.set(false);
+            for (Future<Integer> read : reads) {
+                assertThat(read.get(30, TimeUnit.SECONDS)).isPositive();
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+        assertThat(filmStorage.findAll().get(0).getLikesCount()).isEqualTo(USERS);
+    }
+
+    @Test
+    void whenManyThreadsAddFriendsToSameUser_noFriendsLost() throws Exception {
+        long hubId = userIds.get(0);
+
+        runConcurrently(userId -> {
+            if (userId != hubId) {
+                userStorage.addFriendForUser(hubId, userId);
+                userStorage.addFriendForUser(userId, hubId);
+            }
+        });
+
+        assertThat(userStorage.getFriends(hubId)).hasSize(USERS - 1);
+        assertThat(userStorage.findUserById(hubId).orElseThrow().getFriends()).hasSize(USERS - 1);
+        assertThat(userStorage.getCommonFriendsForUser(userIds.get(1), userIds.get(2)))
+                .extracting(User::getId)
+                .containsExactly(hubId);
+    }
+
+    @Test
+    void whenUserDeleted_itsLikesAndFriendshipsDisappear() {
+        long deletedId = userIds.get(0);
+        long friendId = userIds.get(1);
+        Film first = filmStorage.save(hotFilm());
+        Film second = filmStorage.save(hotFilm().toBuilder().name("Other film").build());
+        filmStorage.addUserLikeToFilm(deletedId, first.getId());
+        filmStorage.addUserLikeToFilm(deletedId, second.getId());
+        filmStorage.addUserLikeToFilm(friendId, second.getId());
+        userStorage.addFriendForUser(friendId, deletedId);
+        List<User> usersBefore = userStorage.findAll();
+
+        userStorage.deleteUser(deletedId);
+
+        assertThat(filmStorage.findFilmById(first.getId()).orElseThrow().getUserLikes()).isEmpty();
+        assertThat(filmStorage.getMostPopularFilms(2)).extracting(Film::getLikesCount).containsExactly(1, 0);
+        assertThat(filmStorage.findAll()).extracting(Film::getLikesCount).containsExactly(0, 1);
+        assertThat(userStorage.getFriends(friendId)).isEmpty();
+        assertThat(userStorage.findUserById(friendId).orElseThrow().getFriends()).isEmpty();
+        List<User> usersAfter = userStorage.findAll();
+        assertThat(usersAfter).hasSize(USERS - 1);
+        assertThat(usersAfter.get(0).getFriends()).isEmpty();
+        assertThat(usersAfter.get(1)).isSameAs(usersBefore.get(2));
+    }
+
+    private static Film hotFilm() {
+        return Film.builder()
+                .name("Hot film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .build();
+    }
+
+    /**
+     * Раздает пользователей потокам по кругу и запускает все потоки одновременно.
+     */
+    private void runConcurrently(LongConsumer action) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = thread; i < userIds.size(); i += THREADS) {
+                        action.accept(userIds.get(i));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
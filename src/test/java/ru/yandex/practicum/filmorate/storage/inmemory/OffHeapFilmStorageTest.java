@@ -0,0 +1,188 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.GenreName;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.RatingName;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.util.InMemoryIdGenerator;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OffHeapFilmStorageTest {
+
+    private final Map<Long, User> userMap = new ConcurrentHashMap<>();
+    private final InMemoryGenreStorage genreStorage =
+            new InMemoryGenreStorage(new ConcurrentHashMap<>(), new InMemoryIdGenerator());
+    private final InMemoryRatingStorage ratingStorage =
+            new InMemoryRatingStorage(new InMemoryIdGenerator(), new ConcurrentHashMap<>());
+    private final FilmPopularityIndex popularityIndex = new FilmPopularityIndex();
+    private final OffHeapFilmStorage storage = new OffHeapFilmStorage(
+            userMap, new InMemoryIdGenerator(), ratingStorage, genreStorage, popularityIndex);
+
+    private Genre comedy;
+    private Genre drama;
+    private Rating pg;
+
+    @BeforeEach
+    void setUp() {
+        comedy = genreStorage.save(Genre.builder().name(GenreName.COMEDY).build());
+        drama = genreStorage.save(Genre.builder().name(GenreName.DRAMA).build());
+        ratingStorage.save(Rating.builder().name(RatingName.G).build());
+        pg = ratingStorage.save(Rating.builder().name(RatingName.PG).build());
+        for (long id = 1; id <= 3; id++) {
+            userMap.put(id, User.builder().id(id).login("user" + id).build());
+        }
+    }
+
+    @Test
+    void whenSaved_readBackFromOffHeapRecord() {
+        Film saved = storage.save(Film.builder()
+                .name("Сталкер")
+                .releaseDate(LocalDate.of(1979, 5, 25))
+                .duration(163)
+                .mpa(Rating.builder().id(pg.getId()).build())
+                .genres(List.of(drama, comedy, drama))
+                .build());
+
+        Film read = storage.findFilmById(saved.getId()).orElseThrow();
+
+        assertThat(read).isEqualTo(saved);
+        assertThat(read.getName()).isEqualTo("Сталкер");
+        assertThat(read.getDescription()).isNull();
+        assertThat(read.getMpa()).isEqualTo(pg);
+        assertThat(read.getGenres()).containsExactly(comedy, drama);
+        assertThat(storage.offHeapBytes()).isPositive();
+    }
+
+    @Test
+    void whenUpdated_recordAndLikesAreReplaced() {
+        Film saved = storage.save(film("Old"));
+        storage.addUserLikeToFilm(1L, saved.getId());
+
+        Film update = film("New").toBuilder().id(saved.getId()).description("Description").build();
+        update.addUserLike(2L);
+        update.addUserLike(3L);
+        storage.update(update);
+
+        Film read = storage.findFilmById(saved.getId()).orElseThrow();
+        assertThat(read.getName()).isEqualTo("New");
+        assertThat(read.getDescription()).isEqualTo("Description");
+        assertThat(read.getUserLikes()).containsExactly(2L, 3L);
+        assertThrows(ResourceNotFoundException.class,
+                () -> storage.update(film("Missing").toBuilder().id(100L).build()));
+    }
+
+    @Test
+    void whenManyFilms_pagesSpanRecordChunks() {
+        int films = 20_000;
+        for (int i = 0; i < films; i++) {
+            storage.save(film("Film " + i));
+        }
+        storage.deleteFilm(2L);
+
+        assertThat(storage.findAll()).hasSize(films - 1);
+        assertThat(storage.findPage(0, 3)).extracting(Film::getId).containsExactly(1L, 3L, 4L);
+        assertThat(storage.findPage(16_383, 2)).extracting(Film::getName)
+                .containsExactly("Film 16383", "Film 16384");
+        assertThat(storage.findPage(films, 10)).isEmpty();
+        assertThat(storage.findFilmById(2L)).isEmpty();
+        assertThrows(ResourceNotFoundException.class, () -> storage.deleteFilm(2L));
+    }
+
+    @Test
+    void whenLiked_popularFilmsFollowLikes() {
+        Film first = storage.save(film("First"));
+        Film second = storage.save(film("Second"));
+
+        storage.addUserLikeToFilm(1L, second.getId());
+        storage.addUserLikeToFilm(2L, second.getId());
+        storage.addUserLikeToFilm(1L, first.getId());
+        storage.removeUserLike(1L, first.getId());
+
+        assertThat(storage.getMostPopularFilms(2)).extracting(Film::getId)
+                .containsExactly(second.getId(), first.getId());
+        assertThat(storage.findFilmById(second.getId()).orElseThrow().getLikesCount()).isEqualTo(2);
+        assertThrows(ResourceNotFoundException.class, () -> storage.addUserLikeToFilm(9L, first.getId()));
+        assertThrows(ResourceNotFoundException.class, () -> storage.addUserLikeToFilm(1L, 9L));
+    }
+
+    @Test
+    void whenMostFilmsDeleted_recordsAreCompacted() {
+        String description = "x".repeat(10_000);
+        int films = 300;
+        for (int i = 0; i < films; i++) {
+            storage.save(film("Film " + i).toBuilder().description(description).build());
+        }
+        long allocated = storage.offHeapBytes();
+
+        for (long id = 1; id <= 250; id++) {
+            storage.deleteFilm(id);
+        }
+
+        assertThat(storage.offHeapBytes()).isLessThan(allocated / 2);
+        assertThat(storage.offHeapGarbageBytes()).isLessThan(storage.offHeapBytes());
+        assertThat(storage.findAll()).hasSize(50)
+                .allSatisfy(film -> assertThat(film.getDescription()).isEqualTo(description));
+        assertThat(storage.findPage(0, 1)).extracting(Film::getName).containsExactly("Film 250");
+        assertThat(storage.findFilmById(251L)).map(Film::getName).contains("Film 250");
+        assertThat(storage.findFilmById(1L)).isEmpty();
+        assertThat(storage.save(film("Next")).getId()).isEqualTo(films + 1);
+    }
+
+    @Test
+    void whenLikeRacesDelete_deletedFilmKeepsNoLikes() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 200; i++) {
+                long filmId = storage.save(film("Film " + i)).getId();
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> like = executor.submit(() -> {
+                    start.await();
+                    try {
+                        storage.addUserLikeToFilm(1L, filmId);
+                    } catch (ResourceNotFoundException ignored) {
+                        // the delete won
+                    }
+                    return null;
+                });
+                Future<?> delete = executor.submit(() -> {
+                    start.await();
+                    storage.deleteFilm(filmId);
+                    return null;
+                });
+                start.countDown();
+                like.get();
+                delete.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(popularityIndex.size()).isZero();
+        assertThat(storage.findAll()).isEmpty();
+    }
+
+    private static Film film(String name) {
+        return Film.builder()
+                .name(name)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(90)
+                .build();
+    }
+}
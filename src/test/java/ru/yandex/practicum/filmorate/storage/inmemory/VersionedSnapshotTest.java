@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VersionedSnapshotTest {
+
+    private final Map<Long, String> stored = new ConcurrentHashMap<>();
+    private final VersionedSnapshot<String> snapshot =
+            new VersionedSnapshot<>(() -> stored, value -> new String(value));
+
+    @Test
+    void whenChangedAcrossChunks_snapshotStaysOrderedAndSharesUntouchedItems() {
+        int count = VersionedSnapshot.MAX_CHUNK_SIZE * 3;
+        for (long id = 1; id <= count; id++) {
+            put(id * 2);
+        }
+        snapshot.invalidateAll();
+        List<String> before = snapshot.get();
+
+        // inserts overflow one chunk into a split, removals empty another one
+        for (long id = 1; id <= VersionedSnapshot.MAX_CHUNK_SIZE; id++) {
+            put(id * 2 + 1);
+        }
+        for (long id = VersionedSnapshot.MAX_CHUNK_SIZE * 2L + 1; id <= VersionedSnapshot.MAX_CHUNK_SIZE * 3L; id++) {
+            stored.remove(id * 2);
+            snapshot.invalidate(id * 2);
+        }
+        put(1);
+        List<String> after = snapshot.get();
+
+        assertThat(after).containsExactlyElementsOf(stored.keySet().stream()
+                .sorted()
+                .map(String::valueOf)
+                .collect(Collectors.toList()));
+        assertThat(after.get(after.size() - 1)).isSameAs(before.get(VersionedSnapshot.MAX_CHUNK_SIZE * 2 - 1));
+        assertThrows(UnsupportedOperationException.class, () -> after.set(0, "0"));
+        assertThrows(IndexOutOfBoundsException.class, () -> after.get(after.size()));
+        assertThat(snapshot.get()).isSameAs(after);
+    }
+
+    @Test
+    void whenAllRemoved_snapshotIsEmpty() {
+        LongStream.rangeClosed(1, 3).forEach(this::put);
+        assertThat(snapshot.get()).containsExactly("1", "2", "3");
+
+        LongStream.rangeClosed(1, 3).forEach(id -> {
+            stored.remove(id);
+            snapshot.invalidate(id);
+        });
+
+        assertThat(snapshot.get()).isEmpty();
+        put(7);
+        assertThat(snapshot.get()).containsExactly("7");
+    }
+
+    private void put(long id) {
+        stored.put(id, String.valueOf(id));
+        snapshot.invalidate(id);
+    }
+}
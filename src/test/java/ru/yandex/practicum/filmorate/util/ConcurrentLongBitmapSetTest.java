@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrentLongBitmapSetTest {
+
+    @Test
+    void whenAddAndRemove_behavesLikeSetAndIteratesInOrder() {
+        ConcurrentLongBitmapSet set = new ConcurrentLongBitmapSet(List.of(9L, 1L, 70_000L));
+
+        assertThat(set.add(2L)).isTrue();
+        assertThat(set.add(9L)).isFalse();
+        assertThat(set).hasSize(4).containsExactly(1L, 2L, 9L, 70_000L);
+        assertThat(set).isEqualTo(Set.of(1L, 2L, 9L, 70_000L));
+        assertThat(LongBitmapSet.copyOf(set)).containsExactly(1L, 2L, 9L, 70_000L);
+
+        assertThat(set.remove(9L)).isTrue();
+        assertThat(set.remove(9L)).isFalse();
+        assertThat(set.remove("1")).isFalse();
+        Iterator<Long> iterator = set.iterator();
+        iterator.next();
+        iterator.remove();
+        assertThat(set).hasSize(2).containsExactly(2L, 70_000L);
+
+        set.clear();
+        assertThat(set).isEmpty();
+    }
+
+    @Test
+    void whenManyThreadsAddAndRemove_noUpdatesLost() throws Exception {
+        ConcurrentLongBitmapSet set = new ConcurrentLongBitmapSet();
+        int threads = 8;
+        int perThread = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long from = (long) t * perThread;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (long v = from; v < from + perThread; v++) {
+                        set.add(v);
+                    }
+                    for (long v = from; v < from + perThread; v += 2) {
+                        set.remove(v);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(set).hasSize(threads * perThread / 2);
+        assertThat(set).allMatch(v -> v % 2 == 1);
+        assertThat(set.contains(1L)).isTrue();
+        assertThat(set.contains(2L)).isFalse();
+    }
+}
@@ -0,0 +1,183 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrentLongObjectMapTest {
+
+    @Test
+    void whenRandomOperations_behavesLikeHashMap() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // a small key range forces collisions, resizes and removals inside probe chains
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) - 1_000;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                String value = "v" + i;
+                assertThat(map.put(key, value)).isEqualTo(expected.put(key, value));
+            }
+        }
+
+        assertThat(map).hasSize(expected.size()).isEqualTo(expected);
+        for (long key = -1_000; key < 4_000; key++) {
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+        }
+        assertThat(map.get("1")).isNull();
+    }
+
+    @Test
+    void whenConcurrentMapOperations_followConcurrentMapContract() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>();
+
+        assertThat(map.putIfAbsent(1L, "a")).isNull();
+        assertThat(map.putIfAbsent(1L, "b")).isEqualTo("a");
+        assertThat(map.replace(1L, "b", "c")).isFalse();
+        assertThat(map.replace(1L, "a", "c")).isTrue();
+        assertThat(map.replace(2L, "x")).isNull();
+        assertThat(map.remove(1L, "a")).isFalse();
+        assertThat(map.computeIfAbsent(2L, key -> "d")).isEqualTo("d");
+        assertThat(map.merge(2L, "e", String::concat)).isEqualTo("de");
+        assertThat(map).containsOnly(Map.entry(1L, "c"), Map.entry(2L, "de"));
+        assertThat(map.remove(1L, "c")).isTrue();
+        assertThat(map).containsOnlyKeys(2L);
+    }
+
+    @Test
+    void whenIteratorRemoves_entryIsRemovedFromMap() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>();
+        for (long i = 0; i < 1_000; i++) {
+            map.put(i, String.valueOf(i));
+        }
+
+        Iterator<String> values = map.values().iterator();
+        while (values.hasNext()) {
+            if (Long.parseLong(values.next()) % 2 == 0) {
+                values.remove();
+            }
+        }
+
+        assertThat(map).hasSize(500);
+        assertThat(map.keySet()).allMatch(key -> key % 2 == 1);
+    }
+
+    @Test
+    void whenFilled_retainsLessHeapThanConcurrentHashMap() {
+        // about 58% of the slots of each segment table are taken, close to the worst case before a resize
+        int entries = 300_000;
+        String value = "value";
+
+        // the first measurement may still see garbage of the test framework freed on the way
+        long boxedBytes = retainedBytes(() -> {
+            Map<Long, String> map = new ConcurrentHashMap<>();
+            for (long key = 0; key < entries; key++) {
+                map.put(key, value);
+            }
+            return map;
+        });
+        long primitiveBytes = retainedBytes(() -> {
+            ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>();
+            for (long key = 0; key < entries; key++) {
+                map.put(key, value);
+            }
+            return map;
+        });
+
+        assertThat(primitiveBytes / entries).isLessThanOrEqualTo(30);
+        assertThat(primitiveBytes).isLessThan(boxedBytes / 2);
+    }
+
+    @Test
+    void whenReadingDuringConcurrentWrites_readersSeeOnlyWrittenValues() throws Exception {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>();
+        int writers = 4;
+        int keysPerWriter = 50_000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                long from = (long) w * keysPerWriter;
+                writes.add(executor.submit(() -> {
+                    start.await();
+                    for (long key = from; key < from + keysPerWriter; key++) {
+                        map.put(key, String.valueOf(key));
+                    }
+                    // every second key goes away again, shifting entries inside probe chains
+                    for (long key = from; key < from + keysPerWriter; key += 2) {
+                        map.remove(key);
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> reads = new ArrayList<>();
+            for (int r = 0; r < 2; r++) {
+                reads.add(executor.submit(() -> {
+                    Random random = new Random();
+                    start.await();
+                    while (writing.get()) {
+                        long key = random.nextInt(writers * keysPerWriter);
+                        String value = map.get(key);
+                        assertThat(value == null || value.equals(String.valueOf(key))).isTrue();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> write : writes) {
+                write.get(30, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            for (Future<?> read : reads) {
+                read.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(map).hasSize(writers * keysPerWriter / 2);
+        for (long key = 1; key < (long) writers * keysPerWriter; key += 2) {
+            assertThat(map.get(key)).isEqualTo(String.valueOf(key));
+        }
+    }
+
+    /**
+     * Сколько байт кучи остается занято объектом после полной сборки мусора.
+     */
+    private static long retainedBytes(Supplier<Object> factory) {
+        long before = usedHeapAfterGc();
+        Object retained = factory.get();
+        long after = usedHeapAfterGc();
+        Reference.reachabilityFence(retained);
+        return after - before;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
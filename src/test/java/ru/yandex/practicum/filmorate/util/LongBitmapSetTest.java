@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongBitmapSetTest {
+
+    @Test
+    void whenAddAndRemove_behavesLikeSet() {
+        LongBitmapSet set = new LongBitmapSet();
+
+        assertThat(set.add(5L)).isTrue();
+        assertThat(set.add(5L)).isFalse();
+        assertThat(set.add(70_000L)).isTrue();
+        assertThat(set.add(-3L)).isTrue();
+        assertThat(set).hasSize(3).contains(5L, 70_000L, -3L).doesNotContain(6L);
+        assertThat(set).containsExactly(-3L, 5L, 70_000L);
+
+        assertThat(set.remove(70_000L)).isTrue();
+        assertThat(set.remove(70_000L)).isFalse();
+        assertThat(set.remove("5")).isFalse();
+        assertThat(set).containsExactly(-3L, 5L);
+        assertThat(set).isEqualTo(Set.of(5L, -3L));
+        assertThat(set.hashCode()).isEqualTo(Set.of(5L, -3L).hashCode());
+    }
+
+    @Test
+    void whenContainerGrowsAndShrinks_switchesBetweenArrayAndBitmap() {
+        LongBitmapSet set = new LongBitmapSet();
+        for (long i = 0; i < 10_000; i += 2) {
+            set.add(i);
+        }
+        assertThat(set).hasSize(5_000);
+        assertThat(set.contains(9_998L)).isTrue();
+        assertThat(set.contains(9_999L)).isFalse();
+
+        for (long i = 0; i < 10_000; i += 4) {
+            set.remove(i);
+        }
+        assertThat(set).hasSize(2_500);
+        assertThat(set.contains(2L)).isTrue();
+        assertThat(set.contains(4L)).isFalse();
+        assertThat(new ArrayList<>(set)).isSorted();
+    }
+
+    @Test
+    void whenRandomOperations_matchesTreeSet() {
+        Random random = new Random(42);
+        LongBitmapSet set = new LongBitmapSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            long value = random.nextInt(300_000);
+            if (random.nextInt(3) == 0) {
+                assertThat(set.remove(value)).isEqualTo(expected.remove(value));
+            } else {
+                assertThat(set.add(value)).isEqualTo(expected.add(value));
+            }
+        }
+        assertThat(set).hasSize(expected.size());
+        assertThat(new ArrayList<>(set)).isEqualTo(new ArrayList<>(expected));
+    }
+
+    @Test
+    void whenIteratorRemove_removesElementsWhileIterating() {
+        LongBitmapSet set = new LongBitmapSet(List.of(1L, 2L, 3L, 65_536L, 65_537L, 200_000L));
+
+        Iterator<Long> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            long value = iterator.next();
+            if (value % 2 == 0 || value == 65_537L) {
+                iterator.remove();
+            }
+        }
+
+        assertThat(set).containsExactly(1L, 3L);
+    }
+
+    @Test
+    void whenRetainAllAndAddAllWithBitmap_matchCollectionOperations() {
+        Random random = new Random(7);
+        Set<Long> first = new HashSet<>();
+        Set<Long> second = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            // dense range for bitmap containers and sparse tail for array containers
+            first.add((long) random.nextInt(70_000));
+            second.add((long) random.nextInt(70_000));
+            first.add(1_000_000L + random.nextInt(1_000_000));
+            second.add(1_000_000L + random.nextInt(1_000_000));
+        }
+        LongBitmapSet a = new LongBitmapSet(first);
+        LongBitmapSet b = new LongBitmapSet(second);
+
+        Set<Long> intersection = new HashSet<>(first);
+        intersection.retainAll(second);
+        Set<Long> union = new HashSet<>(first);
+        union.addAll(second);
+
+        LongBitmapSet retained = a.copy();
+        retained.retainAll(b);
+        assertThat(retained).isEqualTo(intersection);
+        LongBitmapSet added = a.copy();
+        added.addAll(b);
+        assertThat(added).isEqualTo(union);
+        assertThat(a).isEqualTo(first);
+    }
+
+    @Test
+    void whenFilmIsDeserialized_userLikesAreBitmap() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+        Film film = mapper.readValue("{\"name\":\"Name\",\"userLikes\":[3,1,2]}", Film.class);
+
+        assertThat(film.getUserLikes()).isInstanceOf(LongBitmapSet.class).containsExactly(1L, 2L, 3L);
+        assertThat(Film.builder().build().getUserLikes()).isInstanceOf(LongBitmapSet.class);
+    }
+}
@@ -1,4 +1,5 @@
 DELETE FROM FilmGenre;
 DELETE FROM FilmUserLikes;
+DELETE FROM FilmLikesCounter;
 DELETE FROM Films;
 DELETE FROM Users;
\ No newline at end of file